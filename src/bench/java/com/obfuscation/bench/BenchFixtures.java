@@ -0,0 +1,212 @@
+package com.obfuscation.bench;
+
+import com.googlecode.d2j.DexLabel;
+import com.googlecode.d2j.Field;
+import com.googlecode.d2j.Method;
+import com.googlecode.d2j.Visibility;
+import com.googlecode.d2j.dex.writer.DexFileWriter;
+import com.googlecode.d2j.node.DexClassNode;
+import com.googlecode.d2j.node.DexFileNode;
+import com.googlecode.d2j.reader.DexFileReader;
+import com.googlecode.d2j.reader.Op;
+import com.googlecode.d2j.util.Mutf8;
+import com.googlecode.d2j.visitors.DexAnnotationVisitor;
+import com.googlecode.d2j.visitors.DexClassVisitor;
+import com.googlecode.d2j.visitors.DexCodeVisitor;
+import com.googlecode.d2j.visitors.DexDebugVisitor;
+import com.googlecode.d2j.visitors.DexFieldVisitor;
+import com.googlecode.d2j.visitors.DexMethodVisitor;
+import com.obfuscation.model.ClassIndex;
+import com.obfuscation.utils.Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the synthetic inputs of the benchmarks: a dex file, the class index
+ * decoded from it, keep configurations and modified UTF-8 strings. The inputs
+ * are deterministic, so results are comparable between runs.
+ */
+public class BenchFixtures {
+    private static final String[] PACKAGES = {
+            "com/sample/app/ui", "com/sample/app/model", "com/sample/app/network",
+            "com/sample/lib/util", "com/sample/lib/util/internal"
+    };
+    private static final String KEEP_ANNOTATION = "Lcom/sample/annotations/Keep;";
+    private static final String SERIALIZABLE = "Ljava/io/Serializable;";
+
+    /**
+     * Returns a dex file with the given number of classes. Every class has
+     * three fields and three methods with code and debug information, every
+     * fourth class extends an activity, every sixth is serializable and every
+     * fifth has a keep annotation.
+     */
+    public static byte[] dex(int classCount) {
+        DexFileWriter writer = new DexFileWriter();
+        for (int index = 0; index < classCount; index++) {
+            String className = className(index);
+            DexClassVisitor classVisitor = writer.visit(
+                    0x1 | (index % 7 == 0 ? 0x10 : 0),
+                    className,
+                    index % 4 == 0 ? "Landroid/app/Activity;" : "Ljava/lang/Object;",
+                    index % 6 == 0 ? new String[] { SERIALIZABLE } : new String[0]
+            );
+            if (index % 5 == 0) {
+                DexAnnotationVisitor annotationVisitor = classVisitor.visitAnnotation(KEEP_ANNOTATION, Visibility.RUNTIME);
+                annotationVisitor.visitEnd();
+            }
+            for (int field = 0; field < 3; field++) {
+                DexFieldVisitor fieldVisitor = classVisitor.visitField(
+                        field == 0 ? 0x9 : 0x2,
+                        new Field(className, "field" + field, field == 1 ? "Ljava/lang/String;" : "I"),
+                        null
+                );
+                fieldVisitor.visitEnd();
+            }
+            for (int method = 0; method < 3; method++) {
+                DexMethodVisitor methodVisitor = classVisitor.visitMethod(
+                        method == 0 ? 0x9 : (method == 1 ? 0x1 : 0x2),
+                        new Method(className, "method" + method, new String[] { "Ljava/lang/String;" }, "V")
+                );
+                writeCode(methodVisitor, method);
+                methodVisitor.visitEnd();
+            }
+            classVisitor.visitEnd();
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    /**
+     * Returns the class index of the given dex file, keyed like the index of
+     * an APK.
+     */
+    public static ClassIndex classIndex(byte[] dex) {
+        return classIndex(Collections.singletonList(dex));
+    }
+
+    /**
+     * Returns the class index of the given dex files, keyed like the index of
+     * an APK.
+     */
+    public static ClassIndex classIndex(List<byte[]> dexFiles) {
+        Map<String, DexClassNode> classPath = new HashMap<>();
+        for (byte[] dex : dexFiles) {
+            DexFileNode fileNode = new DexFileNode();
+            new DexFileReader(dex).accept(fileNode);
+            for (DexClassNode classNode : fileNode.clzs) {
+                classPath.put(Utils.normalizeClassName(classNode.className), classNode);
+            }
+        }
+        return ClassIndex.of(classPath);
+    }
+
+    /**
+     * Returns a keep configuration that exercises the rule kinds of a typical
+     * application configuration against the classes of {@link #dex(int)}.
+     */
+    public static String adapterConfig() {
+        return "-keep class com.sample.app.model.** { *; }\n"
+                + "-keep public class * extends android.app.Activity\n"
+                + "-keep @com.sample.annotations.Keep class *\n"
+                + "-keepclassmembers class * { public static <fields>; public *; }\n"
+                + "-keepclassmembers class * implements java.io.Serializable {\n"
+                + "    static final long serialVersionUID;\n"
+                + "    private void method2(java.lang.String);\n"
+                + "}\n"
+                + "-keepnames class com.sample.lib.util.*\n"
+                + "-keepclasseswithmembers class * { public static void method0(java.lang.String); }\n"
+                + "-keep class com.sample.app.ui.C10 { int field0; }\n";
+    }
+
+    /**
+     * Returns a keep configuration with the given number of rules, made of
+     * class, member, annotation and conditional rules with comments between
+     * them.
+     */
+    public static String largeConfig(int ruleCount) {
+        StringBuilder config = new StringBuilder();
+        for (int index = 0; index < ruleCount; index++) {
+            String packageName = PACKAGES[index % PACKAGES.length].replace('/', '.');
+            switch (index % 5) {
+                case 0:
+                    config.append("# Rule ").append(index).append('\n');
+                    config.append("-keep class ").append(packageName).append(".C").append(index).append(" { *; }\n");
+                    break;
+                case 1:
+                    config.append("-keepclassmembers class ").append(packageName).append(".** {\n")
+                          .append("    public static <fields>;\n")
+                          .append("    private void method").append(index % 3).append("(java.lang.String);\n")
+                          .append("}\n");
+                    break;
+                case 2:
+                    config.append("-keep,allowobfuscation @com.sample.annotations.Keep class ")
+                          .append(packageName).append(".*\n");
+                    break;
+                case 3:
+                    config.append("-if class ").append(packageName).append(".C").append(index).append('\n')
+                          .append("-keep class ").append(packageName).append(".C").append(index + 1).append('\n');
+                    break;
+                default:
+                    config.append("-keepclasseswithmembers public class * extends android.app.Activity {\n")
+                          .append("    public <init>(...);\n")
+                          .append("    int field").append(index % 3).append(";\n")
+                          .append("}\n");
+                    break;
+            }
+        }
+        return config.toString();
+    }
+
+    /**
+     * Returns the given number of zero-terminated modified UTF-8 strings, back
+     * to back. Every string looks like a type descriptor; if non-ASCII is set,
+     * every other string also contains two and three byte characters.
+     */
+    public static ByteBuffer mutf8Strings(int count, boolean nonAscii) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int index = 0; index < count; index++) {
+            String string = className(index);
+            if (nonAscii && index % 2 == 0) {
+                string = string.replace("C", "\u00c7\u4e2d");
+            }
+            byte[] bytes = new byte[string.length() * 3];
+            Mutf8.encode(bytes, 0, string);
+            int length = 0;
+            while (length < bytes.length && bytes[length] != 0) {
+                length++;
+            }
+            out.write(bytes, 0, length);
+            out.write(0);
+        }
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    private static String className(int index) {
+        return "L" + PACKAGES[index % PACKAGES.length] + "/C" + index + ";";
+    }
+
+    private static void writeCode(DexMethodVisitor methodVisitor, int method) {
+        DexCodeVisitor codeVisitor = methodVisitor.visitCode();
+        if (codeVisitor == null) {
+            return;
+        }
+        DexLabel start = new DexLabel();
+        codeVisitor.visitRegister(3);
+        codeVisitor.visitLabel(start);
+        codeVisitor.visitConstStmt(Op.CONST_STRING, 0, "value" + method);
+        codeVisitor.visitStmt0R(Op.RETURN_VOID);
+
+        DexDebugVisitor debugVisitor = codeVisitor.visitDebug();
+        if (debugVisitor != null) {
+            debugVisitor.visitParameterName(0, "argument");
+            debugVisitor.visitLineNumber(10 + method, start);
+            debugVisitor.visitEnd();
+        }
+        codeVisitor.visitEnd();
+    }
+}
@@ -0,0 +1,22 @@
+package com.obfuscation.bench;
+
+/**
+ * A single benchmarked operation. Its result is consumed by the runner, so
+ * the JIT can't eliminate the work that produced it.
+ */
+public class BenchmarkCase {
+    /**
+     * The operation of a benchmark case.
+     */
+    public interface Operation {
+        Object run() throws Exception;
+    }
+
+    public final String name;
+    public final Operation operation;
+
+    public BenchmarkCase(String name, Operation operation) {
+        this.name = name;
+        this.operation = operation;
+    }
+}
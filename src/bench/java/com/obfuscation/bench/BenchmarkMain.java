@@ -0,0 +1,97 @@
+package com.obfuscation.bench;
+
+import com.obfuscation.utils.Log;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the hot path benchmarks, writes their results and compares them with
+ * the baseline. Exits with 1 if any benchmark regressed.
+ * <p>
+ * Every case is measured together with the reference case, and compared with
+ * the baseline as a multiple of it.
+ * </p>
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        OptionParser parser = new OptionParser();
+        parser.accepts("out", "Result file.").withRequiredArg().ofType(String.class).defaultsTo("build/bench/results.json");
+        parser.accepts("baseline", "Baseline file to compare with.").withRequiredArg().ofType(String.class);
+        parser.accepts("update-baseline", "Write the results to the baseline file instead of comparing.");
+        parser.accepts("tolerance", "Allowed slowdown relative to the reference case against the baseline, as a fraction.")
+                .withRequiredArg().ofType(Double.class).defaultsTo(0.3);
+        parser.accepts("filter", "Only run the benchmarks whose name matches this regular expression.")
+                .withRequiredArg().ofType(String.class);
+        parser.accepts("warmup-ms").withRequiredArg().ofType(Integer.class).defaultsTo(2000);
+        parser.accepts("iteration-ms").withRequiredArg().ofType(Integer.class).defaultsTo(500);
+        parser.accepts("iterations").withRequiredArg().ofType(Integer.class).defaultsTo(10);
+        OptionSet options = parser.parse(args);
+
+        Pattern filter = options.has("filter") ? Pattern.compile((String) options.valueOf("filter")) : null;
+        BenchmarkRunner runner = new BenchmarkRunner(
+                (Integer) options.valueOf("warmup-ms"),
+                (Integer) options.valueOf("iteration-ms"),
+                (Integer) options.valueOf("iterations")
+        );
+
+        Log.setLevel(Log.Level.WARN);
+        List<BenchmarkResult> results = new ArrayList<>();
+        List<BenchmarkCase> cases = new HotPathBenchmarks().cases();
+        BenchmarkCase reference = cases.stream()
+                .filter(benchmarkCase -> benchmarkCase.name.equals(HotPathBenchmarks.REFERENCE))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No reference case " + HotPathBenchmarks.REFERENCE));
+        for (BenchmarkCase benchmarkCase : cases) {
+            if (filter != null && !filter.matcher(benchmarkCase.name).find()) {
+                continue;
+            }
+            BenchmarkResult result = benchmarkCase == reference
+                    ? runner.run(benchmarkCase)
+                    : runner.run(benchmarkCase, reference);
+            results.add(result);
+            System.out.println(String.format(Locale.ROOT, "%-36s %16.1f ns/op  %8.3f x reference  (min %.1f, max %.1f)",
+                    result.name, result.nsPerOp, result.relative, result.minNsPerOp, result.maxNsPerOp));
+        }
+
+        Path out = Paths.get((String) options.valueOf("out"));
+        BenchmarkReport.write(results, out);
+        System.out.println("Results written to " + out);
+
+        if (!options.has("baseline")) {
+            return;
+        }
+        Path baseline = Paths.get((String) options.valueOf("baseline"));
+        if (options.has("update-baseline")) {
+            BenchmarkReport.write(results, baseline);
+            System.out.println("Baseline written to " + baseline);
+            return;
+        }
+        if (!Files.exists(baseline)) {
+            System.out.println("No baseline at " + baseline + ", nothing to compare with.");
+            return;
+        }
+
+        Map<String, Double> baselineScores = BenchmarkReport.readScores(baseline);
+        List<String> regressions = BenchmarkReport.regressions(
+                results,
+                baselineScores,
+                (Double) options.valueOf("tolerance")
+        );
+        if (regressions.isEmpty()) {
+            System.out.println("No regressions against " + baseline);
+            return;
+        }
+        System.out.println("Regressions against " + baseline + ":");
+        regressions.forEach(regression -> System.out.println("  " + regression));
+        System.exit(1);
+    }
+}
@@ -0,0 +1,120 @@
+package com.obfuscation.bench;
+
+import com.obfuscation.utils.JsonParser;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads and writes benchmark results as JSON, and compares them against a
+ * baseline:
+ * <pre>
+ * {
+ *   "java": "17.0.2",
+ *   "reference": "reference.sortAndHash",
+ *   "results": {
+ *     "dex.accept.default": { "nsPerOp": 5120000.0, "relative": 12.804, "minNsPerOp": 5010000.0, "maxNsPerOp": 5400000.0, "iterations": 5, "opsPerIteration": 195 }
+ *   }
+ * }
+ * </pre>
+ * <p>
+ * The relative score of a result is its time divided by the time of the
+ * {@link HotPathBenchmarks#REFERENCE} case, measured between its iterations,
+ * see {@link BenchmarkRunner#run(BenchmarkCase, BenchmarkCase)}. Absolute times
+ * depend on the machine and the JVM that measured them, but the ratios
+ * between two cases much less, so results are compared with the baseline by
+ * their relative scores and a baseline recorded on one machine holds on
+ * another.
+ * </p>
+ */
+public class BenchmarkReport {
+    private BenchmarkReport() {
+    }
+
+    /**
+     * Writes the given results to the given file.
+     */
+    public static void write(List<BenchmarkResult> results, Path file) throws IOException {
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("{\n");
+            writer.write("  \"java\": \"" + System.getProperty("java.version") + "\",\n");
+            writer.write("  \"reference\": \"" + HotPathBenchmarks.REFERENCE + "\",\n");
+            writer.write("  \"results\": {");
+            String separator = "\n";
+            for (BenchmarkResult result : results) {
+                writer.write(separator + String.format(Locale.ROOT,
+                        "    \"%s\": { \"nsPerOp\": %.1f, \"relative\": %.4f, \"minNsPerOp\": %.1f, "
+                        + "\"maxNsPerOp\": %.1f, \"iterations\": %d, \"opsPerIteration\": %d }",
+                        result.name,
+                        result.nsPerOp,
+                        result.relative,
+                        result.minNsPerOp,
+                        result.maxNsPerOp,
+                        result.iterations,
+                        result.opsPerIteration));
+                separator = ",\n";
+            }
+            writer.write(results.isEmpty() ? "}\n" : "\n  }\n");
+            writer.write("}\n");
+        }
+    }
+
+    /**
+     * Reads the relative scores of the given result file, keyed by benchmark
+     * name.
+     *
+     * @throws RuntimeException if the file isn't a benchmark result file, or
+     *                          was written without relative scores.
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Double> readScores(Path file) throws IOException {
+        Object json = JsonParser.parse(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        if (!(json instanceof Map) || !(((Map<String, Object>) json).get("results") instanceof Map)) {
+            throw new RuntimeException("Expecting a 'results' object in " + file);
+        }
+        Map<String, Double> scores = new LinkedHashMap<>();
+        ((Map<String, Object>) ((Map<String, Object>) json).get("results")).forEach((name, result) -> {
+            Object score = result instanceof Map ? ((Map<String, Object>) result).get("relative") : null;
+            if (!(score instanceof Number)) {
+                throw new RuntimeException("Expecting a number for 'relative' of '" + name + "' in " + file);
+            }
+            scores.put(name, ((Number) score).doubleValue());
+        });
+        return scores;
+    }
+
+    /**
+     * Returns a description of every result whose relative score is higher
+     * than its baseline score by more than the given tolerance. Results
+     * without a baseline are not compared.
+     *
+     * @param baseline  the relative scores of the baseline, see {@link #readScores(Path)}.
+     * @param tolerance the allowed slowdown, as a fraction of the baseline score.
+     */
+    public static List<String> regressions(List<BenchmarkResult> results, Map<String, Double> baseline, double tolerance) {
+        List<String> regressions = new ArrayList<>();
+        for (BenchmarkResult result : results) {
+            Double baselineScore = baseline.get(result.name);
+            double score = result.relative;
+            if (baselineScore != null && score > baselineScore * (1 + tolerance)) {
+                regressions.add(String.format(Locale.ROOT, "%s: %.3f x reference, baseline %.3f x reference (+%.0f%%)",
+                        result.name,
+                        score,
+                        baselineScore,
+                        100 * (score / baselineScore - 1)));
+            }
+        }
+        return regressions;
+    }
+}
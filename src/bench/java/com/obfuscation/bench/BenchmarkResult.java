@@ -0,0 +1,36 @@
+package com.obfuscation.bench;
+
+/**
+ * The measured cost of a {@link BenchmarkCase}, in nanoseconds per operation.
+ * The score is the median over the measurement iterations, which is less
+ * sensitive to a single disturbed iteration than the mean. The relative score
+ * is the median of the times of the iterations divided by the times of the
+ * reference iterations run between them.
+ */
+public class BenchmarkResult {
+    public final String name;
+    public final double nsPerOp;
+    public final double relative;
+    public final double minNsPerOp;
+    public final double maxNsPerOp;
+    public final int iterations;
+    public final long opsPerIteration;
+
+    public BenchmarkResult(
+            String name,
+            double nsPerOp,
+            double relative,
+            double minNsPerOp,
+            double maxNsPerOp,
+            int iterations,
+            long opsPerIteration
+    ) {
+        this.name = name;
+        this.nsPerOp = nsPerOp;
+        this.relative = relative;
+        this.minNsPerOp = minNsPerOp;
+        this.maxNsPerOp = maxNsPerOp;
+        this.iterations = iterations;
+        this.opsPerIteration = opsPerIteration;
+    }
+}
@@ -0,0 +1,111 @@
+package com.obfuscation.bench;
+
+import java.util.Arrays;
+
+/**
+ * Measures {@link BenchmarkCase}s with a fixed warmup time followed by a
+ * number of timed iterations.
+ * <p>
+ * The warmup runs the operation until the warmup time is over, which also
+ * tells how many operations fit into one measurement iteration. Every
+ * iteration then runs that many operations back to back and yields the
+ * average time per operation. Each result is written to a volatile field, so
+ * the work that produced it can't be eliminated.
+ * </p>
+ * <p>
+ * With a reference case, every iteration is followed by one of the reference,
+ * and the result also has the time relative to it.
+ * </p>
+ */
+public class BenchmarkRunner {
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private final long warmupNanos;
+    private final long iterationNanos;
+    private final int iterations;
+
+    @SuppressWarnings("unused")
+    private volatile Object blackhole;
+
+    /**
+     * @param warmupMillis    the warmup time of every case.
+     * @param iterationMillis the target time of one measurement iteration.
+     * @param iterations      the number of measurement iterations.
+     */
+    public BenchmarkRunner(long warmupMillis, long iterationMillis, int iterations) {
+        this.warmupNanos = warmupMillis * NANOS_PER_MILLI;
+        this.iterationNanos = iterationMillis * NANOS_PER_MILLI;
+        this.iterations = iterations;
+    }
+
+    /**
+     * Measures the given case alone, with a relative score of 1.
+     */
+    public BenchmarkResult run(BenchmarkCase benchmarkCase) throws Exception {
+        return run(benchmarkCase, null);
+    }
+
+    /**
+     * Measures the given case, and after every iteration of it an iteration
+     * of the reference case. The relative score is the median of the ratios
+     * of the two, so a machine that gets slower or faster during the run
+     * changes both sides of each ratio alike.
+     */
+    public BenchmarkResult run(BenchmarkCase benchmarkCase, BenchmarkCase reference) throws Exception {
+        long opsPerIteration = warmup(benchmarkCase.operation);
+        long referenceOpsPerIteration = reference != null ? warmup(reference.operation) : 0;
+
+        double[] scores = new double[iterations];
+        double[] ratios = new double[iterations];
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            scores[iteration] = measure(benchmarkCase.operation, opsPerIteration);
+            ratios[iteration] = reference != null
+                    ? scores[iteration] / measure(reference.operation, referenceOpsPerIteration)
+                    : 1;
+        }
+        blackhole = null;
+
+        Arrays.sort(scores);
+        return new BenchmarkResult(
+                benchmarkCase.name,
+                median(scores),
+                median(ratios),
+                scores[0],
+                scores[scores.length - 1],
+                iterations,
+                opsPerIteration
+        );
+    }
+
+    /**
+     * Runs the operation for the warmup time and returns how many operations
+     * fit into one measurement iteration.
+     */
+    private long warmup(BenchmarkCase.Operation operation) throws Exception {
+        long warmupOps = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            blackhole = operation.run();
+            warmupOps++;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < warmupNanos);
+        return Math.max(1, iterationNanos * warmupOps / Math.max(1, elapsed));
+    }
+
+    private double measure(BenchmarkCase.Operation operation, long ops) throws Exception {
+        long start = System.nanoTime();
+        for (long op = 0; op < ops; op++) {
+            blackhole = operation.run();
+        }
+        return (double) (System.nanoTime() - start) / ops;
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted.length % 2 == 1
+                ? sorted[sorted.length / 2]
+                : (sorted[sorted.length / 2 - 1] + sorted[sorted.length / 2]) / 2;
+    }
+}
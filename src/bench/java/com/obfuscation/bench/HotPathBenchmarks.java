@@ -0,0 +1,188 @@
+package com.obfuscation.bench;
+
+import com.googlecode.d2j.node.DexFileNode;
+import com.googlecode.d2j.reader.DexFileReader;
+import com.googlecode.d2j.util.Mutf8;
+import com.obfuscation.model.ClassIndex;
+import com.obfuscation.model.ConsistencyScope;
+import com.obfuscation.model.ConsistencyScopeBinaryWriter;
+import com.obfuscation.model.ConsistencyScopeWriter;
+import com.obfuscation.proconfig.ProConfig;
+import com.obfuscation.proconfig.ProConfigAdapter;
+import com.obfuscation.proconfig.ProConfigKeepParser;
+import com.obfuscation.proconfig.reader.LineWordReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.LineNumberReader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * The benchmark cases of the hot paths: dex reading at several reader flags,
+ * class lookups by descriptor, modified UTF-8 decoding, configuration parsing, rule matching and scope
+ * writing.
+ * <p>
+ * The {@link #REFERENCE} case sorts and hashes plain JDK collections and
+ * doesn't use any code of the project. It tells how fast the machine and the
+ * JVM are, so the other cases can be compared with a baseline of another
+ * machine as multiples of it, see {@link BenchmarkReport}.
+ * </p>
+ */
+public class HotPathBenchmarks {
+    public static final String REFERENCE = "reference.sortAndHash";
+
+    private static final int CLASS_COUNT = 5000;
+    private static final int STRING_COUNT = 10000;
+    private static final int RULE_COUNT = 2000;
+    private static final int LOOKUP_STRIDE = 5;
+    private static final int REFERENCE_SIZE = 20000;
+    private static final long REFERENCE_SEED = 0x5eed;
+
+    private final byte[] dex;
+    private final List<String> lookupDescriptors = new ArrayList<>();
+    private final ClassIndex classIndex;
+    private final ProConfig adapterConfig;
+    private final ClassIndex syntheticClassIndex;
+    private final ProConfig syntheticConfig;
+    private final String largeConfig;
+    private final ByteBuffer asciiStrings;
+    private final ByteBuffer mixedStrings;
+    private final ConsistencyScope scope;
+    private final Path binaryScopeFile;
+    private final long[] referenceNumbers = new long[REFERENCE_SIZE];
+    private final String[] referenceStrings = new String[REFERENCE_SIZE];
+
+    public HotPathBenchmarks() throws IOException {
+        dex = BenchFixtures.dex(CLASS_COUNT);
+        classIndex = BenchFixtures.classIndex(dex);
+        List<String> classNames = new DexFileReader(dex).getClassNames();
+        for (int index = 0; index < classNames.size(); index += LOOKUP_STRIDE) {
+            lookupDescriptors.add(classNames.get(index));
+            lookupDescriptors.add(classNames.get(index).replace(';', '$') + "Missing;");
+        }
+        adapterConfig = parse(BenchFixtures.adapterConfig());
+
+        SyntheticApkSpec spec = new SyntheticApkSpec();
+        spec.classCount = CLASS_COUNT;
+        SyntheticApkGenerator generator = new SyntheticApkGenerator(spec);
+        syntheticClassIndex = BenchFixtures.classIndex(generator.dexFiles());
+        syntheticConfig = parse(generator.config());
+        largeConfig = BenchFixtures.largeConfig(RULE_COUNT);
+        asciiStrings = BenchFixtures.mutf8Strings(STRING_COUNT, false);
+        mixedStrings = BenchFixtures.mutf8Strings(STRING_COUNT, true);
+        scope = new ProConfigAdapter(classIndex).scopeOf(adapterConfig);
+        binaryScopeFile = Files.createTempFile("bench-scope", ".bin");
+        binaryScopeFile.toFile().deleteOnExit();
+        Random random = new Random(REFERENCE_SEED);
+        for (int index = 0; index < REFERENCE_SIZE; index++) {
+            referenceNumbers[index] = random.nextLong();
+            referenceStrings[index] = "com/example/reference/Class" + Long.toHexString(random.nextLong());
+        }
+    }
+
+    public List<BenchmarkCase> cases() {
+        List<BenchmarkCase> cases = new ArrayList<>();
+        cases.add(new BenchmarkCase(REFERENCE, this::sortAndHash));
+        cases.add(new BenchmarkCase("dex.accept.default", () -> accept(0)));
+        cases.add(new BenchmarkCase("dex.accept.skipDebug", () -> accept(DexFileReader.SKIP_DEBUG)));
+        cases.add(new BenchmarkCase("dex.accept.skipCode", () -> accept(DexFileReader.SKIP_CODE | DexFileReader.SKIP_DEBUG)));
+        cases.add(new BenchmarkCase("dex.accept.declarationsOnly", () -> accept(
+                DexFileReader.SKIP_CODE | DexFileReader.SKIP_DEBUG
+                | DexFileReader.SKIP_ANNOTATION | DexFileReader.SKIP_FIELD_CONSTANT)));
+        cases.add(new BenchmarkCase("dex.findClassDef", this::findClassDefs));
+        cases.add(new BenchmarkCase("mutf8.decode.ascii", () -> decode(asciiStrings)));
+        cases.add(new BenchmarkCase("mutf8.decode.mixed", () -> decode(mixedStrings)));
+        cases.add(new BenchmarkCase("config.parse.large", () -> parse(largeConfig)));
+        cases.add(new BenchmarkCase("adapter.scopeOf", () -> new ProConfigAdapter(classIndex).scopeOf(adapterConfig)));
+        cases.add(new BenchmarkCase("adapter.scopeOf.synthetic",
+                () -> new ProConfigAdapter(syntheticClassIndex).scopeOf(syntheticConfig)));
+        cases.add(new BenchmarkCase("adapter.scopeOf.synthetic.provenance",
+                () -> new ProConfigAdapter(syntheticClassIndex)
+                        .scopeOf(syntheticConfig, ProConfigAdapter.provenanceOf(syntheticConfig))));
+        cases.add(new BenchmarkCase("scope.write.text", this::writeText));
+        cases.add(new BenchmarkCase("scope.write.binary", this::writeBinary));
+        return cases;
+    }
+
+    /**
+     * Sorts a copy of the reference numbers and puts the reference strings
+     * into a hash map, the kind of work the other cases do most.
+     */
+    private Integer sortAndHash() {
+        long[] numbers = referenceNumbers.clone();
+        Arrays.sort(numbers);
+        Map<String, Long> map = new HashMap<>();
+        for (int index = 0; index < referenceStrings.length; index++) {
+            map.put(referenceStrings[index], numbers[index]);
+        }
+        return map.size();
+    }
+
+    private DexFileNode accept(int config) {
+        DexFileNode fileNode = new DexFileNode();
+        new DexFileReader(dex).accept(fileNode, config);
+        return fileNode;
+    }
+
+    /**
+     * Looks up one class of every {@link #LOOKUP_STRIDE} and as many missing
+     * classes in a new reader, so the class_def index is built each time.
+     */
+    private Integer findClassDefs() {
+        DexFileReader reader = new DexFileReader(dex);
+        int found = 0;
+        for (String descriptor : lookupDescriptors) {
+            if (reader.findClassDef(descriptor) >= 0) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private static String decode(ByteBuffer strings) throws IOException {
+        ByteBuffer in = strings.duplicate();
+        StringBuilder builder = new StringBuilder();
+        String last = null;
+        while (in.hasRemaining()) {
+            builder.setLength(0);
+            last = Mutf8.decode(in, builder);
+        }
+        return last;
+    }
+
+    private static ProConfig parse(String config) throws IOException {
+        ProConfig proConfig = new ProConfig();
+        LineWordReader reader = new LineWordReader(
+                new LineNumberReader(new StringReader(config)),
+                "benchmark configuration",
+                new File(".")
+        );
+        try (ProConfigKeepParser parser = new ProConfigKeepParser(reader, new Properties())) {
+            parser.parse(proConfig);
+        }
+        return proConfig;
+    }
+
+    private Object writeText() throws IOException {
+        try (ConsistencyScopeWriter writer = new ConsistencyScopeWriter(Writer.nullWriter())) {
+            writer.write(scope);
+        }
+        return scope;
+    }
+
+    private Object writeBinary() throws IOException {
+        ConsistencyScopeBinaryWriter.write(scope, binaryScopeFile);
+        return binaryScopeFile;
+    }
+}
@@ -0,0 +1,468 @@
+package com.obfuscation.bench;
+
+import com.googlecode.d2j.DexLabel;
+import com.googlecode.d2j.Field;
+import com.googlecode.d2j.Method;
+import com.googlecode.d2j.Visibility;
+import com.googlecode.d2j.dex.writer.DexFileWriter;
+import com.googlecode.d2j.reader.Op;
+import com.googlecode.d2j.visitors.DexAnnotationAble;
+import com.googlecode.d2j.visitors.DexAnnotationVisitor;
+import com.googlecode.d2j.visitors.DexClassVisitor;
+import com.googlecode.d2j.visitors.DexCodeVisitor;
+import com.googlecode.d2j.visitors.DexDebugVisitor;
+import com.googlecode.d2j.visitors.DexFieldVisitor;
+import com.googlecode.d2j.visitors.DexMethodVisitor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates multi-dex APKs of any size with {@link DexFileWriter}, along with
+ * keep configurations whose rules refer to the generated classes, so scale
+ * tests need no external inputs.
+ * <p>
+ * The classes are first planned from a {@link SyntheticApkSpec}: packages,
+ * super class chains, implemented interfaces, annotations and members are
+ * all chosen from a seeded random generator. The plan is then written into
+ * as many dex files as the reference limits of the dex format require, and
+ * the configuration is derived from the same plan.
+ * </p>
+ */
+public class SyntheticApkGenerator {
+    private static final String ROOT_PACKAGE = "com/synth";
+    private static final String OBJECT = "Ljava/lang/Object;";
+    private static final String[] FRAMEWORK_SUPER_CLASSES = {
+            "Landroid/app/Activity;", "Landroid/view/View;", "Landroid/app/Service;"
+    };
+    private static final String SERIALIZABLE = "Ljava/io/Serializable;";
+
+    private static final String[] CLASS_ANNOTATIONS = {
+            "Lcom/synth/annotations/Keep;", "Lcom/synth/annotations/Entity;", "Landroidx/annotation/Keep;"
+    };
+    private static final String FIELD_ANNOTATION = "Lcom/google/gson/annotations/SerializedName;";
+    private static final String METHOD_ANNOTATION = "Lcom/synth/annotations/Callback;";
+
+    private static final String[] VALUE_TYPES = { "I", "J", "Z", "Ljava/lang/String;", "Ljava/util/List;" };
+    private static final int[] FIELD_ACCESS = { 0x1, 0x2, 0x4, 0x9, 0x19, 0x12, 0x2 };
+    private static final int[] METHOD_ACCESS = { 0x1, 0x2, 0x4, 0x9, 0x11, 0x2, 0x1 };
+
+    /**
+     * A dex file refers to at most 65536 methods and fields. Dex files are
+     * closed a bit earlier, which leaves room for the referenced framework
+     * members.
+     */
+    private static final int MAX_REFERENCES_PER_DEX = 60000;
+
+    private final SyntheticApkSpec spec;
+    private final List<String> packages = new ArrayList<>();
+    private final List<PlannedClass> classes = new ArrayList<>();
+    private final List<PlannedClass> interfaces = new ArrayList<>();
+
+    public SyntheticApkGenerator(SyntheticApkSpec spec) {
+        this.spec = spec;
+        plan(new Random(spec.seed));
+    }
+
+    /**
+     * Writes the APK to the given file.
+     *
+     * @return the number of dex files written.
+     */
+    public int writeApk(Path apkFile) throws IOException {
+        List<byte[]> dexFiles = dexFiles();
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(apkFile))) {
+            for (int index = 0; index < dexFiles.size(); index++) {
+                zip.putNextEntry(new ZipEntry(index == 0 ? "classes.dex" : "classes" + (index + 1) + ".dex"));
+                zip.write(dexFiles.get(index));
+                zip.closeEntry();
+            }
+        }
+        return dexFiles.size();
+    }
+
+    /**
+     * Writes the keep configuration to the given file.
+     */
+    public void writeConfig(Path configFile) throws IOException {
+        try (OutputStream out = Files.newOutputStream(configFile)) {
+            out.write(config().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Returns the planned classes as dex files, split where a file would
+     * exceed the reference limits.
+     */
+    public List<byte[]> dexFiles() {
+        List<byte[]> dexFiles = new ArrayList<>();
+        DexFileWriter writer = new DexFileWriter();
+        int methodReferences = 0;
+        int fieldReferences = 0;
+        for (PlannedClass plannedClass : classes) {
+            if (methodReferences + plannedClass.methods.size() > MAX_REFERENCES_PER_DEX ||
+                fieldReferences + plannedClass.fields.size() > MAX_REFERENCES_PER_DEX
+            ) {
+                writer.visitEnd();
+                dexFiles.add(writer.toByteArray());
+                writer = new DexFileWriter();
+                methodReferences = 0;
+                fieldReferences = 0;
+            }
+            write(writer, plannedClass);
+            methodReferences += plannedClass.methods.size();
+            fieldReferences += plannedClass.fields.size();
+        }
+        writer.visitEnd();
+        dexFiles.add(writer.toByteArray());
+        return dexFiles;
+    }
+
+    /**
+     * Returns a keep configuration of {@link SyntheticApkSpec#ruleCount} rules
+     * that cycles through the common rule kinds: exact classes, package
+     * wildcards, annotations, super classes, interfaces, member access and
+     * signatures, names only and conditions. Every rule refers to the
+     * generated packages, classes and members.
+     */
+    public String config() {
+        Random random = new Random(spec.seed + 1);
+        StringBuilder config = new StringBuilder("# Synthetic configuration for " + classes.size() + " classes\n");
+        for (int index = 0; index < spec.ruleCount; index++) {
+            PlannedClass plannedClass = classes.get(random.nextInt(classes.size()));
+            String packageName = javaName(packages.get(random.nextInt(packages.size())));
+            switch (index % 11) {
+                case 0:
+                    config.append("-keep class ").append(javaName(plannedClass.name)).append(" { *; }\n");
+                    break;
+                case 1:
+                    config.append("-keep class ").append(packageName).append(".** { public <methods>; }\n");
+                    break;
+                case 2:
+                    config.append("-keep @").append(javaType(CLASS_ANNOTATIONS[index % CLASS_ANNOTATIONS.length]))
+                          .append(" class * { *; }\n");
+                    break;
+                case 3:
+                    String superName = plannedClass.superName.equals(OBJECT)
+                            ? FRAMEWORK_SUPER_CLASSES[index % FRAMEWORK_SUPER_CLASSES.length]
+                            : plannedClass.superName;
+                    config.append("-keep class * extends ").append(javaType(superName)).append('\n');
+                    break;
+                case 4:
+                    config.append("-keep class * implements ")
+                          .append(javaName(interfaces.get(random.nextInt(interfaces.size())).name)).append('\n');
+                    break;
+                case 5:
+                    config.append("-keepclassmembers class ").append(packageName).append(".* {\n")
+                          .append("    public static <fields>;\n")
+                          .append("}\n");
+                    break;
+                case 6:
+                    config.append("-keepclassmembers class * {\n")
+                          .append("    @").append(javaType(FIELD_ANNOTATION)).append(" <fields>;\n")
+                          .append("}\n");
+                    break;
+                case 7:
+                    PlannedMethod method = plannedClass.methods.get(random.nextInt(plannedClass.methods.size()));
+                    config.append("-keepclasseswithmembers class * {\n")
+                          .append("    ").append(javaMethod(method)).append(";\n")
+                          .append("}\n");
+                    break;
+                case 8:
+                    config.append("-keepnames class ").append(packageName).append(".*\n");
+                    break;
+                case 9:
+                    config.append("-if class ").append(javaName(plannedClass.name)).append('\n')
+                          .append("-keep class ").append(javaName(classes.get(random.nextInt(classes.size())).name))
+                          .append(" { <init>(); }\n");
+                    break;
+                default:
+                    config.append("-keepclassmembernames class * extends ")
+                          .append(javaType(FRAMEWORK_SUPER_CLASSES[index % FRAMEWORK_SUPER_CLASSES.length]))
+                          .append(" {\n")
+                          .append("    public *;\n")
+                          .append("}\n");
+                    break;
+            }
+        }
+        return config.toString();
+    }
+
+    /**
+     * Returns the number of planned classes, interfaces included.
+     */
+    public int classCount() {
+        return classes.size();
+    }
+
+    private void plan(Random random) {
+        planPackages(ROOT_PACKAGE, 0);
+
+        int interfaceCount = Math.max(1, (int) Math.round(spec.classCount * spec.interfaceRatio));
+        List<List<PlannedClass>> levels = new ArrayList<>();
+        for (int level = 0; level < Math.max(1, spec.hierarchyDepth); level++) {
+            levels.add(new ArrayList<>());
+        }
+
+        for (int index = 0; index < spec.classCount; index++) {
+            boolean isInterface = index < interfaceCount;
+            String packageName = packages.get(random.nextInt(packages.size()));
+            PlannedClass plannedClass = new PlannedClass(
+                    packageName + (isInterface ? "/I" : "/C") + index,
+                    isInterface
+            );
+
+            if (isInterface) {
+                plannedClass.access = 0x601;
+                plannedClass.superName = OBJECT;
+                interfaces.add(plannedClass);
+            } else {
+                int level = (index - interfaceCount) % levels.size();
+                List<PlannedClass> superLevel = level == 0 ? null : levels.get(level - 1);
+                plannedClass.access = 0x1 | (random.nextInt(8) == 0 ? 0x10 : 0);
+                if (superLevel == null || superLevel.isEmpty()) {
+                    plannedClass.superName = random.nextInt(4) == 0
+                            ? FRAMEWORK_SUPER_CLASSES[random.nextInt(FRAMEWORK_SUPER_CLASSES.length)]
+                            : OBJECT;
+                } else {
+                    plannedClass.superName = descriptor(superLevel.get(random.nextInt(superLevel.size())).name);
+                }
+                levels.get(level).add(plannedClass);
+
+                for (int count = 0; count < Math.min(spec.interfaceFanOut, interfaces.size()); count++) {
+                    String interfaceName = descriptor(interfaces.get(random.nextInt(interfaces.size())).name);
+                    if (!plannedClass.interfaces.contains(interfaceName)) {
+                        plannedClass.interfaces.add(interfaceName);
+                    }
+                }
+                if (random.nextInt(10) == 0) {
+                    plannedClass.interfaces.add(SERIALIZABLE);
+                }
+            }
+
+            if (random.nextDouble() < spec.annotationDensity) {
+                plannedClass.annotation = CLASS_ANNOTATIONS[random.nextInt(CLASS_ANNOTATIONS.length)];
+            }
+            planMembers(plannedClass, random);
+            classes.add(plannedClass);
+        }
+    }
+
+    private void planPackages(String packageName, int depth) {
+        packages.add(packageName);
+        if (depth >= spec.packageDepth) {
+            return;
+        }
+        for (int index = 0; index < spec.packageFanOut; index++) {
+            planPackages(packageName + "/p" + depth + index, depth + 1);
+        }
+    }
+
+    private void planMembers(PlannedClass plannedClass, Random random) {
+        for (int index = 0; index < spec.fieldsPerClass && !plannedClass.isInterface; index++) {
+            PlannedField field = new PlannedField();
+            field.access = FIELD_ACCESS[random.nextInt(FIELD_ACCESS.length)];
+            field.name = "f" + index;
+            field.type = VALUE_TYPES[random.nextInt(VALUE_TYPES.length)];
+            field.annotated = random.nextDouble() < spec.annotationDensity;
+            plannedClass.fields.add(field);
+        }
+
+        for (int index = 0; index < spec.methodsPerClass; index++) {
+            PlannedMethod method = new PlannedMethod();
+            if (index == 0 && !plannedClass.isInterface) {
+                method.access = 0x10001;
+                method.name = "<init>";
+                method.parameterTypes = new String[0];
+                method.returnType = "V";
+            } else {
+                method.access = plannedClass.isInterface
+                        ? 0x401
+                        : METHOD_ACCESS[random.nextInt(METHOD_ACCESS.length)];
+                method.name = "m" + index;
+                method.parameterTypes = new String[random.nextInt(3)];
+                for (int parameter = 0; parameter < method.parameterTypes.length; parameter++) {
+                    method.parameterTypes[parameter] = VALUE_TYPES[random.nextInt(VALUE_TYPES.length)];
+                }
+                method.returnType = random.nextInt(2) == 0 ? "V" : VALUE_TYPES[random.nextInt(VALUE_TYPES.length)];
+            }
+            method.annotated = random.nextDouble() < spec.annotationDensity;
+            plannedClass.methods.add(method);
+        }
+    }
+
+    private void write(DexFileWriter writer, PlannedClass plannedClass) {
+        String className = descriptor(plannedClass.name);
+        DexClassVisitor classVisitor = writer.visit(
+                plannedClass.access,
+                className,
+                plannedClass.superName,
+                plannedClass.interfaces.toArray(new String[0])
+        );
+        if (plannedClass.annotation != null) {
+            annotate(classVisitor, plannedClass.annotation);
+        }
+
+        for (PlannedField field : plannedClass.fields) {
+            DexFieldVisitor fieldVisitor = classVisitor.visitField(
+                    field.access,
+                    new Field(className, field.name, field.type),
+                    null
+            );
+            if (field.annotated) {
+                annotate(fieldVisitor, FIELD_ANNOTATION);
+            }
+            fieldVisitor.visitEnd();
+        }
+
+        for (PlannedMethod method : plannedClass.methods) {
+            DexMethodVisitor methodVisitor = classVisitor.visitMethod(
+                    method.access,
+                    new Method(className, method.name, method.parameterTypes, method.returnType)
+            );
+            if (method.annotated) {
+                annotate(methodVisitor, METHOD_ANNOTATION);
+            }
+            if (spec.withCode && (method.access & 0x400) == 0) {
+                writeCode(methodVisitor, method);
+            }
+            methodVisitor.visitEnd();
+        }
+        classVisitor.visitEnd();
+    }
+
+    private static void annotate(DexAnnotationAble annotationAble, String type) {
+        DexAnnotationVisitor annotationVisitor = annotationAble.visitAnnotation(type, Visibility.RUNTIME);
+        if (annotationVisitor != null) {
+            annotationVisitor.visitEnd();
+        }
+    }
+
+    /**
+     * Writes a body that returns the default value of the return type, with a
+     * line number and the parameter names as debug information.
+     */
+    private static void writeCode(DexMethodVisitor methodVisitor, PlannedMethod method) {
+        DexCodeVisitor codeVisitor = methodVisitor.visitCode();
+        if (codeVisitor == null) {
+            return;
+        }
+        int parameterRegisters = (method.access & 0x8) == 0 ? 1 : 0;
+        for (String parameterType : method.parameterTypes) {
+            parameterRegisters += isWide(parameterType) ? 2 : 1;
+        }
+        DexLabel start = new DexLabel();
+        codeVisitor.visitRegister(parameterRegisters + 2);
+        codeVisitor.visitLabel(start);
+        switch (method.returnType.charAt(0)) {
+            case 'V':
+                codeVisitor.visitStmt0R(Op.RETURN_VOID);
+                break;
+            case 'J':
+                codeVisitor.visitConstStmt(Op.CONST_WIDE_16, 0, 0L);
+                codeVisitor.visitStmt1R(Op.RETURN_WIDE, 0);
+                break;
+            case 'L':
+                codeVisitor.visitConstStmt(Op.CONST_4, 0, 0);
+                codeVisitor.visitStmt1R(Op.RETURN_OBJECT, 0);
+                break;
+            default:
+                codeVisitor.visitConstStmt(Op.CONST_4, 0, 0);
+                codeVisitor.visitStmt1R(Op.RETURN, 0);
+                break;
+        }
+
+        DexDebugVisitor debugVisitor = codeVisitor.visitDebug();
+        if (debugVisitor != null) {
+            for (int parameter = 0; parameter < method.parameterTypes.length; parameter++) {
+                debugVisitor.visitParameterName(parameter, "p" + parameter);
+            }
+            debugVisitor.visitLineNumber(1, start);
+            debugVisitor.visitEnd();
+        }
+        codeVisitor.visitEnd();
+    }
+
+    private static boolean isWide(String type) {
+        return type.equals("J") || type.equals("D");
+    }
+
+    private static String descriptor(String internalName) {
+        return "L" + internalName + ";";
+    }
+
+    private static String javaName(String internalName) {
+        return internalName.replace('/', '.');
+    }
+
+    /**
+     * Returns the Java name of the given type descriptor, as written in a
+     * configuration.
+     */
+    private static String javaType(String descriptor) {
+        switch (descriptor) {
+            case "V": return "void";
+            case "I": return "int";
+            case "J": return "long";
+            case "Z": return "boolean";
+            default:  return javaName(descriptor.substring(1, descriptor.length() - 1));
+        }
+    }
+
+    private static String javaMethod(PlannedMethod method) {
+        StringBuilder builder = new StringBuilder();
+        if ((method.access & 0x1) != 0) {
+            builder.append("public ");
+        }
+        if ((method.access & 0x8) != 0) {
+            builder.append("static ");
+        }
+        if (!method.name.equals("<init>")) {
+            builder.append(javaType(method.returnType)).append(' ');
+        }
+        builder.append(method.name).append('(');
+        for (int parameter = 0; parameter < method.parameterTypes.length; parameter++) {
+            builder.append(parameter == 0 ? "" : ", ").append(javaType(method.parameterTypes[parameter]));
+        }
+        return builder.append(')').toString();
+    }
+
+    private static class PlannedClass {
+        final String name;
+        final boolean isInterface;
+        final List<String> interfaces = new ArrayList<>();
+        final List<PlannedField> fields = new ArrayList<>();
+        final List<PlannedMethod> methods = new ArrayList<>();
+        int access;
+        String superName;
+        String annotation;
+
+        PlannedClass(String name, boolean isInterface) {
+            this.name = name;
+            this.isInterface = isInterface;
+        }
+    }
+
+    private static class PlannedField {
+        int access;
+        String name;
+        String type;
+        boolean annotated;
+    }
+
+    private static class PlannedMethod {
+        int access;
+        String name;
+        String[] parameterTypes;
+        String returnType;
+        boolean annotated;
+    }
+}
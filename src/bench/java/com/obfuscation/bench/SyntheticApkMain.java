@@ -0,0 +1,61 @@
+package com.obfuscation.bench;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Writes a synthetic APK and its keep configuration, see
+ * {@link SyntheticApkGenerator}.
+ */
+public class SyntheticApkMain {
+    public static void main(String[] args) throws Exception {
+        SyntheticApkSpec defaults = new SyntheticApkSpec();
+        OptionParser parser = new OptionParser();
+        parser.accepts("out", "Output directory.").withRequiredArg().ofType(String.class).defaultsTo("build/synthetic");
+        parser.accepts("name", "Base name of the APK and configuration files.")
+                .withRequiredArg().ofType(String.class).defaultsTo("synthetic");
+        parser.accepts("classes").withRequiredArg().ofType(Integer.class).defaultsTo(defaults.classCount);
+        parser.accepts("package-depth").withRequiredArg().ofType(Integer.class).defaultsTo(defaults.packageDepth);
+        parser.accepts("package-fan-out").withRequiredArg().ofType(Integer.class).defaultsTo(defaults.packageFanOut);
+        parser.accepts("hierarchy-depth").withRequiredArg().ofType(Integer.class).defaultsTo(defaults.hierarchyDepth);
+        parser.accepts("interface-ratio").withRequiredArg().ofType(Double.class).defaultsTo(defaults.interfaceRatio);
+        parser.accepts("interface-fan-out").withRequiredArg().ofType(Integer.class).defaultsTo(defaults.interfaceFanOut);
+        parser.accepts("annotation-density").withRequiredArg().ofType(Double.class).defaultsTo(defaults.annotationDensity);
+        parser.accepts("methods").withRequiredArg().ofType(Integer.class).defaultsTo(defaults.methodsPerClass);
+        parser.accepts("fields").withRequiredArg().ofType(Integer.class).defaultsTo(defaults.fieldsPerClass);
+        parser.accepts("no-code", "Generate methods without code and debug information.");
+        parser.accepts("rules").withRequiredArg().ofType(Integer.class).defaultsTo(defaults.ruleCount);
+        parser.accepts("seed").withRequiredArg().ofType(Long.class).defaultsTo(defaults.seed);
+        OptionSet options = parser.parse(args);
+
+        SyntheticApkSpec spec = new SyntheticApkSpec();
+        spec.classCount = (Integer) options.valueOf("classes");
+        spec.packageDepth = (Integer) options.valueOf("package-depth");
+        spec.packageFanOut = (Integer) options.valueOf("package-fan-out");
+        spec.hierarchyDepth = (Integer) options.valueOf("hierarchy-depth");
+        spec.interfaceRatio = (Double) options.valueOf("interface-ratio");
+        spec.interfaceFanOut = (Integer) options.valueOf("interface-fan-out");
+        spec.annotationDensity = (Double) options.valueOf("annotation-density");
+        spec.methodsPerClass = (Integer) options.valueOf("methods");
+        spec.fieldsPerClass = (Integer) options.valueOf("fields");
+        spec.withCode = !options.has("no-code");
+        spec.ruleCount = (Integer) options.valueOf("rules");
+        spec.seed = (Long) options.valueOf("seed");
+
+        Path out = Paths.get((String) options.valueOf("out"));
+        Files.createDirectories(out);
+        String name = (String) options.valueOf("name");
+        Path apkFile = out.resolve(name + ".apk");
+        Path configFile = out.resolve(name + ".pro");
+
+        SyntheticApkGenerator generator = new SyntheticApkGenerator(spec);
+        int dexCount = generator.writeApk(apkFile);
+        generator.writeConfig(configFile);
+        System.out.println("Wrote " + generator.classCount() + " classes in " + dexCount + " dex files to " + apkFile);
+        System.out.println("Wrote " + spec.ruleCount + " keep rules to " + configFile);
+    }
+}
@@ -0,0 +1,32 @@
+package com.obfuscation.bench;
+
+/**
+ * The shape of a synthetic APK and its configuration, see
+ * {@link SyntheticApkGenerator}. The defaults describe a mid-sized app.
+ */
+public class SyntheticApkSpec {
+    /** The number of classes, interfaces included. */
+    public int classCount = 10000;
+    /** The number of package levels below the root package. */
+    public int packageDepth = 3;
+    /** The number of sub-packages of every package. */
+    public int packageFanOut = 4;
+    /** The length of the longest chain of generated super classes. */
+    public int hierarchyDepth = 4;
+    /** The fraction of the classes that are interfaces. */
+    public double interfaceRatio = 0.05;
+    /** The number of generated interfaces every class implements. */
+    public int interfaceFanOut = 2;
+    /** The fraction of the classes, methods and fields that are annotated. */
+    public double annotationDensity = 0.1;
+    /** The number of methods of every class. */
+    public int methodsPerClass = 8;
+    /** The number of fields of every class. */
+    public int fieldsPerClass = 4;
+    /** Whether the methods have code and debug information. */
+    public boolean withCode = true;
+    /** The number of keep rules of the generated configuration. */
+    public int ruleCount = 200;
+    /** The seed of every random choice, so the same spec gives the same APK. */
+    public long seed = 42;
+}
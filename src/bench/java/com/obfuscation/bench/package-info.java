@@ -0,0 +1,4 @@
+/**
+ * Provides the benchmark harness for the reader, parser and adapter hot paths, run by the Gradle bench task.
+ */
+package com.obfuscation.bench;
@@ -16,7 +16,8 @@
 package com.googlecode.d2j;
 
 /**
- * represent a field_id_item in dex file format
+ * represent a field_id_item in dex file format. Instances are immutable, and a {@link
+ * com.googlecode.d2j.reader.DexFileReader} shares them between the fields that reference the same field_id_item.
  * 
  * @author <a href="mailto:pxb1988@gmail.com">Panxiaobo</a>
  * @version $Rev$
@@ -25,15 +26,15 @@ public class Field {
     /**
      * name of the field.
      */
-    private String name;
+    private final String name;
     /**
      * owner class of the field, in TypeDescriptor format.
      */
-    private String owner;
+    private final String owner;
     /**
      * type of the field, in TypeDescriptor format.
      */
-    private String type;
+    private final String type;
 
     public Field(String owner, String name, String type) {
         this.owner = owner;
@@ -62,6 +63,26 @@ public class Field {
         return type;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Field field = (Field) o;
+
+        if (name != null ? !name.equals(field.name) : field.name != null) return false;
+        if (owner != null ? !owner.equals(field.owner) : field.owner != null) return false;
+        return type != null ? type.equals(field.type) : field.type == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = name != null ? name.hashCode() : 0;
+        result = 31 * result + (owner != null ? owner.hashCode() : 0);
+        result = 31 * result + (type != null ? type.hashCode() : 0);
+        return result;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -16,7 +16,8 @@
 package com.googlecode.d2j;
 
 /**
- * represent a method_id_item in dex file format
+ * represent a method_id_item in dex file format. Instances are immutable, and a {@link
+ * com.googlecode.d2j.reader.DexFileReader} shares them between the methods that reference the same method_id_item.
  * 
  * @author <a href="mailto:pxb1988@gmail.com">Panxiaobo</a>
  * @version $Rev$
@@ -25,15 +26,15 @@ public class Method {
     /**
      * name of the method.
      */
-    private String name;
+    private final String name;
     /**
      * owner class of the method, in TypeDescriptor format.
      */
-    private String owner;
+    private final String owner;
     /**
      * parameter types of the method, in TypeDescriptor format.
      */
-    private Proto proto;
+    private final Proto proto;
 
     public Proto getProto() {
         return proto;
@@ -17,6 +17,11 @@ package com.googlecode.d2j;
 
 import java.util.Arrays;
 
+/**
+ * represent a proto_id_item in dex file format. Instances are immutable, and a {@link
+ * com.googlecode.d2j.reader.DexFileReader} shares them between the methods of the same prototype, so the parameter
+ * types array must not be modified.
+ */
 public class Proto {
     public Proto(String[] parameterTypes, String returnType) {
         this.parameterTypes = parameterTypes;
@@ -24,18 +29,19 @@ public class Proto {
     }
 
     /**
-     * descriptor of the method, this will build after {@link #getDesc()}.
+     * descriptor of the method, this will build after {@link #getDesc()}. A racing thread at most builds an equal
+     * string again.
      */
     private String desc;
     /**
      * parameter types of the method, in TypeDescriptor format.
      */
-    private String[] parameterTypes;
+    private final String[] parameterTypes;
 
     /**
      * return type of the method, in TypeDescriptor format.
      */
-    private String returnType;
+    private final String returnType;
 
     /**
      * @return the parameterTypes
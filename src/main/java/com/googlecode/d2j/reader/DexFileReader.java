@@ -143,12 +143,38 @@ public class DexFileReader implements BaseDexFileReader {
     final int method_handle_ids_size;
     final int dex_version;
 
+    /**
+     * The references already read, by id. Each is read once, so every class of the dex file shares the same
+     * instances.
+     */
+    private final String[] strings;
+    private final Proto[] protos;
+    private final Field[] fields;
+    private final Method[] methods;
+    private final DexReferencePool pool;
+    /**
+     * The class_def index of each type id, or -1 for the types this dex file doesn't define. Built on first use.
+     */
+    private int[] classDefIndexes;
+
     /**
      * read dex from a {@link ByteBuffer}.
      * 
      * @param in
      */
     public DexFileReader(ByteBuffer in) {
+        this(in, null);
+    }
+
+    /**
+     * read dex from a {@link ByteBuffer}, sharing its strings, protos, methods and fields with the other readers of
+     * the given pool.
+     *
+     * @param in
+     * @param pool
+     *            the pool of the dex files of the same application, or null
+     */
+    public DexFileReader(ByteBuffer in, DexReferencePool pool) {
         in.position(0);
         in = in.asReadOnlyBuffer().order(ByteOrder.BIG_ENDIAN);
         int magic = in.getInt() & 0xFFFFFF00;
@@ -250,6 +276,12 @@ public class DexFileReader implements BaseDexFileReader {
         encodedArrayItemIn = in.duplicate().order(ByteOrder.LITTLE_ENDIAN);
         typeListIn = in.duplicate().order(ByteOrder.LITTLE_ENDIAN);
         debugInfoIn = in.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        this.strings = new String[string_ids_size];
+        this.protos = new Proto[proto_ids_size];
+        this.fields = new Field[field_ids_size];
+        this.methods = new Method[method_ids_size];
+        this.pool = pool;
     }
 
     /**
@@ -262,6 +294,17 @@ public class DexFileReader implements BaseDexFileReader {
         this(ByteBuffer.wrap(data));
     }
 
+    /**
+     * @param data
+     *            the byte array of dex
+     * @param pool
+     *            the pool of the dex files of the same application, or null
+     * @see #DexFileReader(ByteBuffer, DexReferencePool)
+     */
+    public DexFileReader(byte[] data, DexReferencePool pool) {
+        this(ByteBuffer.wrap(data), pool);
+    }
+
     /**
      * 
      * @param file
@@ -609,6 +652,150 @@ public class DexFileReader implements BaseDexFileReader {
         return names;
     }
 
+    /**
+     * Returns the id of the given string, or -1 if this dex file doesn't have it.
+     * <p>
+     * The string ids are sorted by the UTF-16 code units of their strings. For strings without '\0', that is
+     * the order of the unsigned bytes of their modified UTF-8 encoding, so the ids are binary searched by
+     * comparing the encoded bytes in place, without decoding any string.
+     * </p>
+     */
+    public int findStringId(String string) {
+        try {
+            return findStringId(Mutf8.encode(string));
+        } catch (UTFDataFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the id of the string of the given modified UTF-8 bytes, without the terminating zero, or -1 if this
+     * dex file doesn't have it.
+     */
+    public int findStringId(byte[] mutf8) {
+        int low = 0;
+        int high = string_ids_size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int diff = compareString(middle, mutf8);
+            if (diff < 0) {
+                low = middle + 1;
+            } else if (diff > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the id of the given type descriptor, like "Lcom/foo/Bar;", or -1 if this dex file doesn't refer to
+     * it. The type ids are sorted by string id, so they are binary searched too.
+     */
+    public int findTypeId(String descriptor) {
+        int stringId = findStringId(descriptor);
+        if (stringId < 0) {
+            return -1;
+        }
+        int low = 0;
+        int high = type_ids_size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int diff = Integer.compareUnsigned(typeIdIn.getInt(middle * 4), stringId);
+            if (diff < 0) {
+                low = middle + 1;
+            } else if (diff > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the class_def of the given type id, or -1 if this dex file doesn't define the type. The
+     * first call indexes the class_defs by type, reading one int of each.
+     */
+    public int getClassDefIndex(int typeId) {
+        int[] indexes = classDefIndexes;
+        if (indexes == null) {
+            indexes = new int[type_ids_size];
+            Arrays.fill(indexes, -1);
+            for (int cid = 0; cid < class_defs_size; cid++) {
+                indexes[classDefIn.getInt(cid * 32)] = cid;
+            }
+            classDefIndexes = indexes;
+        }
+        return typeId < 0 || typeId >= indexes.length ? -1 : indexes[typeId];
+    }
+
+    /**
+     * Returns the index of the class_def of the given class descriptor, like "Lcom/foo/Bar;", or -1 if this dex
+     * file doesn't define the class. Nothing but the descriptor is decoded; pass the index to
+     * {@link #accept(DexFileVisitor, int, int)} to read the class.
+     */
+    public int findClassDef(String descriptor) {
+        int typeId = findTypeId(descriptor);
+        return typeId < 0 ? -1 : getClassDefIndex(typeId);
+    }
+
+    /**
+     * Compares the string of the given id with the given modified UTF-8 bytes, by their unsigned bytes, without
+     * decoding the string.
+     */
+    public int compareString(int id, byte[] mutf8) {
+        return Mutf8.compare(stringDataIn, stringDataOffset(id), mutf8);
+    }
+
+    /**
+     * Returns whether the string of the given id starts with the given modified UTF-8 bytes, like "Lcom/foo/",
+     * without decoding the string.
+     */
+    public boolean stringStartsWith(int id, byte[] prefix) {
+        return Mutf8.startsWith(stringDataIn, stringDataOffset(id), prefix);
+    }
+
+    /**
+     * Returns whether the string of the given id matches the given modified UTF-8 class name pattern, like
+     * "Lcom/foo/**;", without decoding the string. See {@link Mutf8#matches(ByteBuffer, int, byte[])} for the
+     * wildcards.
+     */
+    public boolean stringMatches(int id, byte[] pattern) {
+        return Mutf8.matches(stringDataIn, stringDataOffset(id), pattern);
+    }
+
+    /**
+     * Returns the {@link String#hashCode()} of the string of the given id, without decoding the string.
+     */
+    public int getStringHashCode(int id) {
+        int offset = stringDataOffset(id);
+        try {
+            return Mutf8.hashCode(stringDataIn, offset);
+        } catch (UTFDataFormatException e) {
+            throw new DexException(e, "fail to load string %d@%08x", id, offset);
+        }
+    }
+
+    /**
+     * Returns the string id of the descriptor of the class of the given class_def, to test its name with the string
+     * helpers above before the class is read.
+     */
+    public int getClassDescriptorId(int classIdx) {
+        return typeIdIn.getInt(classDefIn.getInt(classIdx * 32) * 4);
+    }
+
+    /**
+     * Returns the offset of the modified UTF-8 bytes of the string of the given id, past its utf16_size.
+     */
+    private int stringDataOffset(int id) {
+        int offset = stringIdIn.getInt(id * 4);
+        while ((stringDataIn.get(offset++) & 0x80) != 0) {
+        }
+        return offset;
+    }
+
     /**
      * Makes the given visitor visit the dex file.
      * 
@@ -916,11 +1103,16 @@ public class DexFileReader implements BaseDexFileReader {
     }
 
     private Field getField(int id) {
-        fieldIdIn.position(id * 8);
-        int owner_idx = 0xFFFF & fieldIdIn.getShort();
-        int type_idx = 0xFFFF & fieldIdIn.getShort();
-        int name_idx = fieldIdIn.getInt();
-        return new Field(getType(owner_idx), getString(name_idx), getType(type_idx));
+        Field field = fields[id];
+        if (field == null) {
+            fieldIdIn.position(id * 8);
+            int owner_idx = 0xFFFF & fieldIdIn.getShort();
+            int type_idx = 0xFFFF & fieldIdIn.getShort();
+            int name_idx = fieldIdIn.getInt();
+            field = new Field(getType(owner_idx), getString(name_idx), getType(type_idx));
+            fields[id] = field = pool == null ? field : pool.intern(field);
+        }
+        return field;
     }
 
     private String[] getTypeList(int offset) {
@@ -937,41 +1129,52 @@ public class DexFileReader implements BaseDexFileReader {
     }
 
     private Proto getProto(int proto_idx) {
-        String[] parameterTypes;
-        String returnType;
-
-        protoIdIn.position(proto_idx * 12 + 4); // move to position and skip shorty_idx
-
-        int return_type_idx = protoIdIn.getInt();
-        int parameters_off = protoIdIn.getInt();
+        Proto proto = protos[proto_idx];
+        if (proto == null) {
+            protoIdIn.position(proto_idx * 12 + 4); // move to position and skip shorty_idx
 
-        returnType = getType(return_type_idx);
+            int return_type_idx = protoIdIn.getInt();
+            int parameters_off = protoIdIn.getInt();
 
-        parameterTypes = getTypeList(parameters_off);
-        return new Proto(parameterTypes, returnType);
+            String returnType = getType(return_type_idx);
+            String[] parameterTypes = getTypeList(parameters_off);
+            proto = new Proto(parameterTypes, returnType);
+            protos[proto_idx] = proto = pool == null ? proto : pool.intern(proto);
+        }
+        return proto;
     }
 
     private Method getMethod(int id) {
-        methoIdIn.position(id * 8);
-        int owner_idx = 0xFFFF & methoIdIn.getShort();
-        int proto_idx = 0xFFFF & methoIdIn.getShort();
-        int name_idx = methoIdIn.getInt();
-        return new Method(getType(owner_idx), getString(name_idx), getProto(proto_idx));
+        Method method = methods[id];
+        if (method == null) {
+            methoIdIn.position(id * 8);
+            int owner_idx = 0xFFFF & methoIdIn.getShort();
+            int proto_idx = 0xFFFF & methoIdIn.getShort();
+            int name_idx = methoIdIn.getInt();
+            method = new Method(getType(owner_idx), getString(name_idx), getProto(proto_idx));
+            methods[id] = method = pool == null ? method : pool.intern(method);
+        }
+        return method;
     }
 
     private String getString(int id) {
         if (id == -1) {
             return null;
         }
-        int offset = stringIdIn.getInt(id * 4);
-        stringDataIn.position(offset);
-        int length = readULeb128i(stringDataIn);
-        try {
-            StringBuilder buff = new StringBuilder((int) (length * 1.5));
-            return Mutf8.decode(stringDataIn, buff);
-        } catch (UTFDataFormatException e) {
-            throw new DexException(e, "fail to load string %d@%08x", id, offset);
+        String string = strings[id];
+        if (string == null) {
+            int offset = stringIdIn.getInt(id * 4);
+            stringDataIn.position(offset);
+            int length = readULeb128i(stringDataIn);
+            try {
+                StringBuilder buff = new StringBuilder((int) (length * 1.5));
+                string = Mutf8.decode(stringDataIn, buff);
+            } catch (UTFDataFormatException e) {
+                throw new DexException(e, "fail to load string %d@%08x", id, offset);
+            }
+            strings[id] = string = pool == null ? string : pool.intern(string);
         }
+        return string;
     }
 
     private String getType(int id) {
@@ -0,0 +1,55 @@
+package com.googlecode.d2j.reader;
+
+import com.googlecode.d2j.Field;
+import com.googlecode.d2j.Method;
+import com.googlecode.d2j.Proto;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical strings, protos, methods and fields shared by the {@link DexFileReader}s of the dex files of one
+ * application.
+ * <p>
+ * Each reader already returns one instance per id of its dex file. Readers created with the same pool also return
+ * the same instance for a reference that several dex files define, so a descriptor like <code>()V</code> is stored
+ * once for the whole application and equal references are usually identical. The references are immutable, and the
+ * pool can be shared by readers running in parallel.
+ * </p>
+ */
+public final class DexReferencePool {
+    private final ConcurrentHashMap<String, String> strings = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Proto, Proto> protos = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Method, Method> methods = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Field, Field> fields = new ConcurrentHashMap<>();
+
+    public String intern(String string) {
+        return intern(strings, string);
+    }
+
+    public Proto intern(Proto proto) {
+        return intern(protos, proto);
+    }
+
+    public Method intern(Method method) {
+        return intern(methods, method);
+    }
+
+    public Field intern(Field field) {
+        return intern(fields, field);
+    }
+
+    /**
+     * @return the number of distinct strings, protos, methods and fields in this pool.
+     */
+    public int size() {
+        return strings.size() + protos.size() + methods.size() + fields.size();
+    }
+
+    private static <T> T intern(ConcurrentHashMap<T, T> pool, T value) {
+        if (value == null) {
+            return null;
+        }
+        T canonical = pool.putIfAbsent(value, value);
+        return canonical == null ? value : canonical;
+    }
+}
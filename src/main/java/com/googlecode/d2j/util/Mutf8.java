@@ -61,6 +61,135 @@ public final class Mutf8 {
         }
     }
 
+    /**
+     * Compares the zero-terminated string at {@code offset} in {@code in} with the modified UTF-8 bytes
+     * {@code mutf8}, which have no terminating zero, by their unsigned bytes. Nothing is decoded and the position of
+     * {@code in} is left as is.
+     *
+     * @return a negative value, zero or a positive value as the string is less than, equal to or greater than the
+     *         bytes.
+     */
+    public static int compare(ByteBuffer in, int offset, byte[] mutf8) {
+        for (int i = 0; ; i++) {
+            int b = in.get(offset + i) & 0xff;
+            if (b == 0) {
+                return i == mutf8.length ? 0 : -1;
+            }
+            if (i == mutf8.length) {
+                return 1;
+            }
+            int diff = b - (mutf8[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+    }
+
+    /**
+     * Returns whether the zero-terminated string at {@code offset} in {@code in} starts with the modified UTF-8
+     * bytes {@code prefix}.
+     */
+    public static boolean startsWith(ByteBuffer in, int offset, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            // The zero terminator never equals a byte of an encoded string
+            if (in.get(offset + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the {@link String#hashCode()} of the zero-terminated string at {@code offset} in {@code in}, computed
+     * from its characters as they are decoded, without building the string.
+     */
+    public static int hashCode(ByteBuffer in, int offset) throws UTFDataFormatException {
+        int hash = 0;
+        while (true) {
+            int a = in.get(offset++) & 0xff;
+            if (a == 0) {
+                return hash;
+            }
+            char ch;
+            if (a < 0x80) {
+                ch = (char) a;
+            } else if ((a & 0xe0) == 0xc0) {
+                int b = in.get(offset++) & 0xff;
+                if ((b & 0xC0) != 0x80) {
+                    throw new UTFDataFormatException("bad second byte");
+                }
+                ch = (char) (((a & 0x1F) << 6) | (b & 0x3F));
+            } else if ((a & 0xf0) == 0xe0) {
+                int b = in.get(offset++) & 0xff;
+                int c = in.get(offset++) & 0xff;
+                if (((b & 0xC0) != 0x80) || ((c & 0xC0) != 0x80)) {
+                    throw new UTFDataFormatException("bad second or third byte");
+                }
+                ch = (char) (((a & 0x0F) << 12) | ((b & 0x3F) << 6) | (c & 0x3F));
+            } else {
+                throw new UTFDataFormatException("bad byte");
+            }
+            hash = 31 * hash + ch;
+        }
+    }
+
+    /**
+     * Returns whether the whole zero-terminated string at {@code offset} in {@code in} matches the modified UTF-8
+     * bytes {@code pattern}, a class name pattern in internal form with the wildcards of ProGuard: {@code ?} matches
+     * any single character, {@code *} any part of a name, both without the package separator '/', and {@code **}
+     * any part of a name including separators. Every other byte matches itself.
+     * <p>
+     * The wildcards are ASCII, and the bytes of a multi-byte character are never ASCII, so the pattern is matched
+     * byte by byte and a wildcard only ever skips whole characters.
+     * </p>
+     */
+    public static boolean matches(ByteBuffer in, int offset, byte[] pattern) {
+        return matches(in, offset, pattern, 0);
+    }
+
+    private static boolean matches(ByteBuffer in, int offset, byte[] pattern, int index) {
+        while (index < pattern.length) {
+            byte p = pattern[index];
+            if (p == '*') {
+                boolean separators = index + 1 < pattern.length && pattern[index + 1] == '*';
+                index += separators ? 2 : 1;
+                while (true) {
+                    if (matches(in, offset, pattern, index)) {
+                        return true;
+                    }
+                    byte b = in.get(offset);
+                    if (b == 0 || (b == '/' && !separators)) {
+                        return false;
+                    }
+                    offset += charLength(b);
+                }
+            }
+            byte b = in.get(offset);
+            if (p == '?') {
+                if (b == 0 || b == '/') {
+                    return false;
+                }
+                offset += charLength(b);
+            } else if (b == p) {
+                offset++;
+            } else {
+                return false;
+            }
+            index++;
+        }
+        return in.get(offset) == 0;
+    }
+
+    /**
+     * Returns the number of bytes of the character whose first byte is {@code b}.
+     */
+    private static int charLength(byte b) {
+        if ((b & 0x80) == 0) {
+            return 1;
+        }
+        return (b & 0xe0) == 0xc0 ? 2 : 3;
+    }
+
     /**
      * Returns the number of bytes the modified UTF8 representation of 's' would take.
      */
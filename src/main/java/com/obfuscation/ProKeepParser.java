@@ -1,11 +1,20 @@
 package com.obfuscation;
 
+import com.obfuscation.batch.BatchManifest;
+import com.obfuscation.batch.BatchRunner;
+import com.obfuscation.daemon.DaemonClient;
+import com.obfuscation.daemon.DaemonServer;
+import com.obfuscation.metrics.MetricsRegistry;
+import com.obfuscation.model.OffHeapClassIndex;
 import com.obfuscation.options.ParserAssembler;
 import com.obfuscation.options.PrettyHelpFormatter;
 import com.obfuscation.utils.Log;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 
+import java.io.File;
+import java.nio.file.Paths;
+
 public class ProKeepParser {
     public static final String VERSION_CODE = "1.0.0.0";
     public static final String MARK = "ProKeepParser v" + VERSION_CODE + "\n";
@@ -26,6 +35,28 @@ public class ProKeepParser {
                 return;
             }
 
+            Log.setLevel(Log.Level.of((String) options.valueOf("log-level")));
+            if (options.has("log-json")) {
+                Log.setJsonOutput(Paths.get((String) options.valueOf("log-json")));
+            }
+
+            int port = (Integer) options.valueOf("port");
+            if (options.has("daemon")) {
+                long cacheBudget = ((Integer) options.valueOf("cache-budget")).longValue() << 20;
+                OffHeapClassIndex.Storage offHeapStorage = options.has("off-heap")
+                        ? OffHeapClassIndex.Storage.of((String) options.valueOf("off-heap"))
+                        : null;
+                try (DaemonServer server = new DaemonServer(port, cacheBudget, offHeapStorage)) {
+                    server.run();
+                }
+                return;
+            } else if (options.has("stop-daemon")) {
+                System.exit(new DaemonClient(port).shutdown());
+            } else if (options.has("batch")) {
+                BatchManifest manifest = BatchManifest.load(new File((String) options.valueOf("batch")));
+                System.exit(new BatchRunner(manifest).run());
+            }
+
             String apkFilePath = options.has("apk")
                     ? (String) options.valueOf("apk") : null;
 
@@ -35,12 +66,45 @@ public class ProKeepParser {
             String outputDir = options.has("out")
                     ? (String) options.valueOf("out") : null;
 
+            if (options.has("client")) {
+                System.exit(new DaemonClient(port).adapt(
+                        apkFilePath,
+                        configFilePath,
+                        outputDir,
+                        options.has("gzip"),
+                        options.has("binary"),
+                        options.has("provenance"),
+                        options.has("profile-rules"),
+                        (String) options.valueOf("metrics")
+                ));
+            }
+
             ProKeepParserImpl proKeepParser = new ProKeepParserImpl(
                     apkFilePath,
                     configFilePath,
                     outputDir
             );
-            System.exit(proKeepParser.process());
+            proKeepParser.setCompressOutput(options.has("gzip"));
+            proKeepParser.setBinaryOutput(options.has("binary"));
+            proKeepParser.setProvenanceOutput(options.has("provenance"));
+            proKeepParser.setRuleProfileOutput(options.has("profile-rules"));
+            proKeepParser.setStreaming(options.has("streaming"));
+            if (options.has("memory-budget")) {
+                proKeepParser.setMemoryBudget(((Integer) options.valueOf("memory-budget")).longValue() << 20);
+            }
+            MetricsRegistry metrics = options.has("metrics") ? new MetricsRegistry() : MetricsRegistry.disabled();
+            proKeepParser.setMetrics(metrics);
+
+            int result = options.has("diff-cache")
+                    ? proKeepParser.processDiff(
+                            (String) options.valueOf("diff-cache"),
+                            (String) options.valueOf("diff-base"))
+                    : proKeepParser.process();
+
+            if (options.has("metrics")) {
+                metrics.write(Paths.get((String) options.valueOf("metrics")));
+            }
+            System.exit(result);
 
         } catch (Exception e) {
             Log.error(e.getMessage() + " (Tip: try --help)");
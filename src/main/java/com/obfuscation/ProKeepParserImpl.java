@@ -3,22 +3,78 @@ package com.obfuscation;
 import com.googlecode.d2j.node.DexClassNode;
 import com.googlecode.d2j.node.DexFileNode;
 import com.googlecode.d2j.reader.DexFileReader;
+import com.googlecode.d2j.reader.DexReferencePool;
+import com.googlecode.d2j.visitors.DexClassVisitor;
+import com.googlecode.d2j.visitors.DexFileVisitor;
+import com.obfuscation.constants.Ext;
 import com.obfuscation.constants.ResultCode;
+import com.obfuscation.diff.DiffAnalyzer;
+import com.obfuscation.diff.DiffCache;
+import com.obfuscation.input.ClassFileInput;
+import com.obfuscation.input.ModuleInput;
+import com.obfuscation.metrics.MetricsRegistry;
+import com.obfuscation.model.ClassIndex;
+import com.obfuscation.model.ConsistencyScope;
+import com.obfuscation.model.OffHeapClassIndex;
+import com.obfuscation.model.ScopeDelta;
+import com.obfuscation.proconfig.ProConfig;
 import com.obfuscation.proconfig.ProConfigAdapter;
+import com.obfuscation.proconfig.StreamingProConfigAdapter;
 import com.obfuscation.utils.Log;
 import com.obfuscation.utils.Utils;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 @SuppressWarnings("CallToPrintStackTrace")
 public class ProKeepParserImpl {
+    private static final int ESTIMATED_CLASS_NODE_EXPANSION = 4;
+    // One thread collects the classes while the other parses the configuration
+    private static final int PROCESS_THREADS = 2;
+
+    private static final String PHASE_ZIP_INFLATE   = "zip_inflate";
+    private static final String PHASE_DEX_ACCEPT    = "dex_accept";
+    private static final String PHASE_CLASS_ACCEPT  = "class_accept";
+    private static final String PHASE_CONFIG_PARSE  = "config_parse";
+    private static final String PHASE_RULE_MATCHING = "rule_matching";
+    private static final String PHASE_OUTPUT_WRITE  = "output_write";
+
+    private static final String COUNTER_MODULES     = "modules";
+    private static final String COUNTER_DEX_FILES   = "dex_files";
+    private static final String COUNTER_CLASSES     = "classes";
+    private static final String COUNTER_METHODS     = "methods";
+    private static final String COUNTER_FIELDS      = "fields";
+    private static final String COUNTER_RULES       = "rules";
+    private static final String COUNTER_KEPT_CLASS_NAMES        = "kept_class_names";
+    private static final String COUNTER_KEPT_METHOD_ACCESS      = "kept_method_access";
+    private static final String COUNTER_KEPT_FIELD_ACCESS       = "kept_field_access";
+    private static final String COUNTER_KEPT_METHOD_SIGNATURES  = "kept_method_signatures";
+    private static final String COUNTER_KEPT_FIELD_SIGNATURES   = "kept_field_signatures";
+
     private final String apkFilePath;
     private final String proConfigFilePath;
     private final String outputDirPath;
 
+    private boolean compressOutput;
+    private boolean binaryOutput;
+    private boolean provenanceOutput;
+    private boolean ruleProfileOutput;
+    private boolean streaming;
+    private long memoryBudget;
+    private MetricsRegistry metrics = MetricsRegistry.disabled();
+
     /**
      * Constructs a new ProKeepParserImpl instance with the specified file paths.
      *
@@ -36,32 +92,584 @@ public class ProKeepParserImpl {
         this.outputDirPath = outputDirPath;
     }
 
+    /**
+     * Specifies whether the output file should be gzip-compressed. The
+     * compressed file gets a ".gz" suffix.
+     */
+    public void setCompressOutput(boolean compressOutput) {
+        this.compressOutput = compressOutput;
+    }
+
+    /**
+     * Specifies whether the output file should be written in the compact
+     * binary format. The binary file gets a ".bin" suffix and is never
+     * gzip-compressed.
+     */
+    public void setBinaryOutput(boolean binaryOutput) {
+        this.binaryOutput = binaryOutput;
+    }
+
+    /**
+     * Specifies whether the rules that kept each entry should be written as
+     * well. The provenance file gets a ".provenance" suffix.
+     */
+    public void setProvenanceOutput(boolean provenanceOutput) {
+        this.provenanceOutput = provenanceOutput;
+    }
+
+    /**
+     * Specifies whether what each keep rule cost should be written as well,
+     * ranked from the most expensive rule. The report gets a ".profile" suffix.
+     */
+    public void setRuleProfileOutput(boolean ruleProfileOutput) {
+        this.ruleProfileOutput = ruleProfileOutput;
+    }
+
+    /**
+     * Specifies whether {@link #process()} matches the classes while the dex
+     * files are read rather than collecting them first, see
+     * {@link StreamingProConfigAdapter}. Provenance and rule profiles aren't
+     * recorded in this mode.
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    /**
+     * Specifies the number of heap bytes {@link #process()} may use for the class index, or 0 for
+     * no limit. With a limit, each class is encoded into an {@link OffHeapClassIndex} as soon as
+     * it is read, and the index is spilled to a memory-mapped file once the limit is exceeded.
+     * The limit only bounds the columns of the index: its strings and a record per class stay
+     * on the heap, see {@link OffHeapClassIndex.Collector#residentHeapBytes()}.
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Specifies the registry that records the phase timings and counters of
+     * the runs of this instance. Nothing is recorded by default.
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Processes the APK and ProGuard configuration files to adapt and output the configuration.
      * <p>
      * This method collects class nodes from the specified APK file, adapts the ProGuard configuration
      * using these class nodes, and writes the adapted configuration to the specified output directory.
+     * The configuration is parsed while the class nodes are collected, see {@link #processAsync()}.
+     * Both run on two threads of their own rather than on the common pool, since reading the files
+     * blocks and would take the pool from the other users of the process.
      * </p>
      */
     public int process() {
-        String proConfigFileName    = new File(proConfigFilePath).getName();
-        String outputFilePath       = outputDirPath + File.separator + proConfigFileName;
-        
-        Map<String, DexClassNode> classPath = new HashMap<>();
-        int result = collectClassNodes(apkFilePath, classPath);
+        if (streaming) {
+            return processStreaming();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(PROCESS_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "pro-keep-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            return processAsync(executor).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Processes the APK and ProGuard configuration files like {@link #process()}, on the common
+     * fork join pool. The files are read on the pool, so callers that share it with short tasks
+     * should give {@link #processAsync(Executor)} an executor of their own.
+     */
+    public CompletableFuture<Integer> processAsync() {
+        return processAsync(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Processes the APK and ProGuard configuration files like {@link #process()}, without blocking
+     * the calling thread.
+     * <p>
+     * The configuration is parsed and reduced while the class nodes are collected, since neither
+     * depends on the other; the rules are matched and the output written once both are done. In
+     * streaming mode, the classes are matched while they are read, so the configuration is parsed
+     * first.
+     * </p>
+     *
+     * @param executor the executor the parsing, collecting, matching and writing run on.
+     * @return a future of the same {@link ResultCode} as {@link #process()}. It completes
+     *         exceptionally where {@link #process()} would throw, e.g. on a syntax error in
+     *         the configuration.
+     */
+    public CompletableFuture<Integer> processAsync(Executor executor) {
+        if (streaming) {
+            return CompletableFuture.supplyAsync(this::processStreaming, executor);
+        }
+        if (proConfigFilePath == null || proConfigFilePath.isEmpty()) {
+            return CompletableFuture.completedFuture(ResultCode.FAILED);
+        }
+        CompletableFuture<ProConfig> proConfig = CompletableFuture.supplyAsync(this::loadProConfig, executor);
+        CompletableFuture<ClassIndex> classIndex = CompletableFuture.supplyAsync(() -> {
+            if (memoryBudget > 0) {
+                return collectBoundedClassIndex();
+            }
+            Map<String, DexClassNode> classPath = new HashMap<>();
+            Map<String, String> classModules = new HashMap<>();
+            if (collectClassNodes(apkFilePath, classPath, classModules) != ResultCode.SUCCESS) {
+                Log.error("Failed to collect class nodes from APK.");
+                return null;
+            }
+            return ClassIndex.of(classPath, classModules);
+        }, executor);
+        CompletableFuture<Integer> result = classIndex.thenCombineAsync(proConfig, (index, config) ->
+                index == null || config == null ? ResultCode.FAILED : process(index, config), executor);
+        // The combined future completes once both are done, also when the configuration failed to
+        // load, so a collected off-heap index is always there to be closed
+        return result.whenComplete((code, failure) -> classIndex.thenAccept(index -> {
+            if (index instanceof OffHeapClassIndex) {
+                close((OffHeapClassIndex) index);
+            }
+        }));
+    }
+
+    /**
+     * Adapts the ProGuard configuration to the given, already collected class nodes and
+     * writes the adapted configuration to the specified output directory.
+     *
+     * @param classIndex the class nodes of the APK, which can be shared between concurrent calls.
+     */
+    public int process(ClassIndex classIndex) {
+        if (proConfigFilePath == null || proConfigFilePath.isEmpty()) {
+            return ResultCode.FAILED;
+        }
+
+        ProConfig proConfig = loadProConfig();
+        return proConfig == null ? ResultCode.FAILED : process(classIndex, proConfig);
+    }
+
+    /**
+     * Adapts an already loaded ProGuard configuration to the given, already collected class
+     * nodes and writes the adapted configuration to the specified output directory. Neither
+     * argument is modified, so both can be shared between concurrent calls.
+     *
+     * @param classIndex the class nodes of the APK.
+     * @param proConfig  the configuration loaded from the configuration file, see
+     *                   {@link ProConfigAdapter#load(String)}.
+     */
+    public int process(ClassIndex classIndex, ProConfig proConfig) {
+        metrics.add(COUNTER_RULES, proConfig.keep.size());
+
+        ProConfigAdapter adapter = new ProConfigAdapter(classIndex);
+        adapter.setTrackProvenance(provenanceOutput);
+        adapter.setProfileRules(ruleProfileOutput);
+        int result;
+        try (MetricsRegistry.Phase phase = metrics.phase(PHASE_RULE_MATCHING)) {
+            result = adapter.adapt(proConfig);
+        }
         if (result != ResultCode.SUCCESS) {
-            Log.error("Failed to collect class nodes from APK.");
             return result;
         }
+        countKept(adapter.getScope());
+
+        try (MetricsRegistry.Phase phase = metrics.phase(PHASE_OUTPUT_WRITE)) {
+            result = write(adapter.getScope());
+            if (result == ResultCode.SUCCESS && adapter.getProvenance() != null) {
+                result = writeReport(Ext.PROVENANCE, adapter.getProvenance()::write);
+            }
+            if (result == ResultCode.SUCCESS && adapter.getRuleProfile() != null) {
+                result = writeReport(Ext.PROFILE, adapter.getRuleProfile()::writeReport);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Processes the APK and ProGuard configuration files like {@link #process()}, but matches
+     * each class as soon as it is read and only retains what it keeps.
+     */
+    private int processStreaming() {
+        if (proConfigFilePath == null || proConfigFilePath.isEmpty()) {
+            return ResultCode.FAILED;
+        }
+
+        ProConfig proConfig = loadProConfig();
+        if (proConfig == null) {
+            return ResultCode.FAILED;
+        }
+        metrics.add(COUNTER_RULES, proConfig.keep.size());
+        if (!proConfig.obfuscate) {
+            return ResultCode.NO_OBF_SUPPORT;
+        }
 
-        ProConfigAdapter adapter = new ProConfigAdapter(classPath);
-        result = adapter.adapt(proConfigFilePath);
+        StreamingProConfigAdapter adapter = new StreamingProConfigAdapter(proConfig);
+        int result = ClassFileInput.isClassFileArchive(apkFilePath)
+                ? streamClassFiles(adapter)
+                : ModuleInput.isModuleArchive(apkFilePath)
+                ? streamModules(adapter)
+                : streamDexFiles(adapter);
         if (result != ResultCode.SUCCESS) {
             return result;
         }
+        metrics.add(COUNTER_CLASSES, adapter.getClassCount());
 
-        result = adapter.writeAsFile(outputFilePath);
-        return result;
+        ConsistencyScope scope;
+        try (MetricsRegistry.Phase phase = metrics.phase(PHASE_RULE_MATCHING)) {
+            scope = adapter.finish();
+        }
+        countKept(scope);
+
+        try (MetricsRegistry.Phase phase = metrics.phase(PHASE_OUTPUT_WRITE)) {
+            return write(scope);
+        }
+    }
+
+    /**
+     * Collects the classes of the APK, JAR, AAR, app bundle or APK set into an off-heap index
+     * within the memory budget. Dex files are read one at a time, and each class node is dropped
+     * as soon as it is encoded. As in {@link #collectClassNodes(String, Map, Map)}, a class of an
+     * app bundle or APK set is taken from the first module that defines it, and a class of an APK
+     * from the last dex file; modules aren't recorded.
+     *
+     * @return the index, or null if the file can't be read.
+     */
+    private OffHeapClassIndex collectBoundedClassIndex() {
+        try (OffHeapClassIndex.Collector collector = new OffHeapClassIndex.Collector(memoryBudget, null)) {
+            // Shares the member references of the classes between the class and dex files
+            DexReferencePool pool = new DexReferencePool();
+            if (ClassFileInput.isClassFileArchive(apkFilePath)) {
+                List<byte[]> classFiles;
+                try (MetricsRegistry.Phase phase = metrics.phase(PHASE_ZIP_INFLATE)) {
+                    classFiles = ClassFileInput.readClassFiles(apkFilePath);
+                }
+                try (MetricsRegistry.Phase phase = metrics.phase(PHASE_CLASS_ACCEPT)) {
+                    for (int index = 0; index < classFiles.size(); index++) {
+                        DexClassNode classNode = ClassFileInput.accept(classFiles.get(index), pool);
+                        collector.add(Utils.normalizeClassName(classNode.className), classNode);
+                        classFiles.set(index, null);
+                        countMembers(classNode);
+                    }
+                }
+            } else if (ModuleInput.isModuleArchive(apkFilePath)) {
+                List<ModuleInput.Module> modules;
+                try (MetricsRegistry.Phase phase = metrics.phase(PHASE_ZIP_INFLATE)) {
+                    modules = ModuleInput.readModules(apkFilePath);
+                }
+                metrics.add(COUNTER_MODULES, modules.size());
+                for (ModuleInput.Module module : modules) {
+                    for (int index = 0; index < module.dexFiles.size(); index++) {
+                        collectDexFile(module.dexFiles.get(index), pool, collector, true);
+                        module.dexFiles.set(index, null);
+                    }
+                }
+            } else {
+                try (ZipFile zipFile = new ZipFile(apkFilePath)) {
+                    Enumeration<? extends ZipEntry> entries = zipFile.entries();
+                    while (entries.hasMoreElements()) {
+                        ZipEntry entry = entries.nextElement();
+                        if (!entry.getName().startsWith("classes") ||
+                            !entry.getName().endsWith(".dex")
+                        ) {
+                            continue;
+                        }
+                        byte[] dex;
+                        try (MetricsRegistry.Phase phase = metrics.phase(PHASE_ZIP_INFLATE);
+                             InputStream inputStream = zipFile.getInputStream(entry)
+                        ) {
+                            dex = inputStream.readAllBytes();
+                        }
+                        collectDexFile(dex, pool, collector, false);
+                    }
+                }
+            }
+            metrics.add(COUNTER_CLASSES, collector.size());
+            boolean spilled = collector.spilled();
+            long residentHeapBytes = collector.residentHeapBytes();
+            OffHeapClassIndex classIndex = collector.finish();
+            Log.info("Indexed " + classIndex.size() + " classes in "
+                    + (spilled ? "a memory-mapped file" : "direct memory")
+                    + " (" + (classIndex.offHeapBytes() >> 20) + " MB, "
+                    + (residentHeapBytes >> 20) + " MB of strings and class records on the heap)");
+            if (residentHeapBytes > memoryBudget) {
+                Log.warn("The strings and class records of the index took about "
+                        + (residentHeapBytes >> 20) + " MB of heap, more than the memory budget of "
+                        + (memoryBudget >> 20) + " MB, which only bounds what can be spilled");
+            }
+            return classIndex;
+        } catch (Exception e) {
+            e.printStackTrace();
+            Log.error("Failed to index the classes of " + apkFilePath);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the given dex file into the given collector, without code, one class at a time,
+     * interning its references in the given pool.
+     *
+     * @param firstWins whether a class that was already collected is kept rather than replaced.
+     */
+    private void collectDexFile(
+            byte[] dex,
+            DexReferencePool pool,
+            OffHeapClassIndex.Collector collector,
+            boolean firstWins
+    ) {
+        try (MetricsRegistry.Phase phase = metrics.phase(PHASE_DEX_ACCEPT)) {
+            new DexFileReader(dex, pool).accept(new DexFileVisitor() {
+                @Override
+                public DexClassVisitor visit(int accessFlags, String className, String superClass, String[] interfaceNames) {
+                    return new DexClassNode(accessFlags, className, superClass, interfaceNames) {
+                        @Override
+                        public void visitEnd() {
+                            String normalizedName = Utils.normalizeClassName(this.className);
+                            if (firstWins && collector.contains(normalizedName)) {
+                                return;
+                            }
+                            try {
+                                collector.add(normalizedName, this);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                            countMembers(this);
+                        }
+                    };
+                }
+            }, StreamingProConfigAdapter.READER_CONFIG);
+        }
+        metrics.increment(COUNTER_DEX_FILES);
+    }
+
+    private void countMembers(DexClassNode node) {
+        metrics.add(COUNTER_METHODS, node.methods == null ? 0 : node.methods.size());
+        metrics.add(COUNTER_FIELDS, node.fields == null ? 0 : node.fields.size());
+    }
+
+    private static void close(OffHeapClassIndex classIndex) {
+        try {
+            classIndex.close();
+        } catch (IOException e) {
+            Log.error(e.getMessage());
+        }
+    }
+
+    /**
+     * Loads and reduces the configuration file, or returns null if it can't be read.
+     */
+    private ProConfig loadProConfig() {
+        try (MetricsRegistry.Phase phase = metrics.phase(PHASE_CONFIG_PARSE)) {
+            return ProConfigAdapter.load(proConfigFilePath);
+        } catch (IOException e) {
+            Log.error(e.getMessage());
+            return null;
+        }
+    }
+
+    private int streamDexFiles(StreamingProConfigAdapter adapter) {
+        try (ZipFile zipFile = new ZipFile(apkFilePath)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.getName().startsWith("classes") ||
+                    !entry.getName().endsWith(".dex")
+                ) {
+                    continue;
+                }
+
+                byte[] dex;
+                try (MetricsRegistry.Phase phase = metrics.phase(PHASE_ZIP_INFLATE);
+                     InputStream inputStream = zipFile.getInputStream(entry)
+                ) {
+                    dex = inputStream.readAllBytes();
+                }
+                try (MetricsRegistry.Phase phase = metrics.phase(PHASE_DEX_ACCEPT)) {
+                    adapter.accept(dex);
+                }
+                metrics.increment(COUNTER_DEX_FILES);
+            }
+            return ResultCode.SUCCESS;
+        } catch (Exception e) {
+            e.printStackTrace();
+            Log.error("Failed to read the dex files of " + apkFilePath);
+            return ResultCode.FAILED;
+        }
+    }
+
+    /**
+     * Matches the classes of a JAR or AAR file one by one, so only one class node is alive
+     * at a time.
+     */
+    private int streamClassFiles(StreamingProConfigAdapter adapter) {
+        try {
+            List<byte[]> classFiles;
+            try (MetricsRegistry.Phase phase = metrics.phase(PHASE_ZIP_INFLATE)) {
+                classFiles = ClassFileInput.readClassFiles(apkFilePath);
+            }
+            DexReferencePool pool = new DexReferencePool();
+            try (MetricsRegistry.Phase phase = metrics.phase(PHASE_CLASS_ACCEPT)) {
+                for (int index = 0; index < classFiles.size(); index++) {
+                    adapter.accept(ClassFileInput.accept(classFiles.get(index), pool));
+                    classFiles.set(index, null);
+                }
+            }
+            return ResultCode.SUCCESS;
+        } catch (Exception e) {
+            e.printStackTrace();
+            Log.error("Failed to read the class files of " + apkFilePath);
+            return ResultCode.FAILED;
+        }
+    }
+
+    /**
+     * Matches the classes of the modules of an app bundle or APK set one dex file at a time,
+     * base module first. Unlike {@link #collectClassNodes(String, Map, Map)}, a class defined
+     * by several modules is matched once for each of them.
+     */
+    private int streamModules(StreamingProConfigAdapter adapter) {
+        try {
+            List<ModuleInput.Module> modules;
+            try (MetricsRegistry.Phase phase = metrics.phase(PHASE_ZIP_INFLATE)) {
+                modules = ModuleInput.readModules(apkFilePath);
+            }
+            metrics.add(COUNTER_MODULES, modules.size());
+            for (ModuleInput.Module module : modules) {
+                for (int index = 0; index < module.dexFiles.size(); index++) {
+                    try (MetricsRegistry.Phase phase = metrics.phase(PHASE_DEX_ACCEPT)) {
+                        adapter.accept(module.dexFiles.get(index));
+                    }
+                    module.dexFiles.set(index, null);
+                    metrics.increment(COUNTER_DEX_FILES);
+                }
+            }
+            return ResultCode.SUCCESS;
+        } catch (Exception e) {
+            e.printStackTrace();
+            Log.error("Failed to read the modules of " + apkFilePath);
+            return ResultCode.FAILED;
+        }
+    }
+
+    /**
+     * Processes the APK and ProGuard configuration files like {@link #process()}, but only
+     * re-evaluates the classes that changed since the analysis recorded in the given diff
+     * cache. Besides the adapted configuration, a ".delta" file lists what the new scope keeps
+     * or no longer keeps compared to the recorded one. The cache is then updated.
+     *
+     * @param diffCachePath   the diff cache file. If it doesn't exist yet, the base APK is
+     *                        analyzed first, or everything is evaluated if there is none.
+     * @param baseApkFilePath the file path to the previous build of the APK, or null.
+     */
+    public int processDiff(String diffCachePath, String baseApkFilePath) {
+        ProConfig proConfig;
+        try (MetricsRegistry.Phase phase = metrics.phase(PHASE_CONFIG_PARSE)) {
+            proConfig = ProConfigAdapter.load(proConfigFilePath);
+        } catch (IOException e) {
+            Log.error(e.getMessage());
+            return ResultCode.FAILED;
+        }
+        metrics.add(COUNTER_RULES, proConfig.keep.size());
+        if (!proConfig.obfuscate) {
+            return ResultCode.NO_OBF_SUPPORT;
+        }
+
+        Path diffCacheFile = Paths.get(diffCachePath);
+        DiffCache previous = null;
+        try {
+            if (Files.exists(diffCacheFile)) {
+                previous = DiffCache.read(diffCacheFile);
+            } else if (baseApkFilePath != null) {
+                ClassIndex baseIndex = collectClassIndex(baseApkFilePath);
+                if (baseIndex == null) {
+                    return ResultCode.FAILED;
+                }
+                previous = DiffAnalyzer.analyze(baseIndex, proConfig, null).cache;
+            }
+        } catch (IOException e) {
+            Log.error("Failed to read " + diffCachePath + " : " + e.getMessage());
+            return ResultCode.FAILED;
+        }
+
+        ClassIndex classIndex = collectClassIndex(apkFilePath);
+        if (classIndex == null) {
+            return ResultCode.FAILED;
+        }
+        DiffAnalyzer.Result diff;
+        try (MetricsRegistry.Phase phase = metrics.phase(PHASE_RULE_MATCHING)) {
+            diff = DiffAnalyzer.analyze(classIndex, proConfig, previous);
+        }
+        countKept(diff.cache.scope);
+        Log.info((diff.full ? "Evaluated all " : "Re-evaluated ") + diff.dirtyClassCount
+                + " of " + diff.cache.classCount() + " classes");
+
+        int result;
+        try (MetricsRegistry.Phase phase = metrics.phase(PHASE_OUTPUT_WRITE)) {
+            result = write(diff.cache.scope);
+        }
+        if (result != ResultCode.SUCCESS) {
+            return result;
+        }
+
+        ConsistencyScope previousScope = previous == null ? new ConsistencyScope() : previous.scope;
+        if (previous == null) {
+            previousScope.initialize();
+        }
+        String deltaFilePath = outputDirPath + File.separator + new File(proConfigFilePath).getName() + Ext.DELTA;
+        try (Writer writer = Files.newBufferedWriter(Paths.get(deltaFilePath), StandardCharsets.UTF_8)) {
+            ScopeDelta.between(previousScope, diff.cache.scope).write(writer);
+            diff.cache.write(diffCacheFile);
+        } catch (IOException e) {
+            Log.error(e.getMessage());
+            return ResultCode.FAILED;
+        }
+        return ResultCode.SUCCESS;
+    }
+
+    private ClassIndex collectClassIndex(String apkFilePath) {
+        Map<String, DexClassNode> classPath = new HashMap<>();
+        if (collectClassNodes(apkFilePath, classPath) != ResultCode.SUCCESS) {
+            Log.error("Failed to collect class nodes from " + apkFilePath);
+            return null;
+        }
+        return ClassIndex.of(classPath);
+    }
+
+    private int write(ConsistencyScope scope) {
+        String proConfigFileName    = new File(proConfigFilePath).getName();
+        String outputFilePath       = outputDirPath + File.separator + proConfigFileName
+                                    + (binaryOutput ? Ext.BINARY : compressOutput ? Ext.GZIP : "");
+
+        return binaryOutput
+                ? ProConfigAdapter.writeAsBinaryFile(scope, outputFilePath)
+                : ProConfigAdapter.writeAsFile(scope, outputFilePath, compressOutput);
+    }
+
+    private void countKept(ConsistencyScope scope) {
+        metrics.add(COUNTER_KEPT_CLASS_NAMES, scope.classNames.size());
+        scope.keepMethodsAccess.values().forEach(flags -> metrics.add(COUNTER_KEPT_METHOD_ACCESS, flags.size()));
+        scope.keepFieldsAccess.values().forEach(flags -> metrics.add(COUNTER_KEPT_FIELD_ACCESS, flags.size()));
+        metrics.add(COUNTER_KEPT_METHOD_SIGNATURES, scope.methodSignatures.size());
+        metrics.add(COUNTER_KEPT_FIELD_SIGNATURES, scope.fieldSignatures.size());
+    }
+
+    /**
+     * Writes a report next to the output file, with the given suffix.
+     */
+    private int writeReport(String suffix, ReportWriter reportWriter) {
+        String reportFilePath = outputDirPath + File.separator + new File(proConfigFilePath).getName() + suffix;
+        try (Writer writer = Files.newBufferedWriter(Paths.get(reportFilePath), StandardCharsets.UTF_8)) {
+            reportWriter.write(writer);
+            return ResultCode.SUCCESS;
+        } catch (IOException e) {
+            Log.error(e.getMessage());
+            return ResultCode.FAILED;
+        }
     }
 
     /**
@@ -74,8 +682,27 @@ public class ProKeepParserImpl {
      *         and {@link ResultCode#FAILED} indicates failure.
      */
     public int collectClassNodes(String apkFilePath, Map<String, DexClassNode> classPath) {
+        return collectClassNodes(apkFilePath, classPath, null);
+    }
+
+    /**
+     * Collects class nodes like {@link #collectClassNodes(String, Map)}, and the module of every
+     * class if the file is an app bundle or APK set.
+     *
+     * @param classModules a map to be populated with class names as keys and the names of the
+     *                     modules that define them as values, or null.
+     */
+    public int collectClassNodes(String apkFilePath, Map<String, DexClassNode> classPath, Map<String, String> classModules) {
+        if (ClassFileInput.isClassFileArchive(apkFilePath)) {
+            return collectClassFileNodes(apkFilePath, classPath);
+        }
+        if (ModuleInput.isModuleArchive(apkFilePath)) {
+            return collectModuleNodes(apkFilePath, classPath, classModules);
+        }
         try (ZipFile zipFile = new ZipFile(apkFilePath)) {
             Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            // Shares the member references of the classes between the dex files
+            DexReferencePool pool = new DexReferencePool();
 
             while (entries.hasMoreElements()) {
                 ZipEntry entry = entries.nextElement();
@@ -87,16 +714,61 @@ public class ProKeepParserImpl {
                     continue;
                 }
 
-                try (InputStream inputStream = zipFile.getInputStream(entry)) {
-                    DexFileReader reader = new DexFileReader(inputStream);
+                byte[] dex;
+                try (MetricsRegistry.Phase phase = metrics.phase(PHASE_ZIP_INFLATE);
+                     InputStream inputStream = zipFile.getInputStream(entry)
+                ) {
+                    dex = inputStream.readAllBytes();
+                }
+
+                DexFileNode preservedNode = new DexFileNode();
+                try (MetricsRegistry.Phase phase = metrics.phase(PHASE_DEX_ACCEPT)) {
+                    DexFileReader reader = new DexFileReader(dex, pool);
                     reader.getClassNames();
-                    DexFileNode preservedNode = new DexFileNode();
                     reader.accept(preservedNode);
-                    preservedNode.clzs.forEach(node -> classPath.put(
-                            Utils.normalizeClassName(node.className),
-                            node
-                    ));
                 }
+                preservedNode.clzs.forEach(node -> classPath.put(
+                        Utils.normalizeClassName(node.className),
+                        node
+                ));
+
+                metrics.increment(COUNTER_DEX_FILES);
+                metrics.add(COUNTER_CLASSES, preservedNode.clzs.size());
+                for (DexClassNode node : preservedNode.clzs) {
+                    metrics.add(COUNTER_METHODS, node.methods == null ? 0 : node.methods.size());
+                    metrics.add(COUNTER_FIELDS, node.fields == null ? 0 : node.fields.size());
+                }
+            }
+            return ResultCode.SUCCESS;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return ResultCode.FAILED;
+    }
+
+    /**
+     * Collects class nodes from the class files of the specified JAR or AAR file, like
+     * {@link #collectClassNodes(String, Map)} does from the dex files of an APK file.
+     */
+    private int collectClassFileNodes(String filePath, Map<String, DexClassNode> classPath) {
+        try {
+            List<byte[]> classFiles;
+            try (MetricsRegistry.Phase phase = metrics.phase(PHASE_ZIP_INFLATE)) {
+                classFiles = ClassFileInput.readClassFiles(filePath);
+            }
+            List<DexClassNode> classNodes;
+            try (MetricsRegistry.Phase phase = metrics.phase(PHASE_CLASS_ACCEPT)) {
+                classNodes = ClassFileInput.accept(classFiles);
+            }
+            classNodes.forEach(node -> classPath.put(
+                    Utils.normalizeClassName(node.className),
+                    node
+            ));
+
+            metrics.add(COUNTER_CLASSES, classNodes.size());
+            for (DexClassNode node : classNodes) {
+                metrics.add(COUNTER_METHODS, node.methods == null ? 0 : node.methods.size());
+                metrics.add(COUNTER_FIELDS, node.fields == null ? 0 : node.fields.size());
             }
             return ResultCode.SUCCESS;
         } catch (Exception e) {
@@ -104,4 +776,82 @@ public class ProKeepParserImpl {
         }
         return ResultCode.FAILED;
     }
+
+    /**
+     * Collects class nodes from the dex files of every module of the specified app bundle or APK
+     * set, which are read in parallel. A class defined by several dex files is taken from the
+     * first one, in the order of {@link ModuleInput#readModules(String)}.
+     */
+    private int collectModuleNodes(String filePath, Map<String, DexClassNode> classPath, Map<String, String> classModules) {
+        try {
+            List<ModuleInput.Module> modules;
+            try (MetricsRegistry.Phase phase = metrics.phase(PHASE_ZIP_INFLATE)) {
+                modules = ModuleInput.readModules(filePath);
+            }
+            Map<String, List<DexClassNode>> moduleNodes;
+            try (MetricsRegistry.Phase phase = metrics.phase(PHASE_DEX_ACCEPT)) {
+                moduleNodes = ModuleInput.accept(modules);
+            }
+
+            metrics.add(COUNTER_MODULES, modules.size());
+            for (ModuleInput.Module module : modules) {
+                metrics.add(COUNTER_DEX_FILES, module.dexFiles.size());
+            }
+            moduleNodes.forEach((module, classNodes) -> {
+                int duplicates = 0;
+                for (DexClassNode node : classNodes) {
+                    String className = Utils.normalizeClassName(node.className);
+                    if (classPath.putIfAbsent(className, node) != null) {
+                        duplicates++;
+                        continue;
+                    }
+                    if (classModules != null) {
+                        classModules.put(className, module);
+                    }
+                    metrics.increment(COUNTER_CLASSES);
+                    metrics.add(COUNTER_METHODS, node.methods == null ? 0 : node.methods.size());
+                    metrics.add(COUNTER_FIELDS, node.fields == null ? 0 : node.fields.size());
+                }
+                if (duplicates > 0) {
+                    Log.warn("Ignored " + duplicates + " classes of module " + module + " defined before");
+                }
+            });
+            return ResultCode.SUCCESS;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return ResultCode.FAILED;
+    }
+
+    /**
+     * Estimates the number of heap bytes the class nodes of the specified APK file take once
+     * collected, from the uncompressed size of its dex files.
+     *
+     * @param apkFilePath the file path to the APK file.
+     */
+    public static long estimateClassNodeBytes(String apkFilePath) throws IOException {
+        if (ClassFileInput.isClassFileArchive(apkFilePath)) {
+            return ClassFileInput.classFileBytes(apkFilePath) * ESTIMATED_CLASS_NODE_EXPANSION;
+        }
+        if (ModuleInput.isModuleArchive(apkFilePath)) {
+            return ModuleInput.dexFileBytes(apkFilePath) * ESTIMATED_CLASS_NODE_EXPANSION;
+        }
+        long bytes = 0;
+        try (ZipFile zipFile = new ZipFile(apkFilePath)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.getName().startsWith("classes") &&
+                    entry.getName().endsWith(".dex")
+                ) {
+                    bytes += Math.max(entry.getSize(), 0);
+                }
+            }
+        }
+        return bytes * ESTIMATED_CLASS_NODE_EXPANSION;
+    }
+
+    private interface ReportWriter {
+        void write(Writer writer) throws IOException;
+    }
 }
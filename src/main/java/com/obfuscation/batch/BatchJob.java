@@ -0,0 +1,28 @@
+package com.obfuscation.batch;
+
+import com.obfuscation.constants.ResultCode;
+
+/**
+ * One (APK, configuration) pair of a {@link BatchManifest}, and its result.
+ */
+public class BatchJob {
+    public final String apkFilePath;
+    public final String proConfigFilePath;
+    public final String outputDirPath;
+
+    volatile int result = ResultCode.FAILED;
+
+    BatchJob(String apkFilePath, String proConfigFilePath, String outputDirPath) {
+        this.apkFilePath = apkFilePath;
+        this.proConfigFilePath = proConfigFilePath;
+        this.outputDirPath = outputDirPath;
+    }
+
+    /**
+     * Returns the {@link ResultCode} of this job, or {@link ResultCode#FAILED}
+     * if it hasn't run.
+     */
+    public int getResult() {
+        return result;
+    }
+}
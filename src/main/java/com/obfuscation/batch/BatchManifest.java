@@ -0,0 +1,255 @@
+package com.obfuscation.batch;
+
+import com.obfuscation.model.OffHeapClassIndex;
+import com.obfuscation.utils.JsonParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The jobs of a batch run, read from a JSON manifest:
+ * <pre>
+ * {
+ *   "out":         "keep-rules",              // output directory
+ *   "apks":        ["a.apk", "b.apk"],        // every APK is checked ...
+ *   "configs":     ["app.pro", "lib.pro"],    // ... against every config
+ *   "jobs":        [{ "apk": "c.apk", "config": "c.pro", "out": "c" }],
+ *   "gzip":        false,
+ *   "binary":      false,
+ *   "parallelism": 8,
+ *   "offHeap":     "direct"                   // or "mapped"
+ * }
+ * </pre>
+ * <p>
+ * The cross product of "apks" and "configs" writes to a sub-directory of "out"
+ * named after each APK file, and explicit "jobs" to the same sub-directory
+ * unless they name their own output directory. APK files with the same name
+ * get their position in "apks" appended, like "app-2", and configs with the
+ * same file name a sub-directory named after their position in "configs",
+ * like "app/2", so every job writes its own file; the manifest is rejected
+ * if two jobs still write the same file. Relative paths are resolved against
+ * the directory of the manifest. All keys but one of "apks"/"configs" or "jobs" are optional.
+ * "offHeap" keeps the class index of every APK outside the heap while its
+ * jobs run, see {@link OffHeapClassIndex}.
+ * </p>
+ */
+public class BatchManifest {
+    private static final String KEY_OUT = "out";
+    private static final String KEY_APKS = "apks";
+    private static final String KEY_CONFIGS = "configs";
+    private static final String KEY_JOBS = "jobs";
+    private static final String KEY_APK = "apk";
+    private static final String KEY_CONFIG = "config";
+    private static final String KEY_GZIP = "gzip";
+    private static final String KEY_BINARY = "binary";
+    private static final String KEY_PARALLELISM = "parallelism";
+    private static final String KEY_OFF_HEAP = "offHeap";
+
+    public final List<BatchJob> jobs;
+    public final boolean compressOutput;
+    public final boolean binaryOutput;
+    public final int parallelism;
+    /**
+     * Where the class indexes are kept off the heap, or null to keep them on
+     * the heap.
+     */
+    public final OffHeapClassIndex.Storage offHeapStorage;
+
+    private BatchManifest(
+            List<BatchJob> jobs,
+            boolean compressOutput,
+            boolean binaryOutput,
+            int parallelism,
+            OffHeapClassIndex.Storage offHeapStorage
+    ) {
+        this.jobs = jobs;
+        this.compressOutput = compressOutput;
+        this.binaryOutput = binaryOutput;
+        this.parallelism = parallelism;
+        this.offHeapStorage = offHeapStorage;
+    }
+
+    /**
+     * Reads the given manifest file.
+     */
+    public static BatchManifest load(File manifestFile) throws IOException {
+        Object json;
+        try {
+            json = JsonParser.parse(new String(Files.readAllBytes(manifestFile.toPath()), StandardCharsets.UTF_8));
+        } catch (RuntimeException e) {
+            throw new IOException("Can't parse " + manifestFile + " : " + e.getMessage());
+        }
+        if (!(json instanceof Map)) {
+            throw new IOException("Expecting a JSON object in " + manifestFile);
+        }
+        Map<?, ?> manifest = (Map<?, ?>) json;
+        File baseDir = manifestFile.getAbsoluteFile().getParentFile();
+
+        String out = optionalString(manifest, KEY_OUT, ".");
+        List<String> apks = strings(manifest, KEY_APKS);
+        List<String> configs = strings(manifest, KEY_CONFIGS);
+        List<String> apkDirNames = uniqueNames(apks, BatchManifest::stem);
+        List<String> configDirNames = uniqueNames(configs, config -> null);
+        List<BatchJob> jobs = new ArrayList<>();
+        for (int apkIndex = 0; apkIndex < apks.size(); apkIndex++) {
+            File apkOut = new File(out, apkDirNames.get(apkIndex));
+            for (int configIndex = 0; configIndex < configs.size(); configIndex++) {
+                String configDirName = configDirNames.get(configIndex);
+                jobs.add(new BatchJob(
+                        resolve(baseDir, apks.get(apkIndex)),
+                        resolve(baseDir, configs.get(configIndex)),
+                        resolve(baseDir, (configDirName == null ? apkOut : new File(apkOut, configDirName)).getPath())
+                ));
+            }
+        }
+        for (Object job : list(manifest, KEY_JOBS)) {
+            if (!(job instanceof Map)) {
+                throw new IOException("Expecting an object in '" + KEY_JOBS + "'");
+            }
+            Map<?, ?> jobObject = (Map<?, ?>) job;
+            String apk = requiredString(jobObject, KEY_APK);
+            jobs.add(new BatchJob(
+                    resolve(baseDir, apk),
+                    resolve(baseDir, requiredString(jobObject, KEY_CONFIG)),
+                    resolve(baseDir, optionalString(jobObject, KEY_OUT, new File(out, stem(apk)).getPath()))
+            ));
+        }
+        if (jobs.isEmpty()) {
+            throw new IOException("No jobs in " + manifestFile);
+        }
+        checkOutputFiles(jobs);
+
+        Object parallelism = manifest.get(KEY_PARALLELISM);
+        return new BatchManifest(
+                Collections.unmodifiableList(jobs),
+                Boolean.TRUE.equals(manifest.get(KEY_GZIP)),
+                Boolean.TRUE.equals(manifest.get(KEY_BINARY)),
+                parallelism instanceof Number
+                        ? Math.max(1, ((Number) parallelism).intValue())
+                        : Runtime.getRuntime().availableProcessors(),
+                offHeapStorage(optionalString(manifest, KEY_OFF_HEAP, null))
+        );
+    }
+
+    /**
+     * Returns the directory name of each of the given files: the name the
+     * given function derives from its path, or null for none. If several
+     * files share that name, or their file name when there is none, the
+     * position of each in the list from 1 is appended to the name with a '-',
+     * or is the name. For instance "a/app.apk" and "b/app.apk" become "app-1"
+     * and "app-2".
+     */
+    private static List<String> uniqueNames(List<String> paths, Function<String, String> nameOf) {
+        List<String> keys = new ArrayList<>(paths.size());
+        Map<String, Integer> counts = new HashMap<>();
+        for (String path : paths) {
+            String name = nameOf.apply(path);
+            String key = name != null ? name : new File(path).getName();
+            keys.add(key);
+            counts.merge(key, 1, Integer::sum);
+        }
+        List<String> names = new ArrayList<>(paths.size());
+        for (int index = 0; index < paths.size(); index++) {
+            String name = nameOf.apply(paths.get(index));
+            if (counts.get(keys.get(index)) > 1) {
+                name = name == null ? String.valueOf(index + 1) : name + "-" + (index + 1);
+            }
+            names.add(name);
+        }
+        return names;
+    }
+
+    /**
+     * Returns the file name of the given path without its extension.
+     */
+    private static String stem(String path) {
+        return new File(path).getName().replaceFirst("\\.[^.]*$", "");
+    }
+
+    /**
+     * Throws if two of the given jobs write the same output file, which is
+     * named after the config in the output directory, since jobs run
+     * concurrently.
+     */
+    private static void checkOutputFiles(List<BatchJob> jobs) throws IOException {
+        Map<Path, BatchJob> jobsByOutput = new HashMap<>();
+        for (BatchJob job : jobs) {
+            Path output = Paths.get(job.outputDirPath, new File(job.proConfigFilePath).getName())
+                    .toAbsolutePath()
+                    .normalize();
+            BatchJob other = jobsByOutput.putIfAbsent(output, job);
+            if (other != null) {
+                throw new IOException("Both " + other.apkFilePath + " x " + other.proConfigFilePath +
+                                      " and " + job.apkFilePath + " x " + job.proConfigFilePath +
+                                      " write to " + output + ", give one of them its own '" + KEY_OUT + "'");
+            }
+        }
+    }
+
+    private static OffHeapClassIndex.Storage offHeapStorage(String value) throws IOException {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return OffHeapClassIndex.Storage.of(value);
+        } catch (RuntimeException e) {
+            throw new IOException("Expecting \"direct\" or \"mapped\" for '" + KEY_OFF_HEAP + "'");
+        }
+    }
+
+    private static String resolve(File baseDir, String path) {
+        File file = new File(path);
+        return (file.isAbsolute() ? file : new File(baseDir, path)).getPath();
+    }
+
+    private static List<?> list(Map<?, ?> object, String key) throws IOException {
+        Object value = object.get(key);
+        if (value == null) {
+            return Collections.emptyList();
+        }
+        if (!(value instanceof List)) {
+            throw new IOException("Expecting an array for '" + key + "'");
+        }
+        return (List<?>) value;
+    }
+
+    private static List<String> strings(Map<?, ?> object, String key) throws IOException {
+        List<String> strings = new ArrayList<>();
+        for (Object value : list(object, key)) {
+            if (!(value instanceof String)) {
+                throw new IOException("Expecting strings in '" + key + "'");
+            }
+            strings.add((String) value);
+        }
+        return strings;
+    }
+
+    private static String optionalString(Map<?, ?> object, String key, String defaultValue) throws IOException {
+        Object value = object.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        if (!(value instanceof String)) {
+            throw new IOException("Expecting a string for '" + key + "'");
+        }
+        return (String) value;
+    }
+
+    private static String requiredString(Map<?, ?> object, String key) throws IOException {
+        String value = optionalString(object, key, null);
+        if (value == null) {
+            throw new IOException("Missing '" + key + "' in a job");
+        }
+        return value;
+    }
+}
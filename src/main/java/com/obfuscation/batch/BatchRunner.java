@@ -0,0 +1,202 @@
+package com.obfuscation.batch;
+
+import com.googlecode.d2j.node.DexClassNode;
+import com.obfuscation.ProKeepParserImpl;
+import com.obfuscation.constants.ResultCode;
+import com.obfuscation.model.ClassIndex;
+import com.obfuscation.model.OffHeapClassIndex;
+import com.obfuscation.proconfig.ProConfig;
+import com.obfuscation.proconfig.ProConfigAdapter;
+import com.obfuscation.utils.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs the jobs of a {@link BatchManifest} in one JVM.
+ * <p>
+ * Every distinct configuration is loaded and reduced once, and every distinct
+ * APK is read once. All jobs run on one work-stealing pool: an APK task reads
+ * its class nodes and forks one adapt task per configuration, then drops the
+ * class nodes once they are done.
+ * </p>
+ * <p>
+ * APK tasks are admitted by their estimated class node size against a share of
+ * the maximum heap, so only as many APK indexes are resident at a time as the
+ * heap can hold. An APK that is larger than the whole share runs alone.
+ * </p>
+ */
+public class BatchRunner {
+    private static final double HEAP_SHARE = 0.6;
+    private static final int MEGABYTE = 1 << 20;
+
+    private final BatchManifest manifest;
+
+    public BatchRunner(BatchManifest manifest) {
+        this.manifest = manifest;
+    }
+
+    /**
+     * Runs all jobs and reports their results.
+     *
+     * @return {@link ResultCode#FAILED} if any job failed,
+     *         {@link ResultCode#NO_OBF_SUPPORT} if any configuration doesn't obfuscate,
+     *         {@link ResultCode#SUCCESS} otherwise.
+     */
+    public int run() {
+        ForkJoinPool pool = new ForkJoinPool(manifest.parallelism);
+        try {
+            Map<String, ProConfig> proConfigs = loadConfigs(pool);
+
+            Map<String, List<BatchJob>> jobsByApk = new LinkedHashMap<>();
+            for (BatchJob job : manifest.jobs) {
+                jobsByApk.computeIfAbsent(job.apkFilePath, k -> new ArrayList<>()).add(job);
+            }
+
+            int budget = (int) Math.max(1, Runtime.getRuntime().maxMemory() * HEAP_SHARE / MEGABYTE);
+            Semaphore admission = new Semaphore(budget);
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (Map.Entry<String, List<BatchJob>> entry : jobsByApk.entrySet()) {
+                int permits = permits(entry.getKey(), budget);
+                admission.acquire(permits);
+                tasks.add(pool.submit(() -> {
+                    try {
+                        runApk(entry.getKey(), entry.getValue(), proConfigs);
+                    } finally {
+                        admission.release(permits);
+                    }
+                }));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.error("Interrupted while running the batch");
+        } finally {
+            pool.shutdown();
+        }
+        return report();
+    }
+
+    private Map<String, ProConfig> loadConfigs(ForkJoinPool pool) throws InterruptedException {
+        Map<String, ProConfig> proConfigs = new ConcurrentHashMap<>();
+        Set<String> paths = new LinkedHashSet<>();
+        for (BatchJob job : manifest.jobs) {
+            paths.add(job.proConfigFilePath);
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (String path : paths) {
+            tasks.add(pool.submit(() -> {
+                try {
+                    proConfigs.put(path, ProConfigAdapter.load(path));
+                } catch (IOException | RuntimeException e) {
+                    Log.error("Failed to load " + path + " : " + e.getMessage());
+                }
+            }));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        return proConfigs;
+    }
+
+    private void runApk(String apkFilePath, List<BatchJob> jobs, Map<String, ProConfig> proConfigs) {
+        Map<String, DexClassNode> classPath = new HashMap<>();
+        Map<String, String> classModules = new HashMap<>();
+        int result = new ProKeepParserImpl(apkFilePath, null, null).collectClassNodes(apkFilePath, classPath, classModules);
+        if (result != ResultCode.SUCCESS) {
+            Log.error("Failed to collect class nodes from " + apkFilePath);
+            return;
+        }
+        ClassIndex classIndex;
+        try {
+            classIndex = manifest.offHeapStorage == null
+                    ? ClassIndex.of(classPath, classModules)
+                    : OffHeapClassIndex.of(classPath, manifest.offHeapStorage, null);
+        } catch (IOException e) {
+            Log.error("Failed to index " + apkFilePath + " : " + e.getMessage());
+            return;
+        }
+        classPath.clear();
+
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (BatchJob job : jobs) {
+            ProConfig proConfig = proConfigs.get(job.proConfigFilePath);
+            if (proConfig == null) {
+                continue;
+            }
+            tasks.add(ForkJoinTask.adapt(() -> runJob(job, classIndex, proConfig)));
+        }
+        try {
+            ForkJoinTask.invokeAll(tasks);
+        } finally {
+            if (classIndex instanceof OffHeapClassIndex) {
+                try {
+                    ((OffHeapClassIndex) classIndex).close();
+                } catch (IOException e) {
+                    Log.warn("Failed to free the class index of " + apkFilePath + " : " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void runJob(BatchJob job, ClassIndex classIndex, ProConfig proConfig) {
+        File outputDir = new File(job.outputDirPath);
+        if (!outputDir.isDirectory() && !outputDir.mkdirs() && !outputDir.isDirectory()) {
+            Log.error("Can't create " + outputDir);
+            return;
+        }
+        ProKeepParserImpl proKeepParser = new ProKeepParserImpl(
+                job.apkFilePath,
+                job.proConfigFilePath,
+                job.outputDirPath
+        );
+        proKeepParser.setCompressOutput(manifest.compressOutput);
+        proKeepParser.setBinaryOutput(manifest.binaryOutput);
+        try {
+            job.result = proKeepParser.process(classIndex, proConfig);
+        } catch (RuntimeException e) {
+            Log.error("Failed to adapt " + job.proConfigFilePath + " to " + job.apkFilePath + " : " + e.getMessage());
+        }
+    }
+
+    private static int permits(String apkFilePath, int budget) {
+        try {
+            long megabytes = (ProKeepParserImpl.estimateClassNodeBytes(apkFilePath) + MEGABYTE - 1) / MEGABYTE;
+            return (int) Math.min(Math.max(megabytes, 1), budget);
+        } catch (IOException e) {
+            // The APK task reports the failure.
+            return 1;
+        }
+    }
+
+    private int report() {
+        int failed = 0;
+        int noObfSupport = 0;
+        for (BatchJob job : manifest.jobs) {
+            String status;
+            switch (job.result) {
+                case ResultCode.SUCCESS:
+                    status = "SUCCESS";
+                    break;
+                case ResultCode.NO_OBF_SUPPORT:
+                    status = "NO_OBF_SUPPORT";
+                    noObfSupport++;
+                    break;
+                default:
+                    status = "FAILED";
+                    failed++;
+                    break;
+            }
+            Log.info(String.format("%-14s %s x %s", status, job.apkFilePath, job.proConfigFilePath));
+        }
+        Log.info(manifest.jobs.size() + " jobs, " + failed + " failed, " + noObfSupport + " without obfuscation");
+
+        return failed > 0
+                ? ResultCode.FAILED
+                : noObfSupport > 0 ? ResultCode.NO_OBF_SUPPORT : ResultCode.SUCCESS;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Provides the batch mode, which adapts several configurations to several APK files in one run.
+ */
+package com.obfuscation.batch;
@@ -1,4 +1,14 @@
 package com.obfuscation.constants;
 
 public class Ext {
+    public static final String GZIP = ".gz";
+    public static final String BINARY = ".bin";
+    public static final String DELTA = ".delta";
+    public static final String PROVENANCE = ".provenance";
+    public static final String PROFILE = ".profile";
+    public static final String APK = ".apk";
+    public static final String AAB = ".aab";
+    public static final String APKS = ".apks";
+    public static final String JAR = ".jar";
+    public static final String AAR = ".aar";
 }
@@ -0,0 +1,171 @@
+package com.obfuscation.daemon;
+
+import com.googlecode.d2j.node.DexClassNode;
+import com.obfuscation.ProKeepParserImpl;
+import com.obfuscation.constants.ResultCode;
+import com.obfuscation.model.ClassIndex;
+import com.obfuscation.model.OffHeapClassIndex;
+import com.obfuscation.utils.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keeps the class indexes of recently used APK files in memory.
+ * <p>
+ * Entries are evicted in least-recently-used order once their estimated size
+ * exceeds the byte budget. The most recently used entry is always kept, even
+ * if it alone exceeds the budget. An APK that changed on disk since it was
+ * indexed is indexed again.
+ * </p>
+ * <p>
+ * The size of an index is estimated from the uncompressed size of its dex
+ * files. Concurrent requests for the same APK share a single load.
+ * </p>
+ * <p>
+ * Indexes can be kept off the heap, see {@link OffHeapClassIndex}; their size
+ * is then their actual off-heap size. Evicted off-heap indexes aren't closed,
+ * since requests may still be reading them, and are freed once they are
+ * garbage collected.
+ * </p>
+ */
+public class ClassIndexCache {
+    private final long byteBudget;
+    private final OffHeapClassIndex.Storage offHeapStorage;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+
+    /**
+     * @param byteBudget the estimated number of bytes the cached indexes may use.
+     */
+    public ClassIndexCache(long byteBudget) {
+        this(byteBudget, null);
+    }
+
+    /**
+     * @param byteBudget     the estimated number of bytes the cached indexes may use.
+     * @param offHeapStorage where the indexes are kept off the heap, or null to
+     *                       keep them on the heap.
+     */
+    public ClassIndexCache(long byteBudget, OffHeapClassIndex.Storage offHeapStorage) {
+        this.byteBudget = byteBudget;
+        this.offHeapStorage = offHeapStorage;
+    }
+
+    /**
+     * Returns the class index of the given APK file, indexing it if it isn't
+     * cached.
+     */
+    public ClassIndex get(String apkFilePath) throws IOException {
+        File apkFile = new File(apkFilePath).getCanonicalFile();
+        String key = apkFile.getPath();
+        long stamp = apkFile.lastModified() ^ apkFile.length();
+
+        Entry entry;
+        boolean owner = false;
+        synchronized (this) {
+            entry = entries.get(key);
+            if (entry != null && entry.stamp != stamp) {
+                remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry(stamp);
+                entries.put(key, entry);
+                owner = true;
+            }
+        }
+
+        if (owner) {
+            load(key, entry);
+        }
+
+        try {
+            return entry.classIndex.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while indexing " + key, e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException
+                    ? (IOException) e.getCause()
+                    : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns the estimated number of bytes used by the cached indexes.
+     */
+    public synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    private void load(String key, Entry entry) {
+        try {
+            Map<String, DexClassNode> classPath = new HashMap<>();
+            int result = new ProKeepParserImpl(key, null, null).collectClassNodes(key, classPath);
+            if (result != ResultCode.SUCCESS) {
+                throw new IOException("Failed to collect class nodes from " + key);
+            }
+
+            ClassIndex classIndex;
+            long bytes;
+            if (offHeapStorage == null) {
+                classIndex = ClassIndex.of(classPath);
+                bytes = ProKeepParserImpl.estimateClassNodeBytes(key);
+            } else {
+                OffHeapClassIndex offHeapIndex = OffHeapClassIndex.of(classPath, offHeapStorage, null);
+                classIndex = offHeapIndex;
+                bytes = offHeapIndex.offHeapBytes();
+            }
+            synchronized (this) {
+                if (entries.get(key) == entry) {
+                    entry.bytes = bytes;
+                    usedBytes += bytes;
+                    evict();
+                }
+            }
+            Log.info("Indexed " + key + " (" + classPath.size() + " classes, ~" + (bytes >> 20) + " MB)");
+            entry.classIndex.complete(classIndex);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                if (entries.get(key) == entry) {
+                    entries.remove(key);
+                }
+            }
+            entry.classIndex.completeExceptionally(e);
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (usedBytes > byteBudget && entries.size() > 1 && iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            if (!eldest.getValue().classIndex.isDone() || !iterator.hasNext()) {
+                continue;
+            }
+            usedBytes -= eldest.getValue().bytes;
+            iterator.remove();
+            Log.info("Evicted " + eldest.getKey());
+        }
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            usedBytes -= entry.bytes;
+        }
+    }
+
+    private static class Entry {
+        private final long stamp;
+        private final CompletableFuture<ClassIndex> classIndex = new CompletableFuture<>();
+        private long bytes;
+
+        Entry(long stamp) {
+            this.stamp = stamp;
+        }
+    }
+}
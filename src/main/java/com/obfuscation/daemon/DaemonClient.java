@@ -0,0 +1,111 @@
+package com.obfuscation.daemon;
+
+import com.obfuscation.constants.ResultCode;
+import com.obfuscation.utils.Log;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static com.obfuscation.daemon.DaemonProtocol.*;
+
+/**
+ * Forwards requests to a running {@link DaemonServer}.
+ */
+public class DaemonClient {
+    private final int port;
+
+    /**
+     * @param port the loopback port the daemon listens on.
+     */
+    public DaemonClient(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Asks the daemon to adapt the given configuration to the given APK and
+     * write the result to the given output directory, along with the reports
+     * that are asked for. Relative paths are resolved against the working
+     * directory of the client.
+     *
+     * @param metricsFilePath the file the daemon writes the metrics of the
+     *                        request to, or null.
+     * @return the result code of the daemon, or {@link ResultCode#FAILED} if it
+     *         couldn't be reached.
+     */
+    public int adapt(
+            String apkFilePath,
+            String proConfigFilePath,
+            String outputDirPath,
+            boolean compressOutput,
+            boolean binaryOutput,
+            boolean provenanceOutput,
+            boolean ruleProfileOutput,
+            String metricsFilePath
+    ) {
+        return send(line(
+                ADAPT,
+                new File(apkFilePath).getAbsolutePath(),
+                new File(proConfigFilePath).getAbsolutePath(),
+                new File(outputDirPath).getAbsolutePath(),
+                flag(compressOutput),
+                flag(binaryOutput),
+                flag(provenanceOutput),
+                flag(ruleProfileOutput),
+                metricsFilePath == null ? "" : new File(metricsFilePath).getAbsolutePath()
+        ));
+    }
+
+    /**
+     * Returns {@link ResultCode#SUCCESS} if the daemon is running.
+     */
+    public int ping() {
+        return send(PING);
+    }
+
+    /**
+     * Asks the daemon to shut down.
+     */
+    public int shutdown() {
+        return send(SHUTDOWN);
+    }
+
+    /**
+     * Sends the given request with the token of the daemon, which is read
+     * from the token file of the port.
+     */
+    private int send(String request) {
+        String token;
+        try {
+            token = readToken(port);
+        } catch (IOException e) {
+            Log.error("Can't read the token of the daemon on port " + port + " from " + tokenFile(port) +
+                      ", is it running? : " + e.getMessage());
+            return ResultCode.FAILED;
+        }
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(
+                     socket.getInputStream(), StandardCharsets.UTF_8))
+        ) {
+            writer.write(line(token, request));
+            writer.write('\n');
+            writer.flush();
+
+            String response = reader.readLine();
+            if (response == null) {
+                Log.error("The daemon closed the connection");
+                return ResultCode.FAILED;
+            }
+            String[] fields = fields(response);
+            if (fields[0].equals(RESULT) && fields.length == 2) {
+                return Integer.parseInt(fields[1]);
+            }
+            Log.error("The daemon failed : " + (fields.length > 1 ? fields[1] : response));
+        } catch (IOException | NumberFormatException e) {
+            Log.error("Can't reach the daemon on port " + port + " : " + e.getMessage());
+        }
+        return ResultCode.FAILED;
+    }
+}
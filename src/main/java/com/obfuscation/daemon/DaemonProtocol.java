@@ -0,0 +1,147 @@
+package com.obfuscation.daemon;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+/**
+ * The line protocol between {@link DaemonClient} and {@link DaemonServer}.
+ * <p>
+ * A client sends one request line and receives one response line per
+ * connection. Fields are separated by tabs, and every request starts with
+ * the token of the daemon:
+ * </p>
+ * <pre>
+ * token  ADAPT  apk  config  out  gzip  binary  provenance  profile  metrics  ->  RESULT  code
+ * token  PING                                                                ->  RESULT  0
+ * token  SHUTDOWN                                                            ->  RESULT  0
+ * </pre>
+ * <p>
+ * The flags are 0 or 1, and metrics is the path of the metrics file or empty.
+ * A request that can't be served, or doesn't have the token, is answered with
+ * {@code ERROR message}.
+ * </p>
+ * <p>
+ * The token is a random number the daemon writes to a file of the user's
+ * home directory that only the user can read, see {@link #tokenFile(int)}.
+ * Since any local process can connect to the loopback port, the token is
+ * what restricts the daemon to the processes of the user who started it.
+ * </p>
+ */
+class DaemonProtocol {
+    static final String ADAPT       = "ADAPT";
+    static final String PING        = "PING";
+    static final String SHUTDOWN    = "SHUTDOWN";
+
+    static final String RESULT      = "RESULT";
+    static final String ERROR       = "ERROR";
+
+    static final String SEPARATOR   = "\t";
+    static final String TRUE        = "1";
+    static final String FALSE       = "0";
+
+    private static final String TOKEN_DIRECTORY = ".prokeepparser";
+    private static final int TOKEN_BYTES = 32;
+
+    private DaemonProtocol() {
+    }
+
+    static String line(String... fields) {
+        return String.join(SEPARATOR, fields);
+    }
+
+    static String[] fields(String line) {
+        return line.split(SEPARATOR, -1);
+    }
+
+    static String flag(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    /**
+     * Returns the file holding the token of the daemon on the given port:
+     * {@code ~/.prokeepparser/daemon-<port>.token}.
+     */
+    static Path tokenFile(int port) {
+        return Paths.get(System.getProperty("user.home"), TOKEN_DIRECTORY, "daemon-" + port + ".token");
+    }
+
+    /**
+     * Creates a new random token and writes it to the token file of the given
+     * port, in a directory and a file that only the current user can access.
+     */
+    static String createToken(int port) throws IOException {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder token = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            token.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+
+        Path file = tokenFile(port);
+        Path directory = file.getParent();
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        Files.createDirectories(directory);
+        if (posix) {
+            Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwx------"));
+        } else {
+            restrictToOwner(directory.toFile());
+        }
+        // A new file, so it never had the permissions of an earlier one
+        Files.deleteIfExists(file);
+        if (posix) {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(file);
+            restrictToOwner(file.toFile());
+        }
+        Files.write(file, token.toString().getBytes(StandardCharsets.US_ASCII));
+        return token.toString();
+    }
+
+    /**
+     * Reads the token of the daemon on the given port.
+     */
+    static String readToken(int port) throws IOException {
+        return new String(Files.readAllBytes(tokenFile(port)), StandardCharsets.US_ASCII).trim();
+    }
+
+    /**
+     * Deletes the token file of the given port if it still holds the given
+     * token, so a daemon that stops doesn't delete the file of a newer one.
+     */
+    static void deleteToken(int port, String token) {
+        try {
+            if (isToken(token, readToken(port))) {
+                Files.deleteIfExists(tokenFile(port));
+            }
+        } catch (IOException e) {
+            // Already deleted
+        }
+    }
+
+    /**
+     * Compares the given tokens in a time that doesn't depend on where they
+     * differ.
+     */
+    static boolean isToken(String token, String candidate) {
+        return candidate != null && MessageDigest.isEqual(
+                token.getBytes(StandardCharsets.US_ASCII),
+                candidate.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void restrictToOwner(File file) throws IOException {
+        boolean restricted = file.setReadable(false, false) && file.setReadable(true, true) &&
+                             file.setWritable(false, false) && file.setWritable(true, true);
+        if (!restricted) {
+            throw new IOException("Can't restrict " + file + " to its owner");
+        }
+    }
+}
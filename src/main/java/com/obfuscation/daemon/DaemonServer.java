@@ -0,0 +1,210 @@
+package com.obfuscation.daemon;
+
+import com.obfuscation.ProKeepParserImpl;
+import com.obfuscation.constants.ResultCode;
+import com.obfuscation.metrics.MetricsRegistry;
+import com.obfuscation.model.ClassIndex;
+import com.obfuscation.model.OffHeapClassIndex;
+import com.obfuscation.utils.Log;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.obfuscation.daemon.DaemonProtocol.*;
+
+/**
+ * A resident ProKeepParser that serves {@link DaemonClient} requests on a
+ * loopback port.
+ * <p>
+ * The daemon keeps the JVM, and with it the JIT-compiled parser, warm between
+ * runs, and caches the class indexes of recently used APK files in a
+ * {@link ClassIndexCache}, so analyzing the same APK against several configs
+ * parses it only once.
+ * </p>
+ * <p>
+ * Only the processes of the user who started the daemon may use it: they
+ * must send the token the daemon writes to a file only that user can read,
+ * see {@link DaemonProtocol}.
+ * </p>
+ */
+public class DaemonServer implements Closeable {
+    public static final int DEFAULT_PORT = 47811;
+
+    private final int port;
+    private final ClassIndexCache cache;
+    private final ExecutorService executor;
+
+    private volatile ServerSocket serverSocket;
+    private volatile String token;
+
+    /**
+     * @param port        the loopback port to listen on.
+     * @param cacheBudget the estimated number of bytes the cached class indexes may use.
+     */
+    public DaemonServer(int port, long cacheBudget) {
+        this(port, cacheBudget, null);
+    }
+
+    /**
+     * @param port           the loopback port to listen on.
+     * @param cacheBudget    the estimated number of bytes the cached class indexes may use.
+     * @param offHeapStorage where the cached class indexes are kept off the heap,
+     *                       or null to keep them on the heap.
+     */
+    public DaemonServer(int port, long cacheBudget, OffHeapClassIndex.Storage offHeapStorage) {
+        this.port = port;
+        this.cache = new ClassIndexCache(cacheBudget, offHeapStorage);
+        this.executor = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "ProKeepParser-daemon");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+    }
+
+    /**
+     * Accepts and serves requests until a shutdown request arrives or the
+     * server is closed.
+     */
+    public void run() throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        token = createToken(port);
+        Log.info("Listening on " + serverSocket.getLocalSocketAddress() + ", token in " + tokenFile(port));
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (SocketException e) {
+                    // Closed by a shutdown request.
+                    break;
+                }
+                executor.execute(() -> serve(socket));
+            }
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        if (serverSocket != null) {
+            serverSocket.close();
+        }
+        if (token != null) {
+            deleteToken(port, token);
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(
+                     s.getInputStream(), StandardCharsets.UTF_8));
+             Writer writer = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8)
+        ) {
+            String[] fields = authenticate(reader.readLine());
+            String request = fields == null ? null : fields[0];
+            String response;
+            try {
+                if (fields == null) {
+                    throw new IOException("Missing or wrong token");
+                }
+                response = handle(fields);
+            } catch (IOException | RuntimeException e) {
+                Log.error("Failed to serve '" + request + "' : " + e.getMessage());
+                response = line(ERROR, String.valueOf(e.getMessage()));
+            }
+            writer.write(response);
+            writer.write('\n');
+            writer.flush();
+
+            if (SHUTDOWN.equals(request)) {
+                Log.info("Shutting down");
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            Log.error("Failed to serve a request : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the fields of the given request after its token, or null if it
+     * doesn't start with the token of this daemon.
+     */
+    private String[] authenticate(String line) {
+        if (line == null) {
+            return null;
+        }
+        String[] fields = fields(line);
+        return fields.length > 1 && isToken(token, fields[0]) ? Arrays.copyOfRange(fields, 1, fields.length) : null;
+    }
+
+    private String handle(String[] fields) throws IOException {
+        switch (fields[0]) {
+            case PING:
+            case SHUTDOWN:
+                return line(RESULT, String.valueOf(ResultCode.SUCCESS));
+            case ADAPT:
+                if (fields.length != 9) {
+                    throw new IOException("Malformed request '" + line(fields) + "'");
+                }
+                return line(RESULT, String.valueOf(adapt(
+                        fields[1],
+                        fields[2],
+                        fields[3],
+                        TRUE.equals(fields[4]),
+                        TRUE.equals(fields[5]),
+                        TRUE.equals(fields[6]),
+                        TRUE.equals(fields[7]),
+                        fields[8].isEmpty() ? null : fields[8]
+                )));
+            default:
+                throw new IOException("Unknown request '" + fields[0] + "'");
+        }
+    }
+
+    private int adapt(
+            String apkFilePath,
+            String proConfigFilePath,
+            String outputDirPath,
+            boolean compressOutput,
+            boolean binaryOutput,
+            boolean provenanceOutput,
+            boolean ruleProfileOutput,
+            String metricsFilePath
+    ) throws IOException {
+        Log.info("Adapting " + proConfigFilePath + " to " + apkFilePath);
+        // Requests run concurrently in one JVM, so the registry must not reset the heap peaks
+        MetricsRegistry metrics = metricsFilePath != null
+                ? MetricsRegistry.forSharedProcess()
+                : MetricsRegistry.disabled();
+        ClassIndex classIndex = cache.get(apkFilePath);
+
+        ProKeepParserImpl proKeepParser = new ProKeepParserImpl(
+                apkFilePath,
+                proConfigFilePath,
+                outputDirPath
+        );
+        proKeepParser.setCompressOutput(compressOutput);
+        proKeepParser.setBinaryOutput(binaryOutput);
+        proKeepParser.setProvenanceOutput(provenanceOutput);
+        proKeepParser.setRuleProfileOutput(ruleProfileOutput);
+        proKeepParser.setMetrics(metrics);
+        int result = proKeepParser.process(classIndex);
+        if (metricsFilePath != null) {
+            metrics.write(Paths.get(metricsFilePath));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Provides a resident daemon that keeps APK class indexes warm between runs, and the client that talks to it.
+ */
+package com.obfuscation.daemon;
@@ -0,0 +1,239 @@
+package com.obfuscation.diff;
+
+import com.googlecode.d2j.node.DexClassNode;
+import com.obfuscation.model.ClassIndex;
+import com.obfuscation.model.ConsistencyScope;
+import com.obfuscation.proconfig.KeepSpecificationMatcher;
+import com.obfuscation.proconfig.ProConfig;
+import com.obfuscation.proconfig.specs.KeepClassSpecification;
+import com.obfuscation.utils.Utils;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Adapts a configuration to a new build of an APK, re-evaluating the keep
+ * rules only for the classes that changed since a previous analysis.
+ * <p>
+ * A class is dirty if it is new, if its {@link Fingerprints fingerprint}
+ * changed, or, transitively, if one of its super classes or interfaces is
+ * dirty or was removed. The classes a rule matched before are reused for every
+ * clean class, so only the dirty classes are matched against the rules.
+ * The kept members are then collected from the matched classes as in a full
+ * analysis, so the resulting scope is the same as the one of a full analysis.
+ * </p>
+ * <p>
+ * If the configuration changed, every class is dirty.
+ * </p>
+ */
+public class DiffAnalyzer {
+
+    /**
+     * The outcome of {@link #analyze(ClassIndex, ProConfig, DiffCache)}.
+     */
+    public static class Result {
+        public final DiffCache cache;
+        public final int dirtyClassCount;
+        public final boolean full;
+
+        Result(DiffCache cache, int dirtyClassCount, boolean full) {
+            this.cache = cache;
+            this.dirtyClassCount = dirtyClassCount;
+            this.full = full;
+        }
+    }
+
+    private DiffAnalyzer() {
+    }
+
+    /**
+     * Adapts the given configuration to the given class index.
+     *
+     * @param classIndex the classes of the new APK.
+     * @param proConfig  the loaded and reduced configuration.
+     * @param previous   the cache of a previous analysis, or null for a full analysis.
+     * @return the new scope, in a cache for the next analysis.
+     */
+    public static Result analyze(ClassIndex classIndex, ProConfig proConfig, DiffCache previous) {
+        byte[] configDigest = Fingerprints.of(proConfig);
+        boolean full = previous == null || !Arrays.equals(previous.configDigest, configDigest);
+
+        String[] classNames = classIndex.classNames().toArray(new String[0]);
+        Arrays.sort(classNames);
+        DexClassNode[] classNodes = new DexClassNode[classNames.length];
+        long[] fingerprints = new long[classNames.length];
+        IntStream.range(0, classNames.length).parallel().forEach(id -> {
+            classNodes[id] = classIndex.get(classNames[id]);
+            fingerprints[id] = Fingerprints.of(classNodes[id]);
+        });
+
+        boolean[] dirty = new boolean[classNames.length];
+        if (full) {
+            Arrays.fill(dirty, true);
+        } else {
+            markDirty(classNames, classNodes, fingerprints, previous, dirty);
+        }
+        int[] dirtyIds = IntStream.range(0, dirty.length).filter(id -> dirty[id]).toArray();
+
+        // Match the dirty classes, reusing the previous matches of the clean ones.
+        List<KeepClassSpecification> rules = proConfig.keep;
+        int[][] keepMatches = new int[rules.size()][];
+        int[][] keepMemberMatches = new int[rules.size()][];
+        IntStream.range(0, rules.size()).parallel().forEach(rule -> {
+            KeepClassSpecification spec = rules.get(rule);
+            if (KeepSpecificationMatcher.isExactClassName(spec.className)) {
+                return;
+            }
+            if (KeepSpecificationMatcher.isKeepRule(spec)) {
+                keepMatches[rule] = match(
+                        full ? null : previous.keepMatches[rule], previous, classNames, dirty, dirtyIds,
+                        id -> KeepSpecificationMatcher.matchesKeep(spec, classNames[id], classNodes[id])
+                );
+            }
+            if (KeepSpecificationMatcher.isKeepMembersRule(spec)) {
+                keepMemberMatches[rule] = match(
+                        full ? null : previous.keepMemberMatches[rule], previous, classNames, dirty, dirtyIds,
+                        id -> KeepSpecificationMatcher.matchesKeepMembers(spec, classNames[id], classNodes[id])
+                );
+            }
+        });
+
+        // Collect the scope from the matches, as a full analysis does.
+        KeepSpecificationMatcher matcher = new KeepSpecificationMatcher(classIndex);
+        ConsistencyScope scope = new ConsistencyScope();
+        scope.initialize();
+        for (int rule = 0; rule < rules.size(); rule++) {
+            KeepClassSpecification spec = rules.get(rule);
+            if (KeepSpecificationMatcher.isKeepRule(spec)) {
+                if (keepMatches[rule] == null) {
+                    scope.classNames.add(spec.className);
+                } else {
+                    matcher.collectKeeps(names(keepMatches[rule], classNames), scope);
+                }
+            }
+            if (KeepSpecificationMatcher.isKeepMembersRule(spec)) {
+                if (keepMemberMatches[rule] == null) {
+                    scope.classNames.add(spec.className);
+                } else {
+                    int[] ids = keepMemberMatches[rule];
+                    List<DexClassNode> nodes = new ArrayList<>(ids.length);
+                    for (int id : ids) {
+                        nodes.add(classNodes[id]);
+                    }
+                    matcher.collectKeepMembers(spec, names(ids, classNames), nodes, scope);
+                }
+            }
+        }
+
+        DiffCache cache = new DiffCache(
+                configDigest,
+                classNames,
+                fingerprints,
+                keepMatches,
+                keepMemberMatches,
+                scope
+        );
+        return new Result(cache, dirtyIds.length, full);
+    }
+
+    /**
+     * Marks the new and changed classes dirty, and then every class that
+     * directly or indirectly extends or implements a dirty or removed class.
+     */
+    private static void markDirty(
+            String[] classNames,
+            DexClassNode[] classNodes,
+            long[] fingerprints,
+            DiffCache previous,
+            boolean[] dirty
+    ) {
+        Deque<String> changed = new ArrayDeque<>();
+        Set<String> present = new HashSet<>(Arrays.asList(classNames));
+        for (int id = 0; id < classNames.length; id++) {
+            int previousId = previous.classId(classNames[id]);
+            if (previousId < 0 || previous.fingerprints[previousId] != fingerprints[id]) {
+                dirty[id] = true;
+                changed.add(classNames[id]);
+            }
+        }
+        for (String className : previous.classNames) {
+            if (!present.contains(className)) {
+                changed.add(className);
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<Integer>> subtypes = new HashMap<>();
+        for (int id = 0; id < classNodes.length; id++) {
+            DexClassNode classNode = classNodes[id];
+            if (classNode.superClass != null) {
+                subtypes.computeIfAbsent(Utils.normalizeClassName(classNode.superClass), k -> new ArrayList<>()).add(id);
+            }
+            if (classNode.interfaceNames != null) {
+                for (String interfaceName : classNode.interfaceNames) {
+                    subtypes.computeIfAbsent(Utils.normalizeClassName(interfaceName), k -> new ArrayList<>()).add(id);
+                }
+            }
+        }
+
+        while (!changed.isEmpty()) {
+            List<Integer> ids = subtypes.get(changed.poll());
+            if (ids == null) {
+                continue;
+            }
+            for (int id : ids) {
+                if (!dirty[id]) {
+                    dirty[id] = true;
+                    changed.add(classNames[id]);
+                }
+            }
+        }
+    }
+
+    private interface ClassPredicate {
+        boolean test(int id);
+    }
+
+    /**
+     * Returns the sorted ids of the classes a rule stage matches: the previous
+     * matches that are still present and clean, and the dirty classes that
+     * match now.
+     */
+    private static int[] match(
+            int[] previousMatches,
+            DiffCache previous,
+            String[] classNames,
+            boolean[] dirty,
+            int[] dirtyIds,
+            ClassPredicate predicate
+    ) {
+        int[] matches = new int[(previousMatches == null ? 0 : previousMatches.length) + dirtyIds.length];
+        int count = 0;
+        if (previousMatches != null) {
+            for (int previousId : previousMatches) {
+                int id = Arrays.binarySearch(classNames, previous.classNames[previousId]);
+                if (id >= 0 && !dirty[id]) {
+                    matches[count++] = id;
+                }
+            }
+        }
+        for (int id : dirtyIds) {
+            if (predicate.test(id)) {
+                matches[count++] = id;
+            }
+        }
+        int[] sorted = Arrays.copyOf(matches, count);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static List<String> names(int[] ids, String[] classNames) {
+        List<String> names = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            names.add(classNames[id]);
+        }
+        return names;
+    }
+}
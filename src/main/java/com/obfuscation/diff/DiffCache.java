@@ -0,0 +1,204 @@
+package com.obfuscation.diff;
+
+import com.obfuscation.model.ConsistencyScope;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The state a {@link DiffAnalyzer} run leaves for the next one: the digest of
+ * the configuration, the fingerprint of every class, the classes matched by
+ * each stage of each keep rule, and the resulting scope.
+ * <p>
+ * Class ids are indices into the sorted class names. A stage a rule doesn't
+ * match classes in has no match list.
+ * </p>
+ */
+public class DiffCache {
+    private static final int MAGIC = 0x504b4443; // "PKDC"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    final byte[] configDigest;
+    final String[] classNames;
+    final long[] fingerprints;
+    final int[][] keepMatches;
+    final int[][] keepMemberMatches;
+    public final ConsistencyScope scope;
+
+    private Map<String, Integer> classIds;
+
+    DiffCache(
+            byte[] configDigest,
+            String[] classNames,
+            long[] fingerprints,
+            int[][] keepMatches,
+            int[][] keepMemberMatches,
+            ConsistencyScope scope
+    ) {
+        this.configDigest = configDigest;
+        this.classNames = classNames;
+        this.fingerprints = fingerprints;
+        this.keepMatches = keepMatches;
+        this.keepMemberMatches = keepMemberMatches;
+        this.scope = scope;
+    }
+
+    /**
+     * Returns the id of the given class name, or -1.
+     */
+    synchronized int classId(String className) {
+        if (classIds == null) {
+            classIds = new HashMap<>(classNames.length * 2);
+            for (int id = 0; id < classNames.length; id++) {
+                classIds.put(classNames[id], id);
+            }
+        }
+        return classIds.getOrDefault(className, -1);
+    }
+
+    /**
+     * Returns the number of classes of the analyzed APK.
+     */
+    public int classCount() {
+        return classNames.length;
+    }
+
+    /**
+     * Reads a cache written by {@link #write(Path)}.
+     */
+    public static DiffCache read(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(path), BUFFER_SIZE), BUFFER_SIZE
+        ))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a diff cache file of version " + VERSION + " : " + path);
+            }
+            byte[] configDigest = new byte[in.readInt()];
+            in.readFully(configDigest);
+
+            int classCount = in.readInt();
+            String[] classNames = new String[classCount];
+            long[] fingerprints = new long[classCount];
+            for (int id = 0; id < classCount; id++) {
+                classNames[id] = in.readUTF();
+                fingerprints[id] = in.readLong();
+            }
+
+            int ruleCount = in.readInt();
+            int[][] keepMatches = new int[ruleCount][];
+            int[][] keepMemberMatches = new int[ruleCount][];
+            for (int rule = 0; rule < ruleCount; rule++) {
+                keepMatches[rule] = readIds(in);
+                keepMemberMatches[rule] = readIds(in);
+            }
+
+            ConsistencyScope scope = new ConsistencyScope();
+            scope.initialize();
+            readStrings(in, scope.classNames);
+            readAccess(in, scope.keepMethodsAccess);
+            readAccess(in, scope.keepFieldsAccess);
+            readStrings(in, scope.methodSignatures);
+            readStrings(in, scope.fieldSignatures);
+
+            return new DiffCache(configDigest, classNames, fingerprints, keepMatches, keepMemberMatches, scope);
+        }
+    }
+
+    /**
+     * Writes this cache, gzip-compressed, to the given file.
+     */
+    public void write(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(path), BUFFER_SIZE), BUFFER_SIZE
+        ))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(configDigest.length);
+            out.write(configDigest);
+
+            out.writeInt(classNames.length);
+            for (int id = 0; id < classNames.length; id++) {
+                out.writeUTF(classNames[id]);
+                out.writeLong(fingerprints[id]);
+            }
+
+            out.writeInt(keepMatches.length);
+            for (int rule = 0; rule < keepMatches.length; rule++) {
+                writeIds(out, keepMatches[rule]);
+                writeIds(out, keepMemberMatches[rule]);
+            }
+
+            writeStrings(out, scope.classNames);
+            writeAccess(out, scope.keepMethodsAccess);
+            writeAccess(out, scope.keepFieldsAccess);
+            writeStrings(out, scope.methodSignatures);
+            writeStrings(out, scope.fieldSignatures);
+        }
+    }
+
+    private static int[] readIds(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            return null;
+        }
+        int[] ids = new int[count];
+        for (int index = 0; index < count; index++) {
+            ids[index] = in.readInt();
+        }
+        return ids;
+    }
+
+    private static void writeIds(DataOutputStream out, int[] ids) throws IOException {
+        if (ids == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(ids.length);
+        for (int id : ids) {
+            out.writeInt(id);
+        }
+    }
+
+    private static void readStrings(DataInputStream in, Set<String> strings) throws IOException {
+        int count = in.readInt();
+        for (int index = 0; index < count; index++) {
+            strings.add(in.readUTF());
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, Set<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static void readAccess(DataInputStream in, Map<String, Set<Integer>> access) throws IOException {
+        int count = in.readInt();
+        for (int index = 0; index < count; index++) {
+            String className = in.readUTF();
+            int flagCount = in.readInt();
+            Set<Integer> flags = new HashSet<>();
+            for (int flag = 0; flag < flagCount; flag++) {
+                flags.add(in.readInt());
+            }
+            access.put(className, flags);
+        }
+    }
+
+    private static void writeAccess(DataOutputStream out, Map<String, Set<Integer>> access) throws IOException {
+        out.writeInt(access.size());
+        for (Map.Entry<String, Set<Integer>> entry : access.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (int flag : entry.getValue()) {
+                out.writeInt(flag);
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.obfuscation.diff;
+
+import com.googlecode.d2j.node.DexAnnotationNode;
+import com.googlecode.d2j.node.DexClassNode;
+import com.googlecode.d2j.node.DexFieldNode;
+import com.googlecode.d2j.node.DexMethodNode;
+import com.obfuscation.proconfig.ProConfig;
+import com.obfuscation.proconfig.specs.ClassSpecification;
+import com.obfuscation.proconfig.specs.KeepClassSpecification;
+import com.obfuscation.proconfig.specs.MemberSpecification;
+import com.obfuscation.proconfig.specs.MemberValueSpecification;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fingerprints of classes and configurations, used to tell what changed
+ * between two analyses.
+ * <p>
+ * A class fingerprint covers the decoded class content the keep rules can look
+ * at: access flags, names, super types, annotation types and member
+ * signatures. The raw class_def and class_data bytes are not hashed: they hold
+ * indices into the string, type and method tables of their dex file, which
+ * shift whenever any other class of the dex changes, so they would mark almost
+ * every class as changed.
+ * </p>
+ */
+public class Fingerprints {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Fingerprints() {
+    }
+
+    /**
+     * Returns the 64-bit fingerprint of the rule-relevant content of the given
+     * class.
+     */
+    public static long of(DexClassNode classNode) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = hash(hash, classNode.access);
+        hash = hash(hash, classNode.className);
+        hash = hash(hash, classNode.superClass);
+        if (classNode.interfaceNames != null) {
+            for (String interfaceName : classNode.interfaceNames) {
+                hash = hash(hash, interfaceName);
+            }
+        }
+        if (classNode.anns != null) {
+            for (DexAnnotationNode annotationNode : classNode.anns) {
+                hash = hash(hash, annotationNode.type);
+            }
+        }
+        if (classNode.methods != null) {
+            for (DexMethodNode methodNode : classNode.methods) {
+                hash = hash(hash, methodNode.access);
+                hash = hash(hash, methodNode.method.getOwner());
+                hash = hash(hash, methodNode.method.getName());
+                hash = hash(hash, methodNode.method.getDesc());
+            }
+        }
+        if (classNode.fields != null) {
+            for (DexFieldNode fieldNode : classNode.fields) {
+                hash = hash(hash, fieldNode.access);
+                hash = hash(hash, fieldNode.field.getOwner());
+                hash = hash(hash, fieldNode.field.getName());
+                hash = hash(hash, fieldNode.field.getType());
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the SHA-256 digest of the keep rules of the given configuration,
+     * in their order.
+     */
+    public static byte[] of(ProConfig proConfig) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeBoolean(proConfig.obfuscate);
+            out.writeInt(proConfig.keep.size());
+            for (KeepClassSpecification spec : proConfig.keep) {
+                out.writeBoolean(spec.markClasses);
+                out.writeBoolean(spec.markClassMembers);
+                out.writeBoolean(spec.markConditionally);
+                out.writeBoolean(spec.markDescriptorClasses);
+                out.writeBoolean(spec.markCodeAttributes);
+                out.writeBoolean(spec.allowObfuscation);
+                write(out, (ClassSpecification) spec);
+                out.writeBoolean(spec.condition != null);
+                if (spec.condition != null) {
+                    write(out, spec.condition);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void write(DataOutputStream out, ClassSpecification spec) throws IOException {
+        out.writeInt(spec.requiredSetAccessFlags);
+        out.writeInt(spec.requiredUnsetAccessFlags);
+        write(out, spec.annotationType);
+        write(out, spec.className);
+        write(out, spec.extendsAnnotationType);
+        write(out, spec.extendsClassName);
+        write(out, spec.fieldSpecifications);
+        write(out, spec.methodSpecifications);
+    }
+
+    private static void write(DataOutputStream out, List<MemberSpecification> specs) throws IOException {
+        out.writeInt(specs == null ? -1 : specs.size());
+        if (specs == null) {
+            return;
+        }
+        for (MemberSpecification spec : specs) {
+            out.writeInt(spec.requiredSetAccessFlags);
+            out.writeInt(spec.requiredUnsetAccessFlags);
+            write(out, spec.annotationType);
+            write(out, spec.name);
+            write(out, spec.descriptor);
+            write(out, spec instanceof MemberValueSpecification
+                    ? Arrays.toString(((MemberValueSpecification) spec).values)
+                    : null);
+        }
+    }
+
+    private static void write(DataOutputStream out, String string) throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static long hash(long hash, int value) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            hash = (hash ^ ((value >>> shift) & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, String string) {
+        if (string == null) {
+            return hash(hash, -1);
+        }
+        hash = hash(hash, string.length());
+        for (int index = 0; index < string.length(); index++) {
+            char c = string.charAt(index);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Provides the differential mode, which only re-evaluates the classes that changed since a previous analysis.
+ */
+package com.obfuscation.diff;
@@ -0,0 +1,133 @@
+package com.obfuscation.input;
+
+import com.googlecode.d2j.node.DexClassNode;
+import com.googlecode.d2j.reader.DexReferencePool;
+import com.obfuscation.constants.Ext;
+import org.objectweb.asm.ClassReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads the classes of JAR and AAR files, so library rules can be checked before the library is dexed.
+ * <p>
+ * The class files are read as they are, with a {@link ClassReader} that skips code, debug information and
+ * frames, into the {@link DexClassNode}s the dex compiler would define; see {@link DexClassNodeBuilder}. The
+ * classes of an AAR are those of its {@code classes.jar} and of the jars in its {@code libs} directory.
+ * Multi-release versions and module descriptors are ignored.
+ * </p>
+ */
+public final class ClassFileInput {
+    private static final int READER_FLAGS = ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+
+    private static final String CLASS_FILE_SUFFIX = ".class";
+    private static final String MODULE_INFO = "module-info.class";
+    private static final String META_INF = "META-INF/";
+    private static final String AAR_CLASSES_JAR = "classes.jar";
+    private static final String AAR_LIBS = "libs/";
+
+    private ClassFileInput() {
+    }
+
+    /**
+     * Returns whether the given file is a JAR or AAR file rather than an APK file.
+     */
+    public static boolean isClassFileArchive(String filePath) {
+        String name = filePath.toLowerCase(Locale.ROOT);
+        return name.endsWith(Ext.JAR) || name.endsWith(Ext.AAR);
+    }
+
+    /**
+     * Reads the class files of the given JAR or AAR file, in the order of their entries.
+     */
+    public static List<byte[]> readClassFiles(String filePath) throws IOException {
+        List<byte[]> classFiles = new ArrayList<>();
+        boolean aar = filePath.toLowerCase(Locale.ROOT).endsWith(Ext.AAR);
+        try (ZipFile zipFile = new ZipFile(filePath)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                    if (!aar && isClassFile(entry.getName())) {
+                        classFiles.add(inputStream.readAllBytes());
+                    } else if (aar && isAarJar(entry.getName())) {
+                        readJarClassFiles(inputStream.readAllBytes(), classFiles);
+                    }
+                }
+            }
+        }
+        return classFiles;
+    }
+
+    /**
+     * Returns the sum of the uncompressed sizes of the class files of the given JAR or AAR file. The jars of an
+     * AAR are counted whole.
+     */
+    public static long classFileBytes(String filePath) throws IOException {
+        long bytes = 0;
+        boolean aar = filePath.toLowerCase(Locale.ROOT).endsWith(Ext.AAR);
+        try (ZipFile zipFile = new ZipFile(filePath)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (aar ? isAarJar(entry.getName()) : isClassFile(entry.getName())) {
+                    bytes += Math.max(entry.getSize(), 0);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads the given class files in parallel, sharing their names and members through one pool.
+     *
+     * @return the class nodes, in the order of the class files.
+     */
+    public static List<DexClassNode> accept(List<byte[]> classFiles) {
+        DexReferencePool pool = new DexReferencePool();
+        return classFiles.parallelStream()
+                .map(classFile -> accept(classFile, pool))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Reads the given class file.
+     *
+     * @param pool the pool shared by the classes of the same library.
+     */
+    public static DexClassNode accept(byte[] classFile, DexReferencePool pool) {
+        DexClassNodeBuilder builder = new DexClassNodeBuilder(pool);
+        new ClassReader(classFile).accept(builder, READER_FLAGS);
+        return builder.getClassNode();
+    }
+
+    private static void readJarClassFiles(byte[] jar, List<byte[]> classFiles) throws IOException {
+        try (ZipInputStream inputStream = new ZipInputStream(new ByteArrayInputStream(jar))) {
+            for (ZipEntry entry = inputStream.getNextEntry(); entry != null; entry = inputStream.getNextEntry()) {
+                if (isClassFile(entry.getName())) {
+                    classFiles.add(inputStream.readAllBytes());
+                }
+            }
+        }
+    }
+
+    private static boolean isClassFile(String entryName) {
+        return entryName.endsWith(CLASS_FILE_SUFFIX) &&
+               !entryName.startsWith(META_INF) &&
+               !entryName.endsWith(MODULE_INFO);
+    }
+
+    private static boolean isAarJar(String entryName) {
+        return entryName.equals(AAR_CLASSES_JAR) ||
+               (entryName.startsWith(AAR_LIBS) && entryName.endsWith(Ext.JAR));
+    }
+}
@@ -0,0 +1,109 @@
+package com.obfuscation.input;
+
+import com.googlecode.d2j.DexConstants;
+import com.googlecode.d2j.Field;
+import com.googlecode.d2j.Method;
+import com.googlecode.d2j.Proto;
+import com.googlecode.d2j.Visibility;
+import com.googlecode.d2j.node.DexClassNode;
+import com.googlecode.d2j.reader.DexReferencePool;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Builds the {@link DexClassNode} the dex compiler would define for a class file, from the declarations a
+ * {@link org.objectweb.asm.ClassReader} visits.
+ * <p>
+ * Names become type descriptors and access flags become dex access flags: classes lose {@code ACC_SUPER},
+ * constructors get {@code ACC_CONSTRUCTOR} and synchronized methods that aren't native get
+ * {@code ACC_DECLARED_SYNCHRONIZED} instead. Class annotations are kept without their values; the system
+ * annotations the dex compiler derives from class file attributes aren't.
+ * </p>
+ */
+class DexClassNodeBuilder extends ClassVisitor {
+    /** The access flags of the class file format; ASM passes its own flags above them. */
+    private static final int CLASS_FILE_ACCESS = 0xFFFF;
+    private static final String CONSTRUCTOR = "<init>";
+    private static final String STATIC_INITIALIZER = "<clinit>";
+
+    private final DexReferencePool pool;
+    private DexClassNode classNode;
+    private String owner;
+
+    /**
+     * @param pool the pool the names, prototypes and members of the built classes are shared through.
+     */
+    DexClassNodeBuilder(DexReferencePool pool) {
+        super(Opcodes.ASM9);
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the node of the last visited class.
+     */
+    DexClassNode getClassNode() {
+        return classNode;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        String[] interfaceNames = new String[interfaces == null ? 0 : interfaces.length];
+        for (int index = 0; index < interfaceNames.length; index++) {
+            interfaceNames[index] = descriptorOf(interfaces[index]);
+        }
+        owner = descriptorOf(name);
+        classNode = new DexClassNode(
+                access & CLASS_FILE_ACCESS & ~Opcodes.ACC_SUPER,
+                owner,
+                superName == null ? null : descriptorOf(superName),
+                interfaceNames
+        );
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+        classNode.visitAnnotation(pool.intern(descriptor), visible ? Visibility.RUNTIME : Visibility.BUILD);
+        return null;
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+        Field field = pool.intern(new Field(owner, pool.intern(name), pool.intern(descriptor)));
+        classNode.visitField(access & CLASS_FILE_ACCESS, field, null);
+        return null;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+        Method method = pool.intern(new Method(owner, pool.intern(name), protoOf(descriptor)));
+        classNode.visitMethod(dexMethodAccess(access & CLASS_FILE_ACCESS, name), method);
+        return null;
+    }
+
+    private Proto protoOf(String descriptor) {
+        Type[] argumentTypes = Type.getArgumentTypes(descriptor);
+        String[] parameterTypes = new String[argumentTypes.length];
+        for (int index = 0; index < parameterTypes.length; index++) {
+            parameterTypes[index] = pool.intern(argumentTypes[index].getDescriptor());
+        }
+        return pool.intern(new Proto(parameterTypes, pool.intern(Type.getReturnType(descriptor).getDescriptor())));
+    }
+
+    private static int dexMethodAccess(int access, String name) {
+        if (CONSTRUCTOR.equals(name) || STATIC_INITIALIZER.equals(name)) {
+            access |= DexConstants.ACC_CONSTRUCTOR;
+        }
+        if ((access & Opcodes.ACC_SYNCHRONIZED) != 0 && (access & Opcodes.ACC_NATIVE) == 0) {
+            access = access & ~Opcodes.ACC_SYNCHRONIZED | DexConstants.ACC_DECLARED_SYNCHRONIZED;
+        }
+        return access;
+    }
+
+    private String descriptorOf(String internalName) {
+        return pool.intern(internalName.charAt(0) == '[' ? internalName : "L" + internalName + ";");
+    }
+}
@@ -0,0 +1,251 @@
+package com.obfuscation.input;
+
+import com.googlecode.d2j.node.DexClassNode;
+import com.googlecode.d2j.node.DexFileNode;
+import com.googlecode.d2j.reader.DexFileReader;
+import com.googlecode.d2j.reader.DexReferencePool;
+import com.obfuscation.constants.Ext;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads the dex files of the modules of an Android App Bundle (.aab) or of an APK set (.apks), so an app with
+ * dynamic features can be checked in one pass.
+ * <p>
+ * The dex files of a bundle module are its {@code <module>/dex/classes*.dex} entries. The dex files of an APK set
+ * module are those of its split APKs, {@code splits/<module>-<split>.apk}; an APK set without split APKs, built for
+ * devices that don't support them, has a module per standalone or universal APK instead, named after the APK.
+ * </p>
+ * <p>
+ * Modules are ordered with {@link #BASE_MODULE} first and the others by name, and the dex files of a module in the
+ * order {@code classes.dex}, {@code classes2.dex}, and so on. The classes are collected first-wins in that order,
+ * like the class loader of an app with installed features looks them up: a class defined by several dex files is
+ * taken from the base module, then from the first feature module by name, then from the first dex file.
+ * </p>
+ */
+public final class ModuleInput {
+    /**
+     * The name of the module every other module depends on.
+     */
+    public static final String BASE_MODULE = "base";
+
+    private static final String DEX_PREFIX = "classes";
+    private static final String DEX_SUFFIX = ".dex";
+    private static final String BUNDLE_DEX_DIRECTORY = "/dex/";
+    private static final String SPLITS_DIRECTORY = "splits/";
+    private static final char SPLIT_SEPARATOR = '-';
+
+    /**
+     * A module and its dex files.
+     */
+    public static final class Module {
+        public final String name;
+        public final List<byte[]> dexFiles;
+
+        Module(String name, List<byte[]> dexFiles) {
+            this.name = name;
+            this.dexFiles = dexFiles;
+        }
+    }
+
+    private ModuleInput() {
+    }
+
+    /**
+     * Returns whether the given file is an app bundle or an APK set rather than an APK file.
+     */
+    public static boolean isModuleArchive(String filePath) {
+        String name = filePath.toLowerCase(Locale.ROOT);
+        return name.endsWith(Ext.AAB) || name.endsWith(Ext.APKS);
+    }
+
+    /**
+     * Reads the dex files of every module of the given app bundle or APK set.
+     *
+     * @return the modules, base module first.
+     */
+    public static List<Module> readModules(String filePath) throws IOException {
+        Map<String, List<DexFile>> dexFiles = filePath.toLowerCase(Locale.ROOT).endsWith(Ext.AAB)
+                ? readBundleDexFiles(filePath)
+                : readApkSetDexFiles(filePath);
+        List<Module> modules = new ArrayList<>(dexFiles.size());
+        List<byte[]> baseDexFiles = dexFiles.containsKey(BASE_MODULE) ? sorted(dexFiles.remove(BASE_MODULE)) : null;
+        if (baseDexFiles != null) {
+            modules.add(new Module(BASE_MODULE, baseDexFiles));
+        }
+        new TreeMap<>(dexFiles).forEach((name, files) -> modules.add(new Module(name, sorted(files))));
+        return modules;
+    }
+
+    /**
+     * Returns the sum of the uncompressed sizes of the dex files of the given app bundle, or of the APKs of the
+     * given APK set.
+     */
+    public static long dexFileBytes(String filePath) throws IOException {
+        boolean bundle = filePath.toLowerCase(Locale.ROOT).endsWith(Ext.AAB);
+        long bytes = 0;
+        try (ZipFile zipFile = new ZipFile(filePath)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (bundle ? bundleModuleOf(entry.getName()) != null : entry.getName().endsWith(Ext.APK)) {
+                    bytes += Math.max(entry.getSize(), 0);
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads the dex files of the given modules in parallel, sharing their names and members through one pool.
+     *
+     * @return the class nodes of every module, in the order of the modules and of their dex files.
+     */
+    public static Map<String, List<DexClassNode>> accept(List<Module> modules) {
+        List<byte[]> dexFiles = new ArrayList<>();
+        for (Module module : modules) {
+            dexFiles.addAll(module.dexFiles);
+        }
+        DexReferencePool pool = new DexReferencePool();
+        DexFileNode[] fileNodes = new DexFileNode[dexFiles.size()];
+        IntStream.range(0, fileNodes.length).parallel().forEach(index -> {
+            DexFileNode fileNode = new DexFileNode();
+            new DexFileReader(dexFiles.get(index), pool).accept(fileNode);
+            fileNodes[index] = fileNode;
+        });
+
+        Map<String, List<DexClassNode>> classNodes = new LinkedHashMap<>();
+        int index = 0;
+        for (Module module : modules) {
+            List<DexClassNode> moduleNodes = classNodes.computeIfAbsent(module.name, name -> new ArrayList<>());
+            for (int count = 0; count < module.dexFiles.size(); count++) {
+                moduleNodes.addAll(fileNodes[index++].clzs);
+            }
+        }
+        return classNodes;
+    }
+
+    private static Map<String, List<DexFile>> readBundleDexFiles(String filePath) throws IOException {
+        Map<String, List<DexFile>> dexFiles = new LinkedHashMap<>();
+        try (ZipFile zipFile = new ZipFile(filePath)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String module = bundleModuleOf(entry.getName());
+                if (module == null) {
+                    continue;
+                }
+                try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                    dexFiles.computeIfAbsent(module, name -> new ArrayList<>())
+                            .add(new DexFile(entry.getName(), inputStream.readAllBytes()));
+                }
+            }
+        }
+        return dexFiles;
+    }
+
+    private static Map<String, List<DexFile>> readApkSetDexFiles(String filePath) throws IOException {
+        Map<String, List<DexFile>> splitDexFiles = new LinkedHashMap<>();
+        Map<String, List<DexFile>> standaloneDexFiles = new LinkedHashMap<>();
+        try (ZipFile zipFile = new ZipFile(filePath)) {
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (!name.endsWith(Ext.APK)) {
+                    continue;
+                }
+                String stem = name.substring(name.lastIndexOf('/') + 1, name.length() - Ext.APK.length());
+                Map<String, List<DexFile>> dexFiles;
+                String module;
+                if (name.startsWith(SPLITS_DIRECTORY)) {
+                    int separator = stem.lastIndexOf(SPLIT_SEPARATOR);
+                    dexFiles = splitDexFiles;
+                    module = separator < 0 ? stem : stem.substring(0, separator);
+                } else {
+                    dexFiles = standaloneDexFiles;
+                    module = stem;
+                }
+                try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                    readApkDexFiles(inputStream.readAllBytes(), dexFiles.computeIfAbsent(module, key -> new ArrayList<>()));
+                }
+            }
+        }
+        return splitDexFiles.isEmpty() ? standaloneDexFiles : splitDexFiles;
+    }
+
+    private static void readApkDexFiles(byte[] apk, List<DexFile> dexFiles) throws IOException {
+        try (ZipInputStream inputStream = new ZipInputStream(new ByteArrayInputStream(apk))) {
+            for (ZipEntry entry = inputStream.getNextEntry(); entry != null; entry = inputStream.getNextEntry()) {
+                if (isDexFile(entry.getName())) {
+                    dexFiles.add(new DexFile(entry.getName(), inputStream.readAllBytes()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the module of the given bundle entry if it is a dex file, or null.
+     */
+    private static String bundleModuleOf(String entryName) {
+        int directory = entryName.indexOf(BUNDLE_DEX_DIRECTORY);
+        if (directory <= 0 || entryName.indexOf('/') != directory) {
+            return null;
+        }
+        String fileName = entryName.substring(directory + BUNDLE_DEX_DIRECTORY.length());
+        return isDexFile(fileName) ? entryName.substring(0, directory) : null;
+    }
+
+    private static boolean isDexFile(String fileName) {
+        return fileName.startsWith(DEX_PREFIX) && fileName.endsWith(DEX_SUFFIX) && fileName.indexOf('/') < 0;
+    }
+
+    /**
+     * Returns the bytes of the given dex files by number, keeping the order of the files with the same number.
+     */
+    private static List<byte[]> sorted(List<DexFile> dexFiles) {
+        dexFiles.sort(Comparator.comparingInt(dexFile -> dexFile.number));
+        List<byte[]> bytes = new ArrayList<>(dexFiles.size());
+        for (DexFile dexFile : dexFiles) {
+            bytes.add(dexFile.bytes);
+        }
+        return bytes;
+    }
+
+    private static final class DexFile {
+        /** 1 for classes.dex, n for classes{n}.dex, and after them the files not numbered that way. */
+        final int number;
+        final byte[] bytes;
+
+        DexFile(String entryName, byte[] bytes) {
+            this.number = numberOf(entryName.substring(entryName.lastIndexOf('/') + 1));
+            this.bytes = bytes;
+        }
+
+        private static int numberOf(String fileName) {
+            String number = fileName.substring(DEX_PREFIX.length(), fileName.length() - DEX_SUFFIX.length());
+            if (number.isEmpty()) {
+                return 1;
+            }
+            try {
+                return Integer.parseInt(number);
+            } catch (NumberFormatException e) {
+                return Integer.MAX_VALUE;
+            }
+        }
+    }
+}
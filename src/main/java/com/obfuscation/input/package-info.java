@@ -0,0 +1,4 @@
+/**
+ * Provides the inputs besides APK files, whose classes are read into the same class nodes as dex classes.
+ */
+package com.obfuscation.input;
@@ -0,0 +1,306 @@
+package com.obfuscation.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the metrics of a run: how long each phase took, how many bytes it
+ * allocated, how many items were processed, and the peak heap usage.
+ * <p>
+ * A phase is timed by opening it in a try-with-resources block:
+ * </p>
+ * <pre>
+ * try (MetricsRegistry.Phase phase = metrics.phase("dex_accept")) {
+ *     reader.accept(fileNode);
+ * }
+ * </pre>
+ * <p>
+ * A phase can be entered any number of times, from any thread; its calls,
+ * nanoseconds and allocated bytes add up. Allocated bytes are measured on the
+ * thread that opened the phase, so work the phase hands over to other threads
+ * isn't counted. They are only available on JVMs that support
+ * {@code com.sun.management.ThreadMXBean}.
+ * </p>
+ * <p>
+ * The peak heap usage is the sum of the peak usages of the heap memory pools
+ * since the registry was created. The pools may peak at different times, so
+ * it is an upper bound. The pools belong to the whole JVM, so the peak is
+ * only the one of a run when the run has the JVM to itself. A registry of a
+ * process that serves several runs, see {@link #forSharedProcess()}, leaves
+ * the pools alone and reports their peak as the one of the process.
+ * </p>
+ */
+public class MetricsRegistry {
+    private static final String PROMETHEUS_PREFIX = "prokeepparser_";
+    private static final String PROMETHEUS_SUFFIX = ".prom";
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private static final MetricsRegistry DISABLED = new MetricsRegistry(false, false);
+    private static final Phase NO_PHASE = new Phase(null, null, 0, 0);
+
+    private final boolean enabled;
+    private final boolean processWidePeak;
+    private final long startNanos;
+    private final com.sun.management.ThreadMXBean allocationBean;
+    private final Map<String, PhaseStats> phases = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a registry for a run that has the JVM to itself, and resets the
+     * peak usage of the heap memory pools.
+     */
+    public MetricsRegistry() {
+        this(true, false);
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private MetricsRegistry(boolean enabled, boolean processWidePeak) {
+        this.enabled = enabled;
+        this.processWidePeak = processWidePeak;
+        this.startNanos = System.nanoTime();
+        this.allocationBean = enabled ? allocationBean() : null;
+    }
+
+    /**
+     * Returns a registry for one of the concurrent runs of a long-lived
+     * process, like a request of the daemon. It doesn't reset the peak usage
+     * of the heap memory pools, which would wipe the peaks of the other runs,
+     * and writes it as {@code processPeakHeapBytes}: the peak of the process
+     * since it started, with everything else it holds.
+     */
+    public static MetricsRegistry forSharedProcess() {
+        return new MetricsRegistry(true, true);
+    }
+
+    /**
+     * Returns a registry that records nothing, for runs without metrics.
+     */
+    public static MetricsRegistry disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Opens the given phase. The phase is recorded when it is closed.
+     */
+    public Phase phase(String name) {
+        if (!enabled) {
+            return NO_PHASE;
+        }
+        return new Phase(
+                this,
+                phases.computeIfAbsent(name, k -> new PhaseStats()),
+                allocatedBytes(),
+                System.nanoTime()
+        );
+    }
+
+    /**
+     * Adds one to the given counter.
+     */
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    /**
+     * Adds the given amount to the given counter.
+     */
+    public void add(String name, long delta) {
+        if (enabled) {
+            counters.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+        }
+    }
+
+    /**
+     * Returns the value of the given counter.
+     */
+    public long counter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Returns the total nanoseconds spent in the given phase.
+     */
+    public long phaseNanos(String name) {
+        PhaseStats stats = phases.get(name);
+        return stats == null ? 0 : stats.nanos.sum();
+    }
+
+    /**
+     * Returns the peak heap usage in bytes since the registry was created, or
+     * since the process started for a registry of {@link #forSharedProcess()}.
+     */
+    public long peakHeapBytes() {
+        long bytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                bytes += pool.getPeakUsage().getUsed();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the metrics to the given file, in the Prometheus text format if
+     * its name ends with ".prom" and as JSON otherwise.
+     */
+    public void write(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            if (file.getFileName().toString().endsWith(PROMETHEUS_SUFFIX)) {
+                writePrometheus(writer);
+            } else {
+                writeJson(writer);
+            }
+        }
+    }
+
+    /**
+     * Writes the metrics as a JSON object:
+     * <pre>
+     * {
+     *   "elapsedNanos": 812000000,
+     *   "peakHeapBytes": 104857600,
+     *   "phases": { "dex_accept": { "calls": 2, "nanos": 512000000, "allocatedBytes": 73400320 } },
+     *   "counters": { "classes": 4200 }
+     * }
+     * </pre>
+     * Phases and counters are sorted by name. The peak of a registry of
+     * {@link #forSharedProcess()} is written as {@code processPeakHeapBytes}.
+     */
+    public void writeJson(Writer writer) throws IOException {
+        writer.write("{\n");
+        writer.write("  \"elapsedNanos\": " + (System.nanoTime() - startNanos) + ",\n");
+        writer.write("  \"" + (processWidePeak ? "processPeakHeapBytes" : "peakHeapBytes") + "\": "
+                + peakHeapBytes() + ",\n");
+        writer.write("  \"phases\": {");
+        String separator = "\n";
+        for (String name : sorted(phases.keySet().toArray(new String[0]))) {
+            PhaseStats stats = phases.get(name);
+            writer.write(separator + "    \"" + name + "\": { \"calls\": " + stats.calls.sum()
+                    + ", \"nanos\": " + stats.nanos.sum()
+                    + ", \"allocatedBytes\": " + stats.allocatedBytes.sum() + " }");
+            separator = ",\n";
+        }
+        writer.write(phases.isEmpty() ? "},\n" : "\n  },\n");
+        writer.write("  \"counters\": {");
+        separator = "\n";
+        for (String name : sorted(counters.keySet().toArray(new String[0]))) {
+            writer.write(separator + "    \"" + name + "\": " + counters.get(name).sum());
+            separator = ",\n";
+        }
+        writer.write(counters.isEmpty() ? "}\n" : "\n  }\n");
+        writer.write("}\n");
+        writer.flush();
+    }
+
+    /**
+     * Writes the metrics in the Prometheus text exposition format. Phase
+     * durations are exported in seconds, as is customary there. The peak of a
+     * registry of {@link #forSharedProcess()} is exported as
+     * {@code process_peak_heap_bytes}.
+     */
+    public void writePrometheus(Writer writer) throws IOException {
+        String[] phaseNames = sorted(phases.keySet().toArray(new String[0]));
+
+        writeType(writer, "elapsed_seconds", "gauge");
+        writer.write(PROMETHEUS_PREFIX + "elapsed_seconds " + (System.nanoTime() - startNanos) / NANOS_PER_SECOND + "\n");
+        String peakName = processWidePeak ? "process_peak_heap_bytes" : "peak_heap_bytes";
+        writeType(writer, peakName, "gauge");
+        writer.write(PROMETHEUS_PREFIX + peakName + " " + peakHeapBytes() + "\n");
+
+        writeType(writer, "phase_calls_total", "counter");
+        for (String name : phaseNames) {
+            writePhaseSample(writer, "phase_calls_total", name, Long.toString(phases.get(name).calls.sum()));
+        }
+        writeType(writer, "phase_seconds_total", "counter");
+        for (String name : phaseNames) {
+            writePhaseSample(writer, "phase_seconds_total", name, Double.toString(phases.get(name).nanos.sum() / NANOS_PER_SECOND));
+        }
+        writeType(writer, "phase_allocated_bytes_total", "counter");
+        for (String name : phaseNames) {
+            writePhaseSample(writer, "phase_allocated_bytes_total", name, Long.toString(phases.get(name).allocatedBytes.sum()));
+        }
+
+        for (String name : sorted(counters.keySet().toArray(new String[0]))) {
+            writeType(writer, name + "_total", "counter");
+            writer.write(PROMETHEUS_PREFIX + name + "_total " + counters.get(name).sum() + "\n");
+        }
+        writer.flush();
+    }
+
+    private static void writeType(Writer writer, String metric, String type) throws IOException {
+        writer.write("# TYPE " + PROMETHEUS_PREFIX + metric + " " + type + "\n");
+    }
+
+    private static void writePhaseSample(Writer writer, String metric, String phase, String value) throws IOException {
+        writer.write(PROMETHEUS_PREFIX + metric + "{phase=\"" + phase + "\"} " + value + "\n");
+    }
+
+    private static String[] sorted(String[] names) {
+        Arrays.sort(names);
+        return names;
+    }
+
+    private long allocatedBytes() {
+        return allocationBean == null ? 0 : allocationBean.getCurrentThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+            if (allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled()) {
+                return allocationBean;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * An open phase, recorded when it is closed.
+     */
+    public static final class Phase implements AutoCloseable {
+        private final MetricsRegistry registry;
+        private final PhaseStats stats;
+        private final long startAllocatedBytes;
+        private final long startNanos;
+
+        private Phase(MetricsRegistry registry, PhaseStats stats, long startAllocatedBytes, long startNanos) {
+            this.registry = registry;
+            this.stats = stats;
+            this.startAllocatedBytes = startAllocatedBytes;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public void close() {
+            if (stats == null) {
+                return;
+            }
+            stats.nanos.add(System.nanoTime() - startNanos);
+            stats.calls.increment();
+            stats.allocatedBytes.add(registry.allocatedBytes() - startAllocatedBytes);
+        }
+    }
+
+    private static class PhaseStats {
+        final LongAdder calls = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder allocatedBytes = new LongAdder();
+    }
+}
@@ -0,0 +1,143 @@
+package com.obfuscation.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Records what each keep rule of a configuration cost while it was matched:
+ * the wall time of its keep and keep members stages, how many candidate
+ * classes they scanned, which are the classes whose name matched the pattern
+ * of the rule, how many of them matched, and how many scope entries the rule
+ * produced.
+ * <p>
+ * Rules are identified by their index in the evaluated configuration, and the
+ * report links every rule back to its location in its configuration file.
+ * </p>
+ */
+public class RuleProfile {
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final String REPORT_HEADER_FORMAT = "%4s  %10s  %6s  %10s  %8s  %8s  %s%n";
+    private static final String REPORT_LINE_FORMAT   = "%4d  %10.3f  %5.1f%%  %10d  %8d  %8d  %s%n";
+
+    private final String[] ruleLocations;
+    private final long[] keepNanos;
+    private final long[] keepMembersNanos;
+    private final long[] candidates;
+    private final long[] matches;
+    private final long[] entries;
+
+    /**
+     * Creates an empty profile for the given rules.
+     *
+     * @param ruleLocations the location of every rule, indexed by rule id. A
+     *                      location may be null if it is unknown.
+     */
+    public RuleProfile(List<String> ruleLocations) {
+        this.ruleLocations = ruleLocations.toArray(new String[0]);
+        int ruleCount = this.ruleLocations.length;
+        keepNanos = new long[ruleCount];
+        keepMembersNanos = new long[ruleCount];
+        candidates = new long[ruleCount];
+        matches = new long[ruleCount];
+        entries = new long[ruleCount];
+    }
+
+    /**
+     * Records the keep stage of the given rule.
+     *
+     * @param nanos      the wall time of the stage.
+     * @param candidates the number of classes the stage scanned.
+     * @param matches    the number of classes that matched.
+     */
+    public void recordKeep(int ruleId, long nanos, long candidates, long matches) {
+        keepNanos[ruleId] += nanos;
+        this.candidates[ruleId] += candidates;
+        this.matches[ruleId] += matches;
+    }
+
+    /**
+     * Records the keep members stage of the given rule.
+     *
+     * @param nanos      the wall time of the stage.
+     * @param candidates the number of classes the stage scanned.
+     * @param matches    the number of classes that matched.
+     */
+    public void recordKeepMembers(int ruleId, long nanos, long candidates, long matches) {
+        keepMembersNanos[ruleId] += nanos;
+        this.candidates[ruleId] += candidates;
+        this.matches[ruleId] += matches;
+    }
+
+    /**
+     * Records the number of scope entries the given rule produced.
+     */
+    public void recordEntries(int ruleId, long entries) {
+        this.entries[ruleId] += entries;
+    }
+
+    /**
+     * Returns the number of rules.
+     */
+    public int ruleCount() {
+        return ruleLocations.length;
+    }
+
+    /**
+     * Returns the total wall time of both stages of the given rule.
+     */
+    public long nanos(int ruleId) {
+        return keepNanos[ruleId] + keepMembersNanos[ruleId];
+    }
+
+    /**
+     * Returns the ids of the rules, from the most to the least expensive.
+     */
+    public int[] ranking() {
+        return Arrays.stream(ruleIds())
+                .boxed()
+                .sorted(Comparator.comparingLong((Integer ruleId) -> nanos(ruleId)).reversed()
+                        .thenComparingInt(ruleId -> ruleId))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    /**
+     * Writes the rules ranked from the most to the least expensive, with
+     * their share of the total matching time:
+     * <pre>
+     * rank     time ms   share  candidates   matched      kept  rule
+     *    1     412.077   83.0%       30000       120       360  #3 '-keepclassmembers' in line 4 of file 'proguard-rules.pro'
+     * </pre>
+     */
+    public void writeReport(Writer writer) throws IOException {
+        long totalNanos = 0;
+        for (int ruleId : ruleIds()) {
+            totalNanos += nanos(ruleId);
+        }
+
+        writer.write(String.format(Locale.ROOT, REPORT_HEADER_FORMAT, "rank", "time ms", "share", "candidates", "matched", "kept", "rule"));
+        int rank = 1;
+        for (int ruleId : ranking()) {
+            String location = ruleLocations[ruleId];
+            writer.write(String.format(Locale.ROOT, REPORT_LINE_FORMAT,
+                    rank++,
+                    nanos(ruleId) / NANOS_PER_MILLI,
+                    totalNanos == 0 ? 0.0 : 100.0 * nanos(ruleId) / totalNanos,
+                    candidates[ruleId],
+                    matches[ruleId],
+                    entries[ruleId],
+                    "#" + ruleId + " " + (location == null ? "unknown" : location.replace('\n', ' '))));
+        }
+        writer.flush();
+    }
+
+    private int[] ruleIds() {
+        int[] ruleIds = new int[ruleLocations.length];
+        Arrays.setAll(ruleIds, ruleId -> ruleId);
+        return ruleIds;
+    }
+}
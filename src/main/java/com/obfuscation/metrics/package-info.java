@@ -0,0 +1,4 @@
+/**
+ * Provides the metrics of a run: phase timers, counters, allocations and peak heap usage.
+ */
+package com.obfuscation.metrics;
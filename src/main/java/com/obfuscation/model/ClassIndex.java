@@ -0,0 +1,94 @@
+package com.obfuscation.model;
+
+import com.googlecode.d2j.node.DexClassNode;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * An immutable index of the classes of an APK, keyed by normalized class name
+ * ("com/foo/Bar").
+ * <p>
+ * Implementations are safe for concurrent use, so one index can be shared by
+ * any number of configurations evaluated in parallel. The returned class nodes
+ * must not be modified.
+ * </p>
+ */
+public interface ClassIndex {
+
+    /**
+     * Returns the class node of the given normalized class name, or null.
+     */
+    DexClassNode get(String className);
+
+    /**
+     * Returns whether the given normalized class name is in this index.
+     */
+    boolean contains(String className);
+
+    /**
+     * Returns the number of classes in this index.
+     */
+    int size();
+
+    /**
+     * Returns the unmodifiable set of normalized class names in this index.
+     */
+    Set<String> classNames();
+
+    /**
+     * Returns the name of the module that defines the given class, for the
+     * classes of an app bundle or APK set, or null.
+     */
+    default String moduleOf(String className) {
+        return null;
+    }
+
+    /**
+     * Performs the given action for every class of this index.
+     */
+    void forEach(BiConsumer<? super String, ? super DexClassNode> action);
+
+    /**
+     * Performs the given action for every class of this index whose
+     * normalized name passes the given filter. Implementations that decode
+     * class nodes on demand don't decode the classes that are filtered out.
+     *
+     * @param members whether the action reads the methods and fields of the
+     *                class nodes. If not, they may be left null.
+     */
+    default void forEach(
+            Predicate<? super String> classNameFilter,
+            boolean members,
+            BiConsumer<? super String, ? super DexClassNode> action
+    ) {
+        forEach((className, classNode) -> {
+            if (classNameFilter.test(className)) {
+                action.accept(className, classNode);
+            }
+        });
+    }
+
+    /**
+     * Returns an index over a copy of the given map, so later changes to the map
+     * don't affect the index.
+     *
+     * @param classPath class nodes keyed by normalized class name.
+     */
+    static ClassIndex of(Map<String, DexClassNode> classPath) {
+        return new MapClassIndex(classPath, null);
+    }
+
+    /**
+     * Returns an index over copies of the given maps, which also answers
+     * {@link #moduleOf(String)}.
+     *
+     * @param classPath    class nodes keyed by normalized class name.
+     * @param classModules module names keyed by normalized class name, or null.
+     */
+    static ClassIndex of(Map<String, DexClassNode> classPath, Map<String, String> classModules) {
+        return new MapClassIndex(classPath, classModules);
+    }
+}
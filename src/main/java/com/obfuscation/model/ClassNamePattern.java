@@ -0,0 +1,118 @@
+package com.obfuscation.model;
+
+import com.googlecode.d2j.util.Mutf8;
+
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.util.function.Predicate;
+
+/**
+ * A class name pattern in internal form, with the wildcards of ProGuard:
+ * {@code ?} matches any single character, {@code *} any part of a name, both
+ * without the package separator '/', and {@code **} any part of a name
+ * including separators.
+ * <p>
+ * The pattern is encoded to modified UTF-8 once, so the names of a string
+ * pool, like the one of an {@link OffHeapClassIndex} or of a dex file, can be
+ * tested in place with {@link #test(ByteBuffer, int)}: the names that don't
+ * match are never decoded. {@link ClassIndex#forEach(Predicate, boolean, java.util.function.BiConsumer)}
+ * is given a pattern wherever a name filter can be one, and indexes that
+ * store their names encoded test them that way.
+ * </p>
+ */
+public final class ClassNamePattern implements Predicate<String> {
+    private static final char PACKAGE_SEPARATOR = '/';
+    private static final char ANY_CHARACTER = '?';
+    private static final char ANY_PART = '*';
+
+    private final String pattern;
+    private final byte[] mutf8;
+
+    public ClassNamePattern(String pattern) {
+        this.pattern = pattern;
+        try {
+            this.mutf8 = Mutf8.encode(pattern);
+        } catch (UTFDataFormatException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Returns whether the given string has any of the wildcards of a pattern.
+     */
+    public static boolean hasWildcards(String string) {
+        return string.indexOf(ANY_CHARACTER) >= 0 || string.indexOf(ANY_PART) >= 0;
+    }
+
+    /**
+     * Returns the pattern of the type descriptors of the classes this pattern
+     * matches: "com/foo/*" becomes "Lcom/foo/*;".
+     */
+    public ClassNamePattern descriptorPattern() {
+        return new ClassNamePattern("L" + pattern + ";");
+    }
+
+    public String pattern() {
+        return pattern;
+    }
+
+    /**
+     * Returns a copy of the modified UTF-8 bytes of this pattern, for the
+     * string pools that test their strings themselves, like
+     * {@link com.googlecode.d2j.reader.DexFileReader#stringMatches(int, byte[])}.
+     */
+    public byte[] toMutf8() {
+        return mutf8.clone();
+    }
+
+    /**
+     * Returns whether the given name matches this pattern.
+     */
+    @Override
+    public boolean test(String className) {
+        return matches(className, 0, 0);
+    }
+
+    /**
+     * Returns whether the zero-terminated modified UTF-8 name at the given
+     * offset of the given buffer matches this pattern, without decoding it.
+     */
+    public boolean test(ByteBuffer buffer, int offset) {
+        return Mutf8.matches(buffer, offset, mutf8);
+    }
+
+    private boolean matches(String className, int offset, int index) {
+        while (index < pattern.length()) {
+            char p = pattern.charAt(index);
+            if (p == ANY_PART) {
+                boolean separators = index + 1 < pattern.length() && pattern.charAt(index + 1) == ANY_PART;
+                index += separators ? 2 : 1;
+                while (true) {
+                    if (matches(className, offset, index)) {
+                        return true;
+                    }
+                    if (offset == className.length() ||
+                        (!separators && className.charAt(offset) == PACKAGE_SEPARATOR)) {
+                        return false;
+                    }
+                    offset++;
+                }
+            }
+            if (offset == className.length()) {
+                return false;
+            }
+            char c = className.charAt(offset);
+            if (p == ANY_CHARACTER ? c == PACKAGE_SEPARATOR : c != p) {
+                return false;
+            }
+            offset++;
+            index++;
+        }
+        return offset == className.length();
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
@@ -0,0 +1,352 @@
+package com.obfuscation.model;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The access rules of a {@link ConsistencyScope}: for each class id of a
+ * {@link ScopeSymbols}, a small sorted array of access flags.
+ * <p>
+ * The sets returned by {@link #get(Object)} and {@link #computeIfAbsent} are
+ * views of these arrays, so flags added to them are stored without boxing.
+ * Sets passed to {@link #put} are copied.
+ * </p>
+ */
+final class CompactAccessMap extends AbstractMap<String, Set<Integer>> implements Serializable {
+    private static final int[] NO_FLAGS = new int[0];
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final ScopeSymbols symbols;
+    private int[] classIds = new int[INITIAL_CAPACITY];
+    private int[][] flags = new int[INITIAL_CAPACITY][];
+    private int size;
+    /** The index + 1 of the entry of each slot, 0 for an empty slot. */
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+
+    CompactAccessMap(ScopeSymbols symbols) {
+        this.symbols = symbols;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Set<Integer> get(Object key) {
+        int index = indexOf(key);
+        return index < 0 ? null : new AccessSet(classIds[index]);
+    }
+
+    @Override
+    public Set<Integer> put(String key, Set<Integer> value) {
+        int classId = symbols.intern(key);
+        int index = indexOf(classId);
+        Set<Integer> previous = null;
+        if (index < 0) {
+            index = addEntry(classId);
+        } else {
+            previous = copyOf(flags[index]);
+        }
+        flags[index] = sortedArrayOf(value);
+        return previous;
+    }
+
+    @Override
+    public Set<Integer> computeIfAbsent(String key, Function<? super String, ? extends Set<Integer>> mappingFunction) {
+        int classId = symbols.intern(key);
+        if (indexOf(classId) < 0) {
+            Set<Integer> value = mappingFunction.apply(key);
+            if (value == null) {
+                return null;
+            }
+            int index = addEntry(classId);
+            flags[index] = sortedArrayOf(value);
+        }
+        return new AccessSet(classId);
+    }
+
+    @Override
+    public Set<Integer> remove(Object key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        Set<Integer> previous = copyOf(flags[index]);
+        size--;
+        classIds[index] = classIds[size];
+        flags[index] = flags[size];
+        flags[size] = null;
+        rehash(table.length);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(flags, 0, size, null);
+        Arrays.fill(table, 0);
+        size = 0;
+    }
+
+    @Override
+    public Set<Entry<String, Set<Integer>>> entrySet() {
+        return new AbstractSet<Entry<String, Set<Integer>>>() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<Entry<String, Set<Integer>>> iterator() {
+                return new Iterator<Entry<String, Set<Integer>>>() {
+                    private int index;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < size;
+                    }
+
+                    @Override
+                    public Entry<String, Set<Integer>> next() {
+                        if (index >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        int classId = classIds[index++];
+                        return new SimpleImmutableEntry<>(symbols.get(classId), new AccessSet(classId));
+                    }
+                };
+            }
+        };
+    }
+
+    ScopeSymbols symbols() {
+        return symbols;
+    }
+
+    /**
+     * Returns the class id of the entry at the given index, from 0 to
+     * {@link #size()}.
+     */
+    int classIdAt(int index) {
+        return classIds[index];
+    }
+
+    /**
+     * Returns the sorted flags of the entry at the given index. The array must
+     * not be modified.
+     */
+    int[] flagsAt(int index) {
+        return flags[index];
+    }
+
+    /**
+     * Adds the given sorted flags to the given class id of the same symbols.
+     */
+    void addAll(int classId, int[] added) {
+        int index = indexOf(classId);
+        if (index < 0) {
+            index = addEntry(classId);
+        }
+        int[] current = flags[index];
+        if (current.length == 0) {
+            flags[index] = added;
+            return;
+        }
+        int[] merged = new int[current.length + added.length];
+        int length = 0;
+        int i = 0;
+        int j = 0;
+        while (i < current.length || j < added.length) {
+            int value = j == added.length || (i < current.length && current[i] <= added[j]) ? current[i++] : added[j++];
+            if (length == 0 || merged[length - 1] != value) {
+                merged[length++] = value;
+            }
+        }
+        flags[index] = length == current.length ? current : Arrays.copyOf(merged, length);
+    }
+
+    private int indexOf(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        int classId = symbols.find((String) key);
+        return classId < 0 ? -1 : indexOf(classId);
+    }
+
+    private int indexOf(int classId) {
+        int mask = table.length - 1;
+        for (int slot = ScopeSymbols.mix(classId) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if (classIds[table[slot] - 1] == classId) {
+                return table[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    private int addEntry(int classId) {
+        if (size == classIds.length) {
+            classIds = Arrays.copyOf(classIds, size * 2);
+            flags = Arrays.copyOf(flags, size * 2);
+        }
+        int index = size++;
+        classIds[index] = classId;
+        flags[index] = NO_FLAGS;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        } else {
+            insert(table, index);
+        }
+        return index;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        for (int index = 0; index < size; index++) {
+            insert(table, index);
+        }
+    }
+
+    private void insert(int[] table, int index) {
+        int mask = table.length - 1;
+        int slot = ScopeSymbols.mix(classIds[index]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+    }
+
+    private static int[] sortedArrayOf(Collection<Integer> values) {
+        if (values.isEmpty()) {
+            return NO_FLAGS;
+        }
+        int[] array = new int[values.size()];
+        int length = 0;
+        for (int value : values) {
+            array[length++] = value;
+        }
+        Arrays.sort(array);
+        int distinct = 0;
+        for (int index = 0; index < length; index++) {
+            if (distinct == 0 || array[distinct - 1] != array[index]) {
+                array[distinct++] = array[index];
+            }
+        }
+        return distinct == length ? array : Arrays.copyOf(array, distinct);
+    }
+
+    private static Set<Integer> copyOf(int[] values) {
+        Set<Integer> copy = new HashSet<>();
+        for (int value : values) {
+            copy.add(value);
+        }
+        return copy;
+    }
+
+    /**
+     * The flags of one class. The array is replaced rather than modified, so
+     * an iterator keeps seeing the flags it started with.
+     */
+    private final class AccessSet extends AbstractSet<Integer> {
+        private final int classId;
+
+        AccessSet(int classId) {
+            this.classId = classId;
+        }
+
+        private int[] flags() {
+            int index = indexOf(classId);
+            return index < 0 ? NO_FLAGS : flags[index];
+        }
+
+        @Override
+        public int size() {
+            return flags().length;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Integer && Arrays.binarySearch(flags(), (Integer) o) >= 0;
+        }
+
+        @Override
+        public boolean add(Integer flag) {
+            int index = indexOf(classId);
+            if (index < 0) {
+                index = addEntry(classId);
+            }
+            int[] current = flags[index];
+            int position = Arrays.binarySearch(current, flag);
+            if (position >= 0) {
+                return false;
+            }
+            position = -position - 1;
+            int[] added = new int[current.length + 1];
+            System.arraycopy(current, 0, added, 0, position);
+            added[position] = flag;
+            System.arraycopy(current, position, added, position + 1, current.length - position);
+            flags[index] = added;
+            return true;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            int index = indexOf(classId);
+            if (index < 0 || !(o instanceof Integer)) {
+                return false;
+            }
+            int[] current = flags[index];
+            int position = Arrays.binarySearch(current, (Integer) o);
+            if (position < 0) {
+                return false;
+            }
+            int[] removed = new int[current.length - 1];
+            System.arraycopy(current, 0, removed, 0, position);
+            System.arraycopy(current, position + 1, removed, position, removed.length - position);
+            flags[index] = removed.length == 0 ? NO_FLAGS : removed;
+            return true;
+        }
+
+        @Override
+        public void clear() {
+            int index = indexOf(classId);
+            if (index >= 0) {
+                flags[index] = NO_FLAGS;
+            }
+        }
+
+        @Override
+        public Iterator<Integer> iterator() {
+            int[] values = flags();
+            return new Iterator<Integer>() {
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return index < values.length;
+                }
+
+                @Override
+                public Integer next() {
+                    if (index >= values.length) {
+                        throw new NoSuchElementException();
+                    }
+                    return values[index++];
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package com.obfuscation.model;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.LongConsumer;
+
+/**
+ * A set of strings stored as the ids of a {@link ScopeSymbols} in an open
+ * addressing table of longs.
+ * <p>
+ * A set of class names stores the id of each name. A set of member signatures
+ * splits each signature at its first separator and packs the ids of the owner
+ * and of the rest into one long, so the owners are shared with the class names
+ * of the scope and a name and descriptor is stored once for all its owners.
+ * The strings are only built again when the set is iterated.
+ * </p>
+ */
+final class CompactStringSet extends AbstractSet<String> implements Serializable {
+    static final char NO_SEPARATOR = 0;
+
+    private static final long EMPTY = -1L;
+    private static final int NO_MEMBER = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final ScopeSymbols symbols;
+    private final char separator;
+    private long[] table = emptyTable(INITIAL_CAPACITY);
+    private int shift = 64 - Integer.numberOfTrailingZeros(INITIAL_CAPACITY);
+    private int size;
+
+    /**
+     * Creates a set of class names.
+     */
+    CompactStringSet(ScopeSymbols symbols) {
+        this(symbols, NO_SEPARATOR);
+    }
+
+    /**
+     * Creates a set of member signatures that start with their owner, followed
+     * by the given separator.
+     */
+    CompactStringSet(ScopeSymbols symbols, char separator) {
+        this.symbols = symbols;
+        this.separator = separator;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        long key = find((String) o);
+        return key != EMPTY && table[slotOf(key)] != EMPTY;
+    }
+
+    @Override
+    public boolean add(String string) {
+        if (separator == NO_SEPARATOR) {
+            return addKey(symbols.intern(string));
+        }
+        int index = string.indexOf(separator);
+        return index < 0
+                ? addKey(pack(symbols.intern(string), NO_MEMBER))
+                : add(string.substring(0, index), string.substring(index + 1));
+    }
+
+    /**
+     * Adds the signature of the given member without building it, see
+     * {@link #CompactStringSet(ScopeSymbols, char)}.
+     */
+    boolean add(String owner, String member) {
+        return addKey(pack(symbols.intern(owner), symbols.intern(member)));
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (!(o instanceof String)) {
+            return false;
+        }
+        long key = find((String) o);
+        if (key == EMPTY) {
+            return false;
+        }
+        int slot = slotOf(key);
+        if (table[slot] == EMPTY) {
+            return false;
+        }
+        removeSlot(slot);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        if (size > 0) {
+            table = emptyTable(INITIAL_CAPACITY);
+            shift = 64 - Integer.numberOfTrailingZeros(INITIAL_CAPACITY);
+            size = 0;
+        }
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private final long[] keys = table;
+            private int slot = advance(0);
+
+            private int advance(int from) {
+                while (from < keys.length && keys[from] == EMPTY) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return slot < keys.length;
+            }
+
+            @Override
+            public String next() {
+                if (slot >= keys.length) {
+                    throw new NoSuchElementException();
+                }
+                String string = decode(keys[slot]);
+                slot = advance(slot + 1);
+                return string;
+            }
+        };
+    }
+
+    ScopeSymbols symbols() {
+        return symbols;
+    }
+
+    /**
+     * Performs the given action for the key of every string of this set: the
+     * id of a class name, or the packed ids of the owner and the rest of a
+     * member signature, see {@link #decode(long)}.
+     */
+    void forEachKey(LongConsumer action) {
+        for (long key : table) {
+            if (key != EMPTY) {
+                action.accept(key);
+            }
+        }
+    }
+
+    /**
+     * Returns the key of the given string, or {@link #EMPTY} if one of its
+     * parts was never added to the scope.
+     */
+    long find(String string) {
+        if (separator == NO_SEPARATOR) {
+            int id = symbols.find(string);
+            return id < 0 ? EMPTY : id;
+        }
+        int index = string.indexOf(separator);
+        if (index < 0) {
+            int owner = symbols.find(string);
+            return owner < 0 ? EMPTY : pack(owner, NO_MEMBER);
+        }
+        int owner = symbols.find(string.substring(0, index));
+        int member = owner < 0 ? -1 : symbols.find(string.substring(index + 1));
+        return member < 0 ? EMPTY : pack(owner, member);
+    }
+
+    /**
+     * Returns the string of the given key of this set.
+     */
+    String decode(long key) {
+        if (separator == NO_SEPARATOR) {
+            return symbols.get((int) key);
+        }
+        String owner = symbols.get((int) (key >>> 32));
+        int member = (int) key;
+        return member == NO_MEMBER ? owner : owner + separator + symbols.get(member);
+    }
+
+    /**
+     * Packs the ids of an owner and a member. Ids are never negative, so the
+     * result is never {@link #EMPTY}.
+     */
+    private static long pack(int owner, int member) {
+        return ((long) owner << 32) | (member & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Adds the given key of a set over the same symbols.
+     */
+    boolean addKey(long key) {
+        int slot = slotOf(key);
+        if (table[slot] != EMPTY) {
+            return false;
+        }
+        table[slot] = key;
+        if (++size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the slot that holds the given key, or the empty slot it would
+     * be added to.
+     */
+    private int slotOf(long key) {
+        int mask = table.length - 1;
+        int slot = home(key);
+        while (table[slot] != EMPTY && table[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int home(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    /**
+     * Empties the given slot and moves the following keys of the same probe
+     * sequence back, so lookups never stop at the removed key.
+     */
+    private void removeSlot(int slot) {
+        int mask = table.length - 1;
+        int hole = slot;
+        for (int next = (slot + 1) & mask; table[next] != EMPTY; next = (next + 1) & mask) {
+            if (((next - home(table[next])) & mask) >= ((next - hole) & mask)) {
+                table[hole] = table[next];
+                hole = next;
+            }
+        }
+        table[hole] = EMPTY;
+        size--;
+    }
+
+    private void rehash(int capacity) {
+        long[] keys = table;
+        table = emptyTable(capacity);
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        int mask = capacity - 1;
+        for (long key : keys) {
+            if (key == EMPTY) {
+                continue;
+            }
+            int slot = home(key);
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = key;
+        }
+    }
+
+    private static long[] emptyTable(int capacity) {
+        long[] table = new long[capacity];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+}
@@ -1,12 +1,23 @@
 package com.obfuscation.model;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.HashMap;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
+/**
+ * What an adapted configuration keeps.
+ * <p>
+ * {@link #initialize()} creates collections that store each class name,
+ * member name and descriptor once, as ids: access flags are kept in small
+ * sorted int arrays and member signatures as packed pairs of ids. The strings
+ * are only built again when the collections are iterated, typically when the
+ * scope is written.
+ * </p>
+ */
 public class ConsistencyScope implements Serializable {
     public static final String CLASS_NAME_SECTION_HEADER                    = "[CLASS-NAMES]";
     public static final String KEEP_METHOD_ACCESS_SECTION_HEADER            = "[KEEP-METHOD-ACCESS]";
@@ -14,6 +25,7 @@ public class ConsistencyScope implements Serializable {
     public static final String KEEP_METHOD_SIGNATURE_SECTION_HEADER         = "[KEEP-METHOD-SIGNATURE]";
     public static final String KEEP_FIELD_SIGNATURE_SECTION_HEADER          = "[KEEP-FIELD-SIGNATURE]";
     public static final String ACCESS_SEPARATOR                             = " -> ";
+    public static final char MEMBER_SEPARATOR                               = '.';
 
     public Set<String> classNames;
     public Map<String, Set<Integer>> keepMethodsAccess;
@@ -22,43 +34,106 @@ public class ConsistencyScope implements Serializable {
     public Set<String> fieldSignatures;
 
     public void initialize() {
-        classNames              = new HashSet<>();
-        keepMethodsAccess       = new HashMap<>();
-        keepFieldsAccess        = new HashMap<>();
-        methodSignatures        = new HashSet<>();
-        fieldSignatures         = new HashSet<>();
+        initialize(new ScopeSymbols());
     }
 
+    /**
+     * Initializes this scope with collections that share the symbols of the
+     * given initialized scope, so entries move between the two by id, see
+     * {@link #moveTo(ConsistencyScope)}.
+     */
+    public void initialize(ConsistencyScope scope) {
+        if (!(scope.classNames instanceof CompactStringSet)) {
+            throw new IllegalArgumentException("The scope isn't initialized");
+        }
+        initialize(((CompactStringSet) scope.classNames).symbols());
+    }
+
+    private void initialize(ScopeSymbols symbols) {
+        classNames              = new CompactStringSet(symbols);
+        keepMethodsAccess       = new CompactAccessMap(symbols);
+        keepFieldsAccess        = new CompactAccessMap(symbols);
+        methodSignatures        = new CompactStringSet(symbols, MEMBER_SEPARATOR);
+        fieldSignatures         = new CompactStringSet(symbols, MEMBER_SEPARATOR);
+    }
+
+    /**
+     * Adds every entry of this scope to the given scope and clears this scope.
+     * The entries are moved by id if both scopes share their symbols, and
+     * are built again otherwise.
+     */
+    public void moveTo(ConsistencyScope scope) {
+        moveStrings(classNames, scope.classNames);
+        moveAccess(keepMethodsAccess, scope.keepMethodsAccess);
+        moveAccess(keepFieldsAccess, scope.keepFieldsAccess);
+        moveStrings(methodSignatures, scope.methodSignatures);
+        moveStrings(fieldSignatures, scope.fieldSignatures);
+    }
+
+    private static void moveStrings(Set<String> from, Set<String> to) {
+        if (from instanceof CompactStringSet && to instanceof CompactStringSet &&
+            ((CompactStringSet) from).symbols() == ((CompactStringSet) to).symbols()) {
+            CompactStringSet target = (CompactStringSet) to;
+            ((CompactStringSet) from).forEachKey(target::addKey);
+        } else {
+            to.addAll(from);
+        }
+        from.clear();
+    }
+
+    private static void moveAccess(Map<String, Set<Integer>> from, Map<String, Set<Integer>> to) {
+        if (from instanceof CompactAccessMap && to instanceof CompactAccessMap &&
+            ((CompactAccessMap) from).symbols() == ((CompactAccessMap) to).symbols()) {
+            CompactAccessMap source = (CompactAccessMap) from;
+            CompactAccessMap target = (CompactAccessMap) to;
+            for (int index = 0; index < source.size(); index++) {
+                target.addAll(source.classIdAt(index), source.flagsAt(index));
+            }
+        } else {
+            from.forEach((className, flags) -> to.computeIfAbsent(className, k -> new HashSet<>()).addAll(flags));
+        }
+        from.clear();
+    }
+
+    /**
+     * Adds the signature of a kept method, without building it if the scope
+     * was initialized.
+     *
+     * @param owner             the owner of the method.
+     * @param nameAndDescriptor the name of the method followed by its descriptor.
+     */
+    public void addMethodSignature(String owner, String nameAndDescriptor) {
+        addSignature(methodSignatures, owner, nameAndDescriptor);
+    }
+
+    /**
+     * Adds the signature of a kept field, without building it if the scope was
+     * initialized.
+     */
+    public void addFieldSignature(String owner, String name) {
+        addSignature(fieldSignatures, owner, name);
+    }
+
+    private static void addSignature(Set<String> signatures, String owner, String member) {
+        if (signatures instanceof CompactStringSet) {
+            ((CompactStringSet) signatures).add(owner, member);
+        } else {
+            signatures.add(owner + MEMBER_SEPARATOR + member);
+        }
+    }
+
+    /**
+     * Returns the text format of this scope, with every section sorted.
+     * Prefer {@link ConsistencyScopeWriter} for writing large scopes.
+     */
     @Override
     public String toString() {
-        return CLASS_NAME_SECTION_HEADER
-                + "\n"
-                + String.join("\n", classNames)
-                + "\n"
-                + KEEP_METHOD_ACCESS_SECTION_HEADER
-                + "\n"
-                + keepMethodsAccess.entrySet()
-                .stream()
-                .map(e -> e.getKey() + " -> " + e.getValue()
-                        .stream().map(i -> Integer.toString(i))
-                        .collect(Collectors.joining(","))
-                ).collect(Collectors.joining("\n"))
-                + "\n"
-                + KEEP_FIELD_ACCESS_SECTION_HEADER
-                + "\n"
-                + keepFieldsAccess.entrySet()
-                .stream()
-                .map(e -> e.getKey() + ACCESS_SEPARATOR + e.getValue()
-                        .stream().map(i -> Integer.toString(i))
-                        .collect(Collectors.joining(","))
-                ).collect(Collectors.joining("\n"))
-                + "\n"
-                + KEEP_METHOD_SIGNATURE_SECTION_HEADER
-                + "\n"
-                + String.join("\n", methodSignatures)
-                + "\n"
-                + KEEP_FIELD_SIGNATURE_SECTION_HEADER
-                + "\n"
-                + String.join("\n", fieldSignatures);
+        StringWriter out = new StringWriter();
+        try (ConsistencyScopeWriter writer = new ConsistencyScopeWriter(out)) {
+            writer.write(this);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
     }
 }
@@ -0,0 +1,98 @@
+package com.obfuscation.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+
+/**
+ * Layout of the compact binary encoding of a {@link ConsistencyScope}.
+ * <p>
+ * All integers are big-endian. The file starts with a fixed header of
+ * section offsets, followed by:
+ * </p>
+ * <ul>
+ *     <li>the string table: {@code u4 count}, {@code u4[count + 1]} offsets into
+ *     the string data, then the UTF-8 string data. Strings are sorted by their
+ *     unsigned UTF-8 bytes, so string ids follow the same order.</li>
+ *     <li>the class names: {@code u4 count}, {@code u4[count]} sorted string ids.</li>
+ *     <li>two access tables (methods, fields): {@code u4 count},
+ *     {@code u4[count]} sorted class name string ids, {@code u4[count + 1]} offsets
+ *     into the flag data, then the flag data. Every flag set is a varint
+ *     count followed by the varint deltas of its sorted flags.</li>
+ *     <li>the method signatures: {@code u4 count}, then sorted
+ *     {@code (u4 owner, u4 name, u4 descriptor)} string id triples.</li>
+ *     <li>the field signatures: {@code u4 count}, then sorted
+ *     {@code (u4 owner, u4 name)} string id pairs.</li>
+ * </ul>
+ */
+final class ConsistencyScopeBinaryFormat {
+    static final int MAGIC = 0x504b5342; // "PKSB"
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 4 * 9;
+
+    static final int OFFSET_STRING_TABLE = 8;
+    static final int OFFSET_CLASS_NAMES = 12;
+    static final int OFFSET_METHOD_ACCESS = 16;
+    static final int OFFSET_FIELD_ACCESS = 20;
+    static final int OFFSET_METHOD_SIGNATURES = 24;
+    static final int OFFSET_FIELD_SIGNATURES = 28;
+    static final int OFFSET_FILE_SIZE = 32;
+
+    static final char MEMBER_SEPARATOR = '.';
+    static final char ARGUMENTS_START = '(';
+
+    /**
+     * Orders strings by their unsigned UTF-8 bytes, the order of the string
+     * table.
+     */
+    static final Comparator<String> UTF8_ORDER = (a, b) -> compare(
+            a.getBytes(StandardCharsets.UTF_8),
+            b.getBytes(StandardCharsets.UTF_8)
+    );
+
+    private ConsistencyScopeBinaryFormat() {
+    }
+
+    static int compare(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int index = 0; index < length; index++) {
+            int diff = (a[index] & 0xff) - (b[index] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * Splits a method signature "owner.name(desc)" into its owner, name and
+     * descriptor.
+     */
+    static String[] splitMethodSignature(String signature) {
+        int argumentsIndex = signature.indexOf(ARGUMENTS_START);
+        if (argumentsIndex < 0) {
+            argumentsIndex = signature.length();
+        }
+        int separatorIndex = signature.lastIndexOf(MEMBER_SEPARATOR, argumentsIndex);
+        return new String[]{
+                separatorIndex < 0 ? "" : signature.substring(0, separatorIndex),
+                signature.substring(separatorIndex + 1, argumentsIndex),
+                signature.substring(argumentsIndex)
+        };
+    }
+
+    /**
+     * Splits a field signature "owner.name" into its owner and name.
+     */
+    static String[] splitFieldSignature(String signature) {
+        int separatorIndex = signature.lastIndexOf(MEMBER_SEPARATOR);
+        return new String[]{
+                separatorIndex < 0 ? "" : signature.substring(0, separatorIndex),
+                signature.substring(separatorIndex + 1)
+        };
+    }
+
+    static String joinSignature(String owner, String member) {
+        return owner.isEmpty() ? member : owner + MEMBER_SEPARATOR + member;
+    }
+}
@@ -0,0 +1,191 @@
+package com.obfuscation.model;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static com.obfuscation.model.ConsistencyScopeBinaryFormat.*;
+
+/**
+ * Writes a {@link ConsistencyScope} in the compact binary format described by
+ * {@link ConsistencyScopeBinaryFormat}. Use {@link MappedConsistencyScope} to
+ * read it back.
+ */
+public class ConsistencyScopeBinaryWriter {
+
+    private ConsistencyScopeBinaryWriter() {
+    }
+
+    /**
+     * Writes the given scope to the given file.
+     */
+    public static void write(ConsistencyScope scope, Path path) throws IOException {
+        // Collect and number all strings.
+        SortedSet<String> strings = new TreeSet<>(UTF8_ORDER);
+        strings.addAll(scope.classNames);
+        strings.addAll(scope.keepMethodsAccess.keySet());
+        strings.addAll(scope.keepFieldsAccess.keySet());
+        List<String[]> methods = new ArrayList<>(scope.methodSignatures.size());
+        for (String signature : scope.methodSignatures) {
+            String[] parts = splitMethodSignature(signature);
+            strings.addAll(Arrays.asList(parts));
+            methods.add(parts);
+        }
+        List<String[]> fields = new ArrayList<>(scope.fieldSignatures.size());
+        for (String signature : scope.fieldSignatures) {
+            String[] parts = splitFieldSignature(signature);
+            strings.addAll(Arrays.asList(parts));
+            fields.add(parts);
+        }
+
+        Map<String, Integer> ids = new HashMap<>(strings.size() * 2);
+        for (String string : strings) {
+            ids.put(string, ids.size());
+        }
+
+        byte[] stringTable = stringTable(strings);
+        byte[] classNames = idList(scope.classNames, ids);
+        byte[] methodAccess = accessTable(scope.keepMethodsAccess, ids);
+        byte[] fieldAccess = accessTable(scope.keepFieldsAccess, ids);
+        byte[] methodSignatures = signatureBlock(methods, ids);
+        byte[] fieldSignatures = signatureBlock(fields, ids);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(path), 1 << 16
+        ))) {
+            int offset = HEADER_SIZE;
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(offset);
+            out.writeInt(offset += stringTable.length);
+            out.writeInt(offset += classNames.length);
+            out.writeInt(offset += methodAccess.length);
+            out.writeInt(offset += fieldAccess.length);
+            out.writeInt(offset += methodSignatures.length);
+            out.writeInt(offset + fieldSignatures.length);
+
+            out.write(stringTable);
+            out.write(classNames);
+            out.write(methodAccess);
+            out.write(fieldAccess);
+            out.write(methodSignatures);
+            out.write(fieldSignatures);
+        }
+    }
+
+    private static byte[] stringTable(SortedSet<String> strings) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(table);
+
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeInt(data.size());
+            data.write(string.getBytes(StandardCharsets.UTF_8));
+        }
+        out.writeInt(data.size());
+        data.writeTo(out);
+        return table.toByteArray();
+    }
+
+    private static byte[] idList(Collection<String> names, Map<String, Integer> ids) throws IOException {
+        int[] sorted = sortedIds(names, ids);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 + sorted.length * 4);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(sorted.length);
+        for (int id : sorted) {
+            out.writeInt(id);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] accessTable(
+            Map<String, Set<Integer>> access,
+            Map<String, Integer> ids
+    ) throws IOException {
+        int[] sorted = sortedIds(access.keySet(), ids);
+        String[] names = new String[ids.size()];
+        for (String name : access.keySet()) {
+            names[ids.get(name)] = name;
+        }
+
+        ByteArrayOutputStream flags = new ByteArrayOutputStream();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(sorted.length);
+        for (int id : sorted) {
+            out.writeInt(id);
+        }
+        for (int id : sorted) {
+            out.writeInt(flags.size());
+
+            int[] values = access.get(names[id]).stream()
+                    .mapToInt(Integer::intValue)
+                    .sorted()
+                    .toArray();
+            writeVarint(flags, values.length);
+            int previous = 0;
+            for (int value : values) {
+                writeVarint(flags, value - previous);
+                previous = value;
+            }
+        }
+        out.writeInt(flags.size());
+        flags.writeTo(out);
+        return bytes.toByteArray();
+    }
+
+    private static byte[] signatureBlock(List<String[]> signatures, Map<String, Integer> ids) throws IOException {
+        int width = signatures.isEmpty() ? 0 : signatures.get(0).length;
+        int[][] rows = new int[signatures.size()][];
+        for (int index = 0; index < rows.length; index++) {
+            String[] parts = signatures.get(index);
+            int[] row = new int[width];
+            for (int column = 0; column < width; column++) {
+                row[column] = ids.get(parts[column]);
+            }
+            rows[index] = row;
+        }
+        Arrays.sort(rows, (a, b) -> {
+            for (int column = 0; column < a.length; column++) {
+                int diff = Integer.compare(a[column], b[column]);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return 0;
+        });
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 + rows.length * width * 4);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(rows.length);
+        for (int[] row : rows) {
+            for (int id : row) {
+                out.writeInt(id);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int[] sortedIds(Collection<String> names, Map<String, Integer> ids) {
+        int[] sorted = new int[names.size()];
+        int index = 0;
+        for (String name : names) {
+            sorted[index++] = ids.get(name);
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
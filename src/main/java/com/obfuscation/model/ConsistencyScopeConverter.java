@@ -0,0 +1,36 @@
+package com.obfuscation.model;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Converts consistency scope files between the text format and the compact
+ * binary format.
+ */
+public class ConsistencyScopeConverter {
+
+    private ConsistencyScopeConverter() {
+    }
+
+    /**
+     * Converts a text scope file, optionally gzip-compressed, to the binary format.
+     */
+    public static void textToBinary(Path textFile, Path binaryFile) throws IOException {
+        ConsistencyScopeBinaryWriter.write(ConsistencyScopeReader.read(textFile), binaryFile);
+    }
+
+    /**
+     * Converts a binary scope file to the sorted text format.
+     *
+     * @param compress whether the text file should be gzip-compressed.
+     */
+    public static void binaryToText(Path binaryFile, Path textFile, boolean compress) throws IOException {
+        ConsistencyScope scope;
+        try (MappedConsistencyScope mapped = MappedConsistencyScope.open(binaryFile)) {
+            scope = mapped.toScope();
+        }
+        try (ConsistencyScopeWriter writer = ConsistencyScopeWriter.open(textFile, compress)) {
+            writer.write(scope);
+        }
+    }
+}
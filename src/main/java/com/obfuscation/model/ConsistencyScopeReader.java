@@ -0,0 +1,110 @@
+package com.obfuscation.model;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the text format written by {@link ConsistencyScopeWriter} back into a
+ * {@link ConsistencyScope}. Gzip-compressed files are detected and inflated.
+ */
+public class ConsistencyScopeReader {
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final String ACCESS_DELIMITER = ",";
+
+    private ConsistencyScopeReader() {
+    }
+
+    /**
+     * Reads the given text file.
+     */
+    public static ConsistencyScope read(Path path) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(path), 1 << 16);
+        try {
+            in.mark(2);
+            int magic = in.read() | (in.read() << 8);
+            in.reset();
+            if (magic == GZIP_MAGIC) {
+                in = new GZIPInputStream(in, 1 << 16);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return read(reader);
+        }
+    }
+
+    /**
+     * Reads a scope in text format from the given reader.
+     */
+    public static ConsistencyScope read(BufferedReader reader) throws IOException {
+        ConsistencyScope scope = new ConsistencyScope();
+        scope.initialize();
+
+        String section = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            switch (line) {
+                case ConsistencyScope.CLASS_NAME_SECTION_HEADER:
+                case ConsistencyScope.KEEP_METHOD_ACCESS_SECTION_HEADER:
+                case ConsistencyScope.KEEP_FIELD_ACCESS_SECTION_HEADER:
+                case ConsistencyScope.KEEP_METHOD_SIGNATURE_SECTION_HEADER:
+                case ConsistencyScope.KEEP_FIELD_SIGNATURE_SECTION_HEADER:
+                    section = line;
+                    continue;
+            }
+            if (section == null) {
+                throw new IOException("Expecting a section header instead of '" + line + "'");
+            }
+
+            switch (section) {
+                case ConsistencyScope.CLASS_NAME_SECTION_HEADER:
+                    scope.classNames.add(line);
+                    break;
+                case ConsistencyScope.KEEP_METHOD_ACCESS_SECTION_HEADER:
+                    readAccess(line, scope.keepMethodsAccess);
+                    break;
+                case ConsistencyScope.KEEP_FIELD_ACCESS_SECTION_HEADER:
+                    readAccess(line, scope.keepFieldsAccess);
+                    break;
+                case ConsistencyScope.KEEP_METHOD_SIGNATURE_SECTION_HEADER:
+                    scope.methodSignatures.add(line);
+                    break;
+                case ConsistencyScope.KEEP_FIELD_SIGNATURE_SECTION_HEADER:
+                    scope.fieldSignatures.add(line);
+                    break;
+            }
+        }
+        return scope;
+    }
+
+    private static void readAccess(String line, Map<String, Set<Integer>> target) throws IOException {
+        int separatorIndex = line.lastIndexOf(ConsistencyScope.ACCESS_SEPARATOR);
+        if (separatorIndex < 0) {
+            throw new IOException("Expecting '" + ConsistencyScope.ACCESS_SEPARATOR + "' in '" + line + "'");
+        }
+
+        Set<Integer> flags = target.computeIfAbsent(line.substring(0, separatorIndex), k -> new HashSet<>());
+        String values = line.substring(separatorIndex + ConsistencyScope.ACCESS_SEPARATOR.length());
+        try {
+            for (String value : values.split(ACCESS_DELIMITER)) {
+                if (!value.isEmpty()) {
+                    flags.add(Integer.parseInt(value.trim()));
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Can't parse access flags in '" + line + "'");
+        }
+    }
+}
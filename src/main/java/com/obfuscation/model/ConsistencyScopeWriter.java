@@ -0,0 +1,119 @@
+package com.obfuscation.model;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a {@link ConsistencyScope} in its text format, section by section.
+ * <p>
+ * Entries are streamed straight into a buffered writer instead of being
+ * joined into one string first, and every section is sorted, so the output
+ * is byte-for-byte stable between runs. Only the sorted references of the
+ * section being written are held at any time.
+ * </p>
+ */
+public class ConsistencyScopeWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final char LINE_SEPARATOR = '\n';
+    private static final char ACCESS_DELIMITER = ',';
+
+    private final Writer writer;
+
+    public ConsistencyScopeWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Opens a writer for the given file.
+     *
+     * @param path     the file to write.
+     * @param compress whether the output should be gzip-compressed.
+     */
+    public static ConsistencyScopeWriter open(Path path, boolean compress) throws IOException {
+        OutputStream out = Files.newOutputStream(path);
+        try {
+            if (compress) {
+                out = new GZIPOutputStream(out, BUFFER_SIZE);
+            }
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+        return new ConsistencyScopeWriter(new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8),
+                BUFFER_SIZE
+        ));
+    }
+
+    /**
+     * Writes all sections of the given scope.
+     */
+    public void write(ConsistencyScope scope) throws IOException {
+        writeNames(ConsistencyScope.CLASS_NAME_SECTION_HEADER, scope.classNames);
+        writer.write(LINE_SEPARATOR);
+        writeAccess(ConsistencyScope.KEEP_METHOD_ACCESS_SECTION_HEADER, scope.keepMethodsAccess);
+        writer.write(LINE_SEPARATOR);
+        writeAccess(ConsistencyScope.KEEP_FIELD_ACCESS_SECTION_HEADER, scope.keepFieldsAccess);
+        writer.write(LINE_SEPARATOR);
+        writeNames(ConsistencyScope.KEEP_METHOD_SIGNATURE_SECTION_HEADER, scope.methodSignatures);
+        writer.write(LINE_SEPARATOR);
+        writeNames(ConsistencyScope.KEEP_FIELD_SIGNATURE_SECTION_HEADER, scope.fieldSignatures);
+        writer.flush();
+    }
+
+    private void writeNames(String header, Collection<String> names) throws IOException {
+        writer.write(header);
+        writer.write(LINE_SEPARATOR);
+
+        String[] sorted = sorted(names);
+        for (int index = 0; index < sorted.length; index++) {
+            if (index > 0) {
+                writer.write(LINE_SEPARATOR);
+            }
+            writer.write(sorted[index]);
+        }
+    }
+
+    private void writeAccess(String header, Map<String, Set<Integer>> access) throws IOException {
+        writer.write(header);
+        writer.write(LINE_SEPARATOR);
+
+        String[] classNames = sorted(access.keySet());
+        for (int index = 0; index < classNames.length; index++) {
+            if (index > 0) {
+                writer.write(LINE_SEPARATOR);
+            }
+            writer.write(classNames[index]);
+            writer.write(ConsistencyScope.ACCESS_SEPARATOR);
+
+            int[] flags = access.get(classNames[index]).stream()
+                    .mapToInt(Integer::intValue)
+                    .sorted()
+                    .toArray();
+            for (int flag = 0; flag < flags.length; flag++) {
+                if (flag > 0) {
+                    writer.write(ACCESS_DELIMITER);
+                }
+                writer.write(Integer.toString(flags[flag]));
+            }
+        }
+    }
+
+    private static String[] sorted(Collection<String> names) {
+        String[] sorted = names.toArray(new String[0]);
+        Arrays.parallelSort(sorted);
+        return sorted;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
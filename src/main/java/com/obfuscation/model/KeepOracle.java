@@ -0,0 +1,391 @@
+package com.obfuscation.model;
+
+import java.util.*;
+
+import static com.obfuscation.model.ConsistencyScopeBinaryFormat.splitFieldSignature;
+import static com.obfuscation.model.ConsistencyScopeBinaryFormat.splitMethodSignature;
+
+/**
+ * Answers whether a class, method or field is kept by a {@link ConsistencyScope}.
+ * <p>
+ * The scope is indexed once when the oracle is built:
+ * </p>
+ * <ul>
+ *     <li>The wildcard ('*') access rules are folded into the rules of every
+ *     class, and each class gets the minimal set of required access masks, so
+ *     an access query is a handful of mask tests.</li>
+ *     <li>Member signatures are split into their (owner, name, descriptor) parts
+ *     and stored in open-addressing tables that hash and compare the parts
+ *     directly, so no signature string is built for a query.</li>
+ *     <li>Every table is fronted by a Bloom filter, so the common negative case
+ *     is answered without touching the table.</li>
+ * </ul>
+ * <p>
+ * Owner names are normalized, so "Lcom/foo/Bar;", "com.foo.Bar" and "com/foo/Bar"
+ * all refer to the same class. The oracle is immutable and safe for concurrent
+ * queries.
+ * </p>
+ */
+public class KeepOracle {
+    private static final String PATTERN_WILDCARD = "*";
+    private static final int[] NO_MASKS = new int[0];
+
+    private final NameTable classes;
+    private final BloomFilter keptClassFilter;
+    private final int[] defaultMethodMasks;
+    private final int[] defaultFieldMasks;
+
+    private final MemberTable methods;
+    private final MemberTable fields;
+
+    /**
+     * Builds an oracle over the given scope. The scope is not referenced
+     * afterwards.
+     */
+    public KeepOracle(ConsistencyScope scope) {
+        Map<String, int[]> methodMasks = foldMasks(scope.keepMethodsAccess);
+        Map<String, int[]> fieldMasks = foldMasks(scope.keepFieldsAccess);
+        defaultMethodMasks = methodMasks.getOrDefault(PATTERN_WILDCARD, NO_MASKS);
+        defaultFieldMasks = fieldMasks.getOrDefault(PATTERN_WILDCARD, NO_MASKS);
+
+        Set<String> classNames = new HashSet<>();
+        for (String className : scope.classNames) {
+            classNames.add(normalizeOwner(className));
+        }
+        Set<String> accessClassNames = new HashSet<>(methodMasks.keySet());
+        accessClassNames.addAll(fieldMasks.keySet());
+        accessClassNames.remove(PATTERN_WILDCARD);
+
+        Set<String> allClassNames = new HashSet<>(classNames);
+        allClassNames.addAll(accessClassNames);
+        classes = new NameTable(allClassNames.size());
+        keptClassFilter = new BloomFilter(classNames.size());
+        for (String className : allClassNames) {
+            boolean kept = classNames.contains(className);
+            classes.put(
+                    className,
+                    kept,
+                    minimalMasks(methodMasks.get(className), defaultMethodMasks),
+                    minimalMasks(fieldMasks.get(className), defaultFieldMasks)
+            );
+            if (kept) {
+                keptClassFilter.add(hash(className));
+            }
+        }
+
+        methods = new MemberTable(scope.methodSignatures.size());
+        for (String signature : scope.methodSignatures) {
+            String[] parts = splitMethodSignature(signature);
+            methods.add(normalizeOwner(parts[0]), parts[1], parts[2]);
+        }
+        fields = new MemberTable(scope.fieldSignatures.size());
+        for (String signature : scope.fieldSignatures) {
+            String[] parts = splitFieldSignature(signature);
+            fields.add(normalizeOwner(parts[0]), parts[1], null);
+        }
+    }
+
+    /**
+     * Returns whether the given class name is kept as is.
+     */
+    public boolean isClassKept(String className) {
+        String owner = normalizeOwner(className);
+        int hash = hash(owner);
+        if (!keptClassFilter.mightContain(hash)) {
+            return false;
+        }
+        int slot = classes.find(owner, hash);
+        return slot >= 0 && classes.kept[slot];
+    }
+
+    /**
+     * Returns whether the given method is kept by its signature.
+     */
+    public boolean isMethodKept(String owner, String name, String descriptor) {
+        return methods.contains(normalizeOwner(owner), name, descriptor);
+    }
+
+    /**
+     * Returns whether the given method is kept, either by its signature or by
+     * the access rules of its class.
+     *
+     * @param access the access flags of the method.
+     */
+    public boolean isMethodKept(String owner, String name, String descriptor, int access) {
+        String normalized = normalizeOwner(owner);
+        return matchesAny(methodMasks(normalized), access) ||
+               methods.contains(normalized, name, descriptor);
+    }
+
+    /**
+     * Returns whether the given field is kept by its signature.
+     */
+    public boolean isFieldKept(String owner, String name) {
+        return fields.contains(normalizeOwner(owner), name, null);
+    }
+
+    /**
+     * Returns whether the given field is kept, either by its signature or by
+     * the access rules of its class.
+     *
+     * @param access the access flags of the field.
+     */
+    public boolean isFieldKept(String owner, String name, int access) {
+        String normalized = normalizeOwner(owner);
+        return matchesAny(fieldMasks(normalized), access) ||
+               fields.contains(normalized, name, null);
+    }
+
+    /**
+     * Returns the minimal access masks that keep a method of the given class,
+     * wildcard rules included. A method is kept if its access flags contain
+     * all bits of any of the masks.
+     */
+    public int[] methodMasks(String className) {
+        String owner = normalizeOwner(className);
+        int slot = classes.find(owner, hash(owner));
+        return slot < 0 ? defaultMethodMasks : classes.methodMasks[slot];
+    }
+
+    /**
+     * Returns the minimal access masks that keep a field of the given class,
+     * wildcard rules included.
+     */
+    public int[] fieldMasks(String className) {
+        String owner = normalizeOwner(className);
+        int slot = classes.find(owner, hash(owner));
+        return slot < 0 ? defaultFieldMasks : classes.fieldMasks[slot];
+    }
+
+    private static boolean matchesAny(int[] masks, int access) {
+        for (int mask : masks) {
+            if ((access & mask) == mask) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Brings a class name into the "com/foo/Bar" form. Names that are already
+     * in that form are returned as is.
+     */
+    static String normalizeOwner(String className) {
+        if (className.length() > 1 &&
+            className.charAt(0) == 'L' &&
+            className.charAt(className.length() - 1) == ';'
+        ) {
+            className = className.substring(1, className.length() - 1);
+        }
+        return className.indexOf('.') < 0 ? className : className.replace('.', '/');
+    }
+
+    private static Map<String, int[]> foldMasks(Map<String, Set<Integer>> access) {
+        Map<String, int[]> masks = new HashMap<>();
+        access.forEach((className, flags) -> masks.put(
+                PATTERN_WILDCARD.equals(className) ? className : normalizeOwner(className),
+                minimalMasks(flags.stream().mapToInt(Integer::intValue).toArray(), NO_MASKS)
+        ));
+        return masks;
+    }
+
+    /**
+     * Merges the given masks and drops every mask that contains all bits of
+     * another one, since any access that matches it also matches the other.
+     */
+    private static int[] minimalMasks(int[] masks, int[] defaults) {
+        if (masks == null) {
+            return defaults;
+        }
+        int[] merged = Arrays.copyOf(masks, masks.length + defaults.length);
+        System.arraycopy(defaults, 0, merged, masks.length, defaults.length);
+        Integer[] sorted = Arrays.stream(merged).boxed().toArray(Integer[]::new);
+        Arrays.sort(sorted, Comparator.comparingInt(Integer::bitCount).thenComparingInt(m -> m));
+
+        int[] minimal = new int[sorted.length];
+        int count = 0;
+        next:
+        for (int mask : sorted) {
+            for (int index = 0; index < count; index++) {
+                if ((mask & minimal[index]) == minimal[index]) {
+                    continue next;
+                }
+            }
+            minimal[count++] = mask;
+        }
+        return Arrays.copyOf(minimal, count);
+    }
+
+    private static int hash(String owner) {
+        return mix(owner.hashCode());
+    }
+
+    private static int hash(String owner, String name, String descriptor) {
+        int hash = owner.hashCode();
+        hash = hash * 31 + name.hashCode();
+        hash = hash * 31 + (descriptor == null ? 0 : descriptor.hashCode());
+        return mix(hash);
+    }
+
+    /**
+     * The finalizer of MurmurHash3, which spreads the bits of
+     * {@link String#hashCode()} over the whole integer.
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
+    private static int tableSize(int count) {
+        int size = 16;
+        while (size < count * 2) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * An open-addressing table of class names and their access masks.
+     */
+    private static class NameTable {
+        private final String[] names;
+        private final boolean[] kept;
+        private final int[][] methodMasks;
+        private final int[][] fieldMasks;
+        private final int mask;
+
+        NameTable(int count) {
+            int size = tableSize(count);
+            names = new String[size];
+            kept = new boolean[size];
+            methodMasks = new int[size][];
+            fieldMasks = new int[size][];
+            mask = size - 1;
+        }
+
+        void put(String name, boolean kept, int[] methodMasks, int[] fieldMasks) {
+            int slot = hash(name) & mask;
+            while (names[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            names[slot] = name;
+            this.kept[slot] = kept;
+            this.methodMasks[slot] = methodMasks;
+            this.fieldMasks[slot] = fieldMasks;
+        }
+
+        int find(String name, int hash) {
+            for (int slot = hash & mask; names[slot] != null; slot = (slot + 1) & mask) {
+                if (names[slot].equals(name)) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * An open-addressing set of (owner, name, descriptor) tuples, fronted by a
+     * Bloom filter. Fields have no descriptor.
+     */
+    private static class MemberTable {
+        private final String[] owners;
+        private final String[] names;
+        private final String[] descriptors;
+        private final int[] hashes;
+        private final int mask;
+        private final BloomFilter filter;
+
+        MemberTable(int count) {
+            int size = tableSize(count);
+            owners = new String[size];
+            names = new String[size];
+            descriptors = new String[size];
+            hashes = new int[size];
+            mask = size - 1;
+            filter = new BloomFilter(count);
+        }
+
+        void add(String owner, String name, String descriptor) {
+            int hash = hash(owner, name, descriptor);
+            int slot = hash & mask;
+            while (owners[slot] != null) {
+                if (matches(slot, hash, owner, name, descriptor)) {
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            owners[slot] = owner;
+            names[slot] = name;
+            descriptors[slot] = descriptor;
+            hashes[slot] = hash;
+            filter.add(hash);
+        }
+
+        boolean contains(String owner, String name, String descriptor) {
+            int hash = hash(owner, name, descriptor);
+            if (!filter.mightContain(hash)) {
+                return false;
+            }
+            for (int slot = hash & mask; owners[slot] != null; slot = (slot + 1) & mask) {
+                if (matches(slot, hash, owner, name, descriptor)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean matches(int slot, int hash, String owner, String name, String descriptor) {
+            return hashes[slot] == hash &&
+                   names[slot].equals(name) &&
+                   owners[slot].equals(owner) &&
+                   Objects.equals(descriptors[slot], descriptor);
+        }
+    }
+
+    /**
+     * A Bloom filter over precomputed hashes, with about 10 bits per entry and
+     * 4 probes derived from the hash by double hashing.
+     */
+    private static class BloomFilter {
+        private static final int BITS_PER_ENTRY = 10;
+        private static final int PROBES = 4;
+
+        private final long[] bits;
+        private final int mask;
+
+        BloomFilter(int count) {
+            int size = 64;
+            while (size < count * BITS_PER_ENTRY && size < (1 << 30)) {
+                size <<= 1;
+            }
+            bits = new long[size >>> 6];
+            mask = size - 1;
+        }
+
+        void add(int hash) {
+            int probe = hash;
+            int step = mix(hash) | 1;
+            for (int index = 0; index < PROBES; index++, probe += step) {
+                int bit = probe & mask;
+                bits[bit >>> 6] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(int hash) {
+            int probe = hash;
+            int step = mix(hash) | 1;
+            for (int index = 0; index < PROBES; index++, probe += step) {
+                int bit = probe & mask;
+                if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.obfuscation.model;
+
+import com.googlecode.d2j.node.DexClassNode;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * A {@link ClassIndex} over an unmodifiable copy of a map, and optionally of
+ * the modules of its classes.
+ */
+final class MapClassIndex implements ClassIndex {
+    private final Map<String, DexClassNode> classes;
+    private final Map<String, String> modules;
+
+    MapClassIndex(Map<String, DexClassNode> classPath, Map<String, String> classModules) {
+        this.classes = Collections.unmodifiableMap(new HashMap<>(classPath));
+        this.modules = classModules == null || classModules.isEmpty()
+                ? Collections.emptyMap()
+                : Collections.unmodifiableMap(new HashMap<>(classModules));
+    }
+
+    @Override
+    public DexClassNode get(String className) {
+        return classes.get(className);
+    }
+
+    @Override
+    public boolean contains(String className) {
+        return classes.containsKey(className);
+    }
+
+    @Override
+    public int size() {
+        return classes.size();
+    }
+
+    @Override
+    public Set<String> classNames() {
+        return classes.keySet();
+    }
+
+    @Override
+    public String moduleOf(String className) {
+        return modules.get(className);
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super DexClassNode> action) {
+        classes.forEach(action);
+    }
+}
@@ -0,0 +1,304 @@
+package com.obfuscation.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static com.obfuscation.model.ConsistencyScopeBinaryFormat.*;
+
+/**
+ * Read-only view of a binary {@link ConsistencyScope} file.
+ * <p>
+ * The file is memory-mapped and every lookup binary-searches the sorted
+ * tables in place, so opening the file costs the same however many entries
+ * it holds. Use {@link #toScope()} to fully deserialize it.
+ * </p>
+ * <p>
+ * Instances are safe for concurrent lookups.
+ * </p>
+ */
+public class MappedConsistencyScope implements Closeable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    private final int stringCount;
+    private final int stringOffsets;
+    private final int stringData;
+
+    private final int classNames;
+    private final int methodAccess;
+    private final int fieldAccess;
+    private final int methodSignatures;
+    private final int fieldSignatures;
+
+    private MappedConsistencyScope(FileChannel channel, ByteBuffer buffer) throws IOException {
+        this.channel = channel;
+        this.buffer = buffer;
+
+        if (buffer.limit() < HEADER_SIZE ||
+            buffer.getInt(0) != MAGIC ||
+            buffer.getInt(4) != VERSION ||
+            buffer.getInt(OFFSET_FILE_SIZE) != buffer.limit()
+        ) {
+            throw new IOException("Not a consistency scope file of version " + VERSION);
+        }
+
+        int stringTable = buffer.getInt(OFFSET_STRING_TABLE);
+        this.stringCount = buffer.getInt(stringTable);
+        this.stringOffsets = stringTable + 4;
+        this.stringData = stringOffsets + (stringCount + 1) * 4;
+
+        this.classNames = buffer.getInt(OFFSET_CLASS_NAMES);
+        this.methodAccess = buffer.getInt(OFFSET_METHOD_ACCESS);
+        this.fieldAccess = buffer.getInt(OFFSET_FIELD_ACCESS);
+        this.methodSignatures = buffer.getInt(OFFSET_METHOD_SIGNATURES);
+        this.fieldSignatures = buffer.getInt(OFFSET_FIELD_SIGNATURES);
+    }
+
+    /**
+     * Maps the given binary scope file.
+     */
+    public static MappedConsistencyScope open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new MappedConsistencyScope(
+                    channel,
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+            );
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns whether the given class name is listed in the class names section.
+     */
+    public boolean containsClassName(String className) {
+        int id = stringId(className);
+        return id >= 0 && search(classNames + 4, buffer.getInt(classNames), 1, id) >= 0;
+    }
+
+    /**
+     * Returns the sorted method access flags kept for the given class name,
+     * or an empty array. The wildcard entry is listed under
+     * {@code "*"} and is not folded in.
+     */
+    public int[] methodAccess(String className) {
+        return access(methodAccess, className);
+    }
+
+    /**
+     * Returns the sorted field access flags kept for the given class name,
+     * or an empty array. The wildcard entry is listed under
+     * {@code "*"} and is not folded in.
+     */
+    public int[] fieldAccess(String className) {
+        return access(fieldAccess, className);
+    }
+
+    /**
+     * Returns whether the given method is listed in the method signatures section.
+     */
+    public boolean containsMethodSignature(String owner, String name, String descriptor) {
+        int ownerId = stringId(owner);
+        int nameId = ownerId < 0 ? -1 : stringId(name);
+        int descriptorId = nameId < 0 ? -1 : stringId(descriptor);
+        return descriptorId >= 0 &&
+               search(methodSignatures + 4, buffer.getInt(methodSignatures), 3, ownerId, nameId, descriptorId) >= 0;
+    }
+
+    /**
+     * Returns whether the given "owner.name(desc)" signature is listed in the
+     * method signatures section.
+     */
+    public boolean containsMethodSignature(String signature) {
+        String[] parts = splitMethodSignature(signature);
+        return containsMethodSignature(parts[0], parts[1], parts[2]);
+    }
+
+    /**
+     * Returns whether the given field is listed in the field signatures section.
+     */
+    public boolean containsFieldSignature(String owner, String name) {
+        int ownerId = stringId(owner);
+        int nameId = ownerId < 0 ? -1 : stringId(name);
+        return nameId >= 0 &&
+               search(fieldSignatures + 4, buffer.getInt(fieldSignatures), 2, ownerId, nameId) >= 0;
+    }
+
+    /**
+     * Returns whether the given "owner.name" signature is listed in the field
+     * signatures section.
+     */
+    public boolean containsFieldSignature(String signature) {
+        String[] parts = splitFieldSignature(signature);
+        return containsFieldSignature(parts[0], parts[1]);
+    }
+
+    /**
+     * Deserializes the complete scope.
+     */
+    public ConsistencyScope toScope() {
+        ConsistencyScope scope = new ConsistencyScope();
+        scope.initialize();
+
+        int count = buffer.getInt(classNames);
+        for (int index = 0; index < count; index++) {
+            scope.classNames.add(string(buffer.getInt(classNames + 4 + index * 4)));
+        }
+
+        readAccess(methodAccess, scope.keepMethodsAccess);
+        readAccess(fieldAccess, scope.keepFieldsAccess);
+
+        count = buffer.getInt(methodSignatures);
+        for (int index = 0, row = methodSignatures + 4; index < count; index++, row += 12) {
+            scope.methodSignatures.add(joinSignature(
+                    string(buffer.getInt(row)),
+                    string(buffer.getInt(row + 4)) + string(buffer.getInt(row + 8))
+            ));
+        }
+
+        count = buffer.getInt(fieldSignatures);
+        for (int index = 0, row = fieldSignatures + 4; index < count; index++, row += 8) {
+            scope.fieldSignatures.add(joinSignature(
+                    string(buffer.getInt(row)),
+                    string(buffer.getInt(row + 4))
+            ));
+        }
+        return scope;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readAccess(int table, Map<String, Set<Integer>> target) {
+        int count = buffer.getInt(table);
+        for (int index = 0; index < count; index++) {
+            int[] flags = flags(table, count, index);
+            Set<Integer> set = new HashSet<>();
+            for (int flag : flags) {
+                set.add(flag);
+            }
+            target.put(string(buffer.getInt(table + 4 + index * 4)), set);
+        }
+    }
+
+    private int[] access(int table, String className) {
+        int id = stringId(className);
+        if (id < 0) {
+            return new int[0];
+        }
+        int count = buffer.getInt(table);
+        int index = search(table + 4, count, 1, id);
+        return index < 0 ? new int[0] : flags(table, count, index);
+    }
+
+    private int[] flags(int table, int count, int index) {
+        int offsets = table + 4 + count * 4;
+        int position = offsets + (count + 1) * 4 + buffer.getInt(offsets + index * 4);
+
+        int[] cursor = {position};
+        int[] flags = new int[readVarint(cursor)];
+        int previous = 0;
+        for (int flag = 0; flag < flags.length; flag++) {
+            previous += readVarint(cursor);
+            flags[flag] = previous;
+        }
+        return flags;
+    }
+
+    private int readVarint(int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = buffer.get(cursor[0]++) & 0xff;
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Binary-searches sorted rows of {@code width} string ids for the given key.
+     *
+     * @return the row index, or -1.
+     */
+    private int search(int start, int count, int width, int... key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int row = start + middle * width * 4;
+            int diff = 0;
+            for (int column = 0; column < width && diff == 0; column++) {
+                diff = Integer.compare(buffer.getInt(row + column * 4), key[column]);
+            }
+            if (diff < 0) {
+                low = middle + 1;
+            } else if (diff > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Binary-searches the string table for the given string, comparing the
+     * mapped UTF-8 bytes in place.
+     *
+     * @return the string id, or -1.
+     */
+    private int stringId(String string) {
+        byte[] key = string.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = stringCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int diff = compareString(middle, key);
+            if (diff < 0) {
+                low = middle + 1;
+            } else if (diff > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int compareString(int id, byte[] key) {
+        int start = stringData + buffer.getInt(stringOffsets + id * 4);
+        int length = stringData + buffer.getInt(stringOffsets + id * 4 + 4) - start;
+        int common = Math.min(length, key.length);
+        for (int index = 0; index < common; index++) {
+            int diff = (buffer.get(start + index) & 0xff) - (key[index] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - key.length;
+    }
+
+    private String string(int id) {
+        int start = stringData + buffer.getInt(stringOffsets + id * 4);
+        int end = stringData + buffer.getInt(stringOffsets + id * 4 + 4);
+        byte[] bytes = new byte[end - start];
+        for (int index = 0; index < bytes.length; index++) {
+            bytes[index] = buffer.get(start + index);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
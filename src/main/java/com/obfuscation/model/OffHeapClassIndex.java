@@ -0,0 +1,1314 @@
+package com.obfuscation.model;
+
+import com.googlecode.d2j.Field;
+import com.googlecode.d2j.Method;
+import com.googlecode.d2j.Visibility;
+import com.googlecode.d2j.node.DexAnnotationNode;
+import com.googlecode.d2j.node.DexClassNode;
+import com.googlecode.d2j.node.DexFieldNode;
+import com.googlecode.d2j.node.DexMethodNode;
+import com.googlecode.d2j.util.Mutf8;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * A {@link ClassIndex} whose class metadata lives outside the Java heap, in a
+ * direct buffer or a memory-mapped temporary file.
+ * <p>
+ * The index keeps what keep rules are matched against: the access flags,
+ * names, super class, interfaces and annotation types of every class, and the
+ * access flags, owners, names and types of its methods and fields. Code,
+ * annotation values and field constants are dropped. The data is laid out in
+ * columns of 32-bit ids into a deduplicated string pool:
+ * </p>
+ * <ul>
+ *     <li>the string pool: {@code u4[count + 1]} offsets into the string data,
+ *     then the modified UTF-8 string data, every string zero-terminated.</li>
+ *     <li>the classes, sorted by the modified UTF-8 bytes of their normalized
+ *     name: {@code (name, className, access, superClass, interfaces, interfaceCount,
+ *     annotations, annotationCount, methods, methodCount, fields, fieldCount)}.
+ *     Every start indexes its column, and a count of -1 stands for a null list.</li>
+ *     <li>the type column: string ids of interfaces and parameter types.</li>
+ *     <li>the annotation column: {@code (type, visibility)} pairs.</li>
+ *     <li>the method column: {@code (access, owner, name, returnType, parameterTypes, parameterCount)}.</li>
+ *     <li>the field column: {@code (access, owner, name, type)}.</li>
+ * </ul>
+ * <p>
+ * The heap only holds this object and its buffer, however many classes the
+ * index has, so many indexes can stay resident without growing the old
+ * generation. {@link #get(String)} and {@link #forEach(BiConsumer)} decode
+ * short-lived class nodes on demand; the column accessors read single values
+ * without decoding anything else.
+ * </p>
+ * <p>
+ * Instances are safe for concurrent reads. Every read holds the buffer for
+ * its duration, and {@link #close()} frees the memory once the last read
+ * that was already running is over; reads that start after it throw an
+ * {@link IllegalStateException}. An index that is dropped without being
+ * closed is freed once it is garbage collected.
+ * </p>
+ */
+public final class OffHeapClassIndex implements ClassIndex, Closeable {
+
+    /**
+     * Where the data of an index is kept.
+     */
+    public enum Storage {
+        /** A direct buffer, counted against the maximum direct memory size. */
+        DIRECT,
+        /** A memory-mapped temporary file, which the operating system can page out. */
+        MAPPED;
+
+        /**
+         * Returns the storage with the given name, in any case.
+         *
+         * @throws RuntimeException if there is no such storage.
+         */
+        public static Storage of(String name) {
+            for (Storage storage : values()) {
+                if (storage.name().equalsIgnoreCase(name)) {
+                    return storage;
+                }
+            }
+            throw new RuntimeException("Unknown off-heap storage '" + name + "'");
+        }
+    }
+
+    private static final int NULL_ID = -1;
+    private static final int NULL_COUNT = -1;
+    private static final String TEMP_FILE_PREFIX = "class-index";
+    private static final String TEMP_FILE_SUFFIX = ".bin";
+
+    private static final int CLASS_NAME = 0;
+    private static final int CLASS_DESCRIPTOR = 4;
+    private static final int CLASS_ACCESS = 8;
+    private static final int CLASS_SUPER = 12;
+    private static final int CLASS_INTERFACES = 16;
+    private static final int CLASS_ANNOTATIONS = 24;
+    private static final int CLASS_METHODS = 32;
+    private static final int CLASS_FIELDS = 40;
+    private static final int CLASS_SIZE = 48;
+
+    private static final int ANNOTATION_SIZE = 8;
+
+    private static final int METHOD_ACCESS = 0;
+    private static final int METHOD_OWNER = 4;
+    private static final int METHOD_NAME = 8;
+    private static final int METHOD_RETURN_TYPE = 12;
+    private static final int METHOD_PARAMETERS = 16;
+    private static final int METHOD_SIZE = 24;
+
+    private static final int FIELD_ACCESS = 0;
+    private static final int FIELD_OWNER = 4;
+    private static final int FIELD_NAME = 8;
+    private static final int FIELD_TYPE = 12;
+    private static final int FIELD_SIZE = 16;
+
+    private static final Visibility[] VISIBILITIES = Visibility.values();
+    /** The bit of {@link #state} set by {@link #close()}, next to the count of running reads. */
+    private static final int CLOSED = 1 << 31;
+
+    private final Storage storage;
+    private final Path file;
+    private final int classCount;
+    private final int stringOffsets;
+    private final int stringData;
+    private final int classes;
+    private final int types;
+    private final int annotations;
+    private final int methods;
+    private final int fields;
+    private final Set<String> classNames = new ClassNameSet();
+
+    private final ByteBuffer buffer;
+    private final AtomicInteger state = new AtomicInteger();
+
+    private OffHeapClassIndex(Storage storage, Path file, ByteBuffer buffer, Layout layout) {
+        this(storage, file, buffer, layout.classCount, layout.stringOffsets, layout.stringData,
+                layout.classes, layout.types, layout.annotations, layout.methods, layout.fields);
+    }
+
+    private OffHeapClassIndex(
+            Storage storage, Path file, ByteBuffer buffer, int classCount, int stringOffsets, int stringData,
+            int classes, int types, int annotations, int methods, int fields
+    ) {
+        this.storage = storage;
+        this.file = file;
+        this.buffer = buffer;
+        this.classCount = classCount;
+        this.stringOffsets = stringOffsets;
+        this.stringData = stringData;
+        this.classes = classes;
+        this.types = types;
+        this.annotations = annotations;
+        this.methods = methods;
+        this.fields = fields;
+    }
+
+    /**
+     * Returns an index over the declarations of the given class nodes, kept in
+     * a direct buffer.
+     *
+     * @param classPath class nodes keyed by normalized class name.
+     */
+    public static OffHeapClassIndex of(Map<String, DexClassNode> classPath) throws IOException {
+        return of(classPath, Storage.DIRECT, null);
+    }
+
+    /**
+     * Returns an index over the declarations of the given class nodes.
+     *
+     * @param classPath class nodes keyed by normalized class name.
+     * @param storage   where to keep the data.
+     * @param tempDir   the directory of the temporary file of {@link Storage#MAPPED},
+     *                  or null for the default temporary directory.
+     */
+    public static OffHeapClassIndex of(Map<String, DexClassNode> classPath, Storage storage, Path tempDir) throws IOException {
+        Layout layout = new Layout(classPath);
+        if (storage == Storage.DIRECT) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(layout.size);
+            layout.write(buffer);
+            return new OffHeapClassIndex(storage, null, buffer, layout);
+        }
+
+        Path file = createTempFile(tempDir);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, layout.size);
+            layout.write(buffer);
+            return new OffHeapClassIndex(storage, unlink(file), buffer, layout);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    public Storage storage() {
+        return storage;
+    }
+
+    /**
+     * Returns the number of bytes of the data outside the heap.
+     */
+    public long offHeapBytes() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public DexClassNode get(String className) {
+        int index = indexOf(className);
+        return index < 0 ? null : classNode(index);
+    }
+
+    @Override
+    public boolean contains(String className) {
+        return indexOf(className) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return classCount;
+    }
+
+    /**
+     * Returns a view of the normalized class names of this index, in the
+     * order of their modified UTF-8 bytes. Names are decoded as they are
+     * iterated.
+     */
+    @Override
+    public Set<String> classNames() {
+        return classNames;
+    }
+
+    /**
+     * Performs the given action for every class of this index, with a class
+     * node that is decoded for this call only.
+     */
+    @Override
+    public void forEach(BiConsumer<? super String, ? super DexClassNode> action) {
+        ByteBuffer buffer = acquire();
+        try {
+            for (int index = 0; index < classCount; index++) {
+                action.accept(string(buffer, classInt(buffer, index, CLASS_NAME)), classNode(buffer, index, true));
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Performs the given action for every class of this index whose
+     * normalized name passes the given filter. Only the names of the classes
+     * that are filtered out are decoded, and the members only if they are
+     * read. A {@link ClassNamePattern} is tested on the encoded names, so the
+     * names of the classes it filters out aren't decoded either.
+     */
+    @Override
+    public void forEach(
+            Predicate<? super String> classNameFilter,
+            boolean members,
+            BiConsumer<? super String, ? super DexClassNode> action
+    ) {
+        ByteBuffer buffer = acquire();
+        try {
+            if (classNameFilter instanceof ClassNamePattern) {
+                ClassNamePattern pattern = (ClassNamePattern) classNameFilter;
+                for (int index = 0; index < classCount; index++) {
+                    int name = classInt(buffer, index, CLASS_NAME);
+                    if (pattern.test(buffer, stringStart(buffer, name))) {
+                        action.accept(string(buffer, name), classNode(buffer, index, members));
+                    }
+                }
+                return;
+            }
+            for (int index = 0; index < classCount; index++) {
+                String className = string(buffer, classInt(buffer, index, CLASS_NAME));
+                if (classNameFilter.test(className)) {
+                    action.accept(className, classNode(buffer, index, members));
+                }
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Returns the position of the given normalized class name in this index,
+     * or a negative value if it isn't in the index.
+     */
+    public int indexOf(String className) {
+        byte[] key = encode(className);
+        ByteBuffer buffer = acquire();
+        try {
+            return indexOf(buffer, key);
+        } finally {
+            release();
+        }
+    }
+
+    private int indexOf(ByteBuffer buffer, byte[] key) {
+        int low = 0;
+        int high = classCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int diff = compare(buffer, buffer.getInt(classes + middle * CLASS_SIZE + CLASS_NAME), key);
+            if (diff < 0) {
+                low = middle + 1;
+            } else if (diff > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Returns the normalized name of the class at the given position.
+     */
+    public String className(int index) {
+        ByteBuffer buffer = acquire();
+        try {
+            return string(buffer, classInt(buffer, index, CLASS_NAME));
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Returns the access flags of the class at the given position.
+     */
+    public int access(int index) {
+        return classInt(index, CLASS_ACCESS);
+    }
+
+    /**
+     * Returns the super class descriptor of the class at the given position,
+     * or null.
+     */
+    public String superClass(int index) {
+        ByteBuffer buffer = acquire();
+        try {
+            return string(buffer, classInt(buffer, index, CLASS_SUPER));
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Returns the number of methods of the class at the given position.
+     */
+    public int methodCount(int index) {
+        return Math.max(0, classInt(index, CLASS_METHODS + 4));
+    }
+
+    /**
+     * Returns the number of fields of the class at the given position.
+     */
+    public int fieldCount(int index) {
+        return Math.max(0, classInt(index, CLASS_FIELDS + 4));
+    }
+
+    /**
+     * Decodes the class node at the given position. The node only has the
+     * declarations the index keeps.
+     */
+    public DexClassNode classNode(int index) {
+        return classNode(index, true);
+    }
+
+    /**
+     * Decodes the class node at the given position, without its methods and
+     * fields unless members is set.
+     */
+    public DexClassNode classNode(int index, boolean members) {
+        ByteBuffer buffer = acquire();
+        try {
+            return classNode(buffer, index, members);
+        } finally {
+            release();
+        }
+    }
+
+    private DexClassNode classNode(ByteBuffer buffer, int index, boolean members) {
+        if (index < 0 || index >= classCount) {
+            throw new IndexOutOfBoundsException("No class at " + index);
+        }
+        int record = classes + index * CLASS_SIZE;
+
+        String[] interfaceNames = null;
+        int interfaceCount = buffer.getInt(record + CLASS_INTERFACES + 4);
+        if (interfaceCount != NULL_COUNT) {
+            interfaceNames = types(buffer, buffer.getInt(record + CLASS_INTERFACES), interfaceCount);
+        }
+        DexClassNode classNode = new DexClassNode(
+                buffer.getInt(record + CLASS_ACCESS),
+                string(buffer, buffer.getInt(record + CLASS_DESCRIPTOR)),
+                string(buffer, buffer.getInt(record + CLASS_SUPER)),
+                interfaceNames
+        );
+
+        int annotationCount = buffer.getInt(record + CLASS_ANNOTATIONS + 4);
+        if (annotationCount != NULL_COUNT) {
+            int annotation = annotations + buffer.getInt(record + CLASS_ANNOTATIONS) * ANNOTATION_SIZE;
+            classNode.anns = new ArrayList<>(annotationCount);
+            for (int i = 0; i < annotationCount; i++, annotation += ANNOTATION_SIZE) {
+                int visibility = buffer.getInt(annotation + 4);
+                classNode.anns.add(new DexAnnotationNode(
+                        string(buffer, buffer.getInt(annotation)),
+                        visibility == NULL_ID ? null : VISIBILITIES[visibility]
+                ));
+            }
+        }
+
+        if (!members) {
+            return classNode;
+        }
+
+        int methodCount = buffer.getInt(record + CLASS_METHODS + 4);
+        if (methodCount != NULL_COUNT) {
+            int method = methods + buffer.getInt(record + CLASS_METHODS) * METHOD_SIZE;
+            classNode.methods = new ArrayList<>(methodCount);
+            for (int i = 0; i < methodCount; i++, method += METHOD_SIZE) {
+                classNode.methods.add(new DexMethodNode(
+                        buffer.getInt(method + METHOD_ACCESS),
+                        new Method(
+                                string(buffer, buffer.getInt(method + METHOD_OWNER)),
+                                string(buffer, buffer.getInt(method + METHOD_NAME)),
+                                types(buffer, buffer.getInt(method + METHOD_PARAMETERS), buffer.getInt(method + METHOD_PARAMETERS + 4)),
+                                string(buffer, buffer.getInt(method + METHOD_RETURN_TYPE))
+                        )
+                ));
+            }
+        }
+
+        int fieldCount = buffer.getInt(record + CLASS_FIELDS + 4);
+        if (fieldCount != NULL_COUNT) {
+            int field = fields + buffer.getInt(record + CLASS_FIELDS) * FIELD_SIZE;
+            classNode.fields = new ArrayList<>(fieldCount);
+            for (int i = 0; i < fieldCount; i++, field += FIELD_SIZE) {
+                classNode.fields.add(new DexFieldNode(
+                        buffer.getInt(field + FIELD_ACCESS),
+                        new Field(
+                                string(buffer, buffer.getInt(field + FIELD_OWNER)),
+                                string(buffer, buffer.getInt(field + FIELD_NAME)),
+                                string(buffer, buffer.getInt(field + FIELD_TYPE))
+                        ),
+                        null
+                ));
+            }
+        }
+        return classNode;
+    }
+
+    /**
+     * Frees the memory of this index and deletes its temporary file, as soon
+     * as the reads that are running are over. The index can't be used
+     * afterwards.
+     */
+    @Override
+    public void close() throws IOException {
+        while (true) {
+            int state = this.state.get();
+            if ((state & CLOSED) != 0) {
+                return;
+            }
+            if (this.state.compareAndSet(state, state | CLOSED)) {
+                if (state == 0) {
+                    freeAll();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Holds the buffer for a read, which must be followed by
+     * {@link #release()}.
+     *
+     * @throws IllegalStateException if the index is closed.
+     */
+    private ByteBuffer acquire() {
+        while (true) {
+            int state = this.state.get();
+            if ((state & CLOSED) != 0) {
+                throw new IllegalStateException("The class index is closed");
+            }
+            if (this.state.compareAndSet(state, state + 1)) {
+                return buffer;
+            }
+        }
+    }
+
+    /**
+     * Ends a read, and frees the memory if it was the last one of a closed
+     * index.
+     */
+    private void release() {
+        if (state.decrementAndGet() == CLOSED) {
+            freeAll();
+        }
+    }
+
+    private void freeAll() {
+        free(buffer);
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    private int classInt(int index, int offset) {
+        ByteBuffer buffer = acquire();
+        try {
+            return classInt(buffer, index, offset);
+        } finally {
+            release();
+        }
+    }
+
+    private int classInt(ByteBuffer buffer, int index, int offset) {
+        if (index < 0 || index >= classCount) {
+            throw new IndexOutOfBoundsException("No class at " + index);
+        }
+        return buffer.getInt(classes + index * CLASS_SIZE + offset);
+    }
+
+    private String[] types(ByteBuffer buffer, int start, int count) {
+        String[] types = new String[count];
+        for (int i = 0; i < count; i++) {
+            types[i] = string(buffer, buffer.getInt(this.types + (start + i) * 4));
+        }
+        return types;
+    }
+
+    private String string(ByteBuffer buffer, int id) {
+        if (id == NULL_ID) {
+            return null;
+        }
+        int start = buffer.getInt(stringOffsets + id * 4);
+        int length = buffer.getInt(stringOffsets + (id + 1) * 4) - start - 1;
+        byte[] bytes = new byte[length + 1];
+        buffer.get(stringData + start, bytes);
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] < 0) {
+                try {
+                    return Mutf8.decode(ByteBuffer.wrap(bytes), new StringBuilder(length));
+                } catch (UTFDataFormatException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Compares the string of the given id with the given modified UTF-8 bytes,
+     * by their unsigned bytes.
+     */
+    private int compare(ByteBuffer buffer, int id, byte[] key) {
+        return Mutf8.compare(buffer, stringStart(buffer, id), key);
+    }
+
+    /**
+     * Returns the offset in the buffer of the zero-terminated bytes of the
+     * string of the given id.
+     */
+    private int stringStart(ByteBuffer buffer, int id) {
+        return stringData + buffer.getInt(stringOffsets + id * 4);
+    }
+
+    private static byte[] encode(String string) {
+        try {
+            return Mutf8.encode(string);
+        } catch (UTFDataFormatException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private static int compare(byte[] a, byte[] b) {
+        int common = Math.min(a.length, b.length);
+        for (int i = 0; i < common; i++) {
+            int diff = (a[i] & 0xff) - (b[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    private static Path createTempFile(Path tempDir) throws IOException {
+        return tempDir == null
+                ? Files.createTempFile(TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX)
+                : Files.createTempFile(tempDir, TEMP_FILE_PREFIX, TEMP_FILE_SUFFIX);
+    }
+
+    /**
+     * Deletes the given mapped file right away where the platform allows it,
+     * so it can't outlive the mapping. Returns the file if it still exists.
+     */
+    private static Path unlink(Path file) {
+        try {
+            Files.delete(file);
+            return null;
+        } catch (IOException e) {
+            file.toFile().deleteOnExit();
+            return file;
+        }
+    }
+
+    /**
+     * Releases the memory of the given direct buffer now rather than when it
+     * is garbage collected, if the runtime allows it.
+     */
+    private static void free(ByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            java.lang.reflect.Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafeClass.getMethod("invokeCleaner", ByteBuffer.class).invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Freed once the buffer is garbage collected.
+        }
+    }
+
+    private class ClassNameSet extends AbstractSet<String> {
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof String && indexOf((String) o) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return classCount;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<String>() {
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return index < classCount;
+                }
+
+                @Override
+                public String next() {
+                    if (index >= classCount) {
+                        throw new NoSuchElementException();
+                    }
+                    return className(index++);
+                }
+            };
+        }
+    }
+
+    /**
+     * Builds an index from classes added one at a time, so their nodes can be
+     * dropped as soon as they are added rather than collected into a map.
+     * <p>
+     * Each added class is encoded right away into the columns of the index,
+     * which stay on the heap while their estimated size is within the given
+     * budget. Past it, the columns and the string data are spilled to
+     * temporary files and a small buffer per column stays on the heap. The
+     * index is then built in a memory-mapped file, or in a direct buffer if
+     * nothing was spilled.
+     * </p>
+     * <p>
+     * The budget only bounds the columns. The strings' interning table, with
+     * every distinct string, a 48-byte record per class and the table of the
+     * records by name stay on the heap however much was spilled, and grow
+     * with the number of classes and strings, see {@link #residentHeapBytes()}.
+     * A large enough APK takes more heap than the budget for them alone.
+     * </p>
+     * <p>
+     * Like {@link Map#put}, adding a class name again replaces its class. A
+     * collector isn't safe for concurrent use.
+     * </p>
+     */
+    public static final class Collector implements Closeable {
+        private static final int RECORD_INTS = CLASS_SIZE / 4;
+        /** The estimated heap bytes of an interned string besides its characters. */
+        private static final int STRING_OVERHEAD = 64;
+        private static final byte[] STRING_TERMINATOR = new byte[1];
+
+        private final long heapBudget;
+        private final Path tempDir;
+        private final ScopeSymbols symbols = new ScopeSymbols();
+        private int[] stringEnds = new int[1024];
+        private int stringCount;
+        private long stringHeapBytes;
+
+        private final Column stringColumn = new Column();
+        private final Column typeColumn = new Column();
+        private final Column annotationColumn = new Column();
+        private final Column methodColumn = new Column();
+        private final Column fieldColumn = new Column();
+
+        private int[] records = new int[RECORD_INTS * 256];
+        private int classCount;
+        /** The record index + 1 of the class of each string id, 0 if it isn't a class name. */
+        private int[] recordsByName = new int[1024];
+        private boolean spilled;
+        private boolean finished;
+
+        /**
+         * @param heapBudget the number of heap bytes the collector may take
+         *                   before the columns are spilled to temporary
+         *                   files. What can't be spilled isn't bounded by it.
+         * @param tempDir    the directory of the temporary files, or null
+         *                   for the default temporary directory.
+         */
+        public Collector(long heapBudget, Path tempDir) {
+            this.heapBudget = heapBudget;
+            this.tempDir = tempDir;
+        }
+
+        /**
+         * Returns whether the given normalized class name was added.
+         */
+        public boolean contains(String className) {
+            int id = symbols.find(className);
+            return id >= 0 && id < recordsByName.length && recordsByName[id] != 0;
+        }
+
+        /**
+         * Returns the number of classes added.
+         */
+        public int size() {
+            return classCount;
+        }
+
+        /**
+         * Returns whether the columns were spilled to temporary files.
+         */
+        public boolean spilled() {
+            return spilled;
+        }
+
+        /**
+         * Encodes the declarations of the given class node. The node isn't
+         * referenced afterwards.
+         *
+         * @param className the normalized class name.
+         */
+        public void add(String className, DexClassNode classNode) throws IOException {
+            if (finished) {
+                throw new IllegalStateException("The class index was already built");
+            }
+            int nameId = intern(className);
+            if (nameId >= recordsByName.length) {
+                recordsByName = Arrays.copyOf(recordsByName, Math.max(nameId + 1, recordsByName.length * 2));
+            }
+            int record = recordsByName[nameId] - 1;
+            if (record < 0) {
+                if ((classCount + 1) * RECORD_INTS > records.length) {
+                    records = Arrays.copyOf(records, records.length * 2);
+                }
+                record = classCount++;
+                recordsByName[nameId] = record + 1;
+            }
+
+            int[] values = records;
+            int position = record * RECORD_INTS;
+            values[position + CLASS_NAME / 4] = nameId;
+            values[position + CLASS_DESCRIPTOR / 4] = intern(classNode.className);
+            values[position + CLASS_ACCESS / 4] = classNode.access;
+            values[position + CLASS_SUPER / 4] = intern(classNode.superClass);
+
+            values[position + CLASS_INTERFACES / 4] = typeColumn.count(4);
+            values[position + CLASS_INTERFACES / 4 + 1] = classNode.interfaceNames == null ? NULL_COUNT : classNode.interfaceNames.length;
+            addTypes(classNode.interfaceNames);
+
+            values[position + CLASS_ANNOTATIONS / 4] = annotationColumn.count(ANNOTATION_SIZE);
+            values[position + CLASS_ANNOTATIONS / 4 + 1] = classNode.anns == null ? NULL_COUNT : classNode.anns.size();
+            if (classNode.anns != null) {
+                for (DexAnnotationNode annotationNode : classNode.anns) {
+                    annotationColumn.putInt(intern(annotationNode.type));
+                    annotationColumn.putInt(annotationNode.visibility == null ? NULL_ID : annotationNode.visibility.ordinal());
+                }
+            }
+
+            values[position + CLASS_METHODS / 4] = methodColumn.count(METHOD_SIZE);
+            values[position + CLASS_METHODS / 4 + 1] = classNode.methods == null ? NULL_COUNT : classNode.methods.size();
+            if (classNode.methods != null) {
+                for (DexMethodNode methodNode : classNode.methods) {
+                    String[] parameterTypes = methodNode.method.getParameterTypes();
+                    methodColumn.putInt(methodNode.access);
+                    methodColumn.putInt(intern(methodNode.method.getOwner()));
+                    methodColumn.putInt(intern(methodNode.method.getName()));
+                    methodColumn.putInt(intern(methodNode.method.getReturnType()));
+                    methodColumn.putInt(typeColumn.count(4));
+                    methodColumn.putInt(parameterTypes == null ? 0 : parameterTypes.length);
+                    addTypes(parameterTypes);
+                }
+            }
+
+            values[position + CLASS_FIELDS / 4] = fieldColumn.count(FIELD_SIZE);
+            values[position + CLASS_FIELDS / 4 + 1] = classNode.fields == null ? NULL_COUNT : classNode.fields.size();
+            if (classNode.fields != null) {
+                for (DexFieldNode fieldNode : classNode.fields) {
+                    fieldColumn.putInt(fieldNode.access);
+                    fieldColumn.putInt(intern(fieldNode.field.getOwner()));
+                    fieldColumn.putInt(intern(fieldNode.field.getName()));
+                    fieldColumn.putInt(intern(fieldNode.field.getType()));
+                }
+            }
+
+            if (!spilled && heapBytes() > heapBudget) {
+                spill();
+            }
+        }
+
+        /**
+         * Returns the estimated number of heap bytes taken by what was added.
+         */
+        public long heapBytes() {
+            return residentHeapBytes()
+                    + stringColumn.heapBytes()
+                    + typeColumn.heapBytes()
+                    + annotationColumn.heapBytes()
+                    + methodColumn.heapBytes()
+                    + fieldColumn.heapBytes();
+        }
+
+        /**
+         * Returns the estimated number of heap bytes that stay on the heap
+         * after a spill: the interned strings, their ends, the class records
+         * and the records by name. Unlike the columns, they aren't bounded by
+         * the budget.
+         */
+        public long residentHeapBytes() {
+            return stringHeapBytes + 4L * (stringEnds.length + records.length + recordsByName.length);
+        }
+
+        /**
+         * Builds the index of the added classes and deletes the temporary
+         * files of the columns. The collector can't be used afterwards.
+         */
+        public OffHeapClassIndex finish() throws IOException {
+            if (finished) {
+                throw new IllegalStateException("The class index was already built");
+            }
+            finished = true;
+            try {
+                return build();
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * Deletes the temporary files of the columns.
+         */
+        @Override
+        public void close() throws IOException {
+            finished = true;
+            records = null;
+            recordsByName = null;
+            stringColumn.close();
+            typeColumn.close();
+            annotationColumn.close();
+            methodColumn.close();
+            fieldColumn.close();
+        }
+
+        private OffHeapClassIndex build() throws IOException {
+            long offset = 0;
+            int stringOffsets = (int) offset;
+            offset += 4L * (stringCount + 1);
+            int stringData = (int) offset;
+            offset += stringColumn.size();
+            offset = (offset + 3) & ~3L;
+            int classes = (int) offset;
+            offset += (long) CLASS_SIZE * classCount;
+            int types = (int) offset;
+            offset += typeColumn.size();
+            int annotations = (int) offset;
+            offset += annotationColumn.size();
+            int methods = (int) offset;
+            offset += methodColumn.size();
+            int fields = (int) offset;
+            offset += fieldColumn.size();
+            if (offset > Integer.MAX_VALUE) {
+                throw new IOException("The class index needs " + offset + " bytes, more than a buffer can hold");
+            }
+            int size = (int) offset;
+
+            Storage storage = spilled ? Storage.MAPPED : Storage.DIRECT;
+            Path file = null;
+            ByteBuffer buffer;
+            if (storage == Storage.DIRECT) {
+                buffer = ByteBuffer.allocateDirect(size);
+            } else {
+                file = createTempFile(tempDir);
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                } catch (IOException | RuntimeException e) {
+                    Files.deleteIfExists(file);
+                    throw e;
+                }
+            }
+
+            try {
+                buffer.putInt(stringOffsets, 0);
+                for (int id = 0; id < stringCount; id++) {
+                    buffer.putInt(stringOffsets + (id + 1) * 4, stringEnds[id]);
+                }
+                stringColumn.copyTo(buffer, stringData);
+                typeColumn.copyTo(buffer, types);
+                annotationColumn.copyTo(buffer, annotations);
+                methodColumn.copyTo(buffer, methods);
+                fieldColumn.copyTo(buffer, fields);
+
+                Integer[] order = new Integer[classCount];
+                for (int record = 0; record < classCount; record++) {
+                    order[record] = record;
+                }
+                int[] values = records;
+                Arrays.sort(order, (a, b) -> compareStrings(
+                        buffer, stringOffsets, stringData,
+                        values[a * RECORD_INTS + CLASS_NAME / 4],
+                        values[b * RECORD_INTS + CLASS_NAME / 4]));
+                for (int index = 0; index < classCount; index++) {
+                    int position = order[index] * RECORD_INTS;
+                    for (int i = 0; i < RECORD_INTS; i++) {
+                        buffer.putInt(classes + index * CLASS_SIZE + i * 4, values[position + i]);
+                    }
+                }
+            } catch (RuntimeException e) {
+                if (file != null) {
+                    Files.deleteIfExists(file);
+                }
+                throw e;
+            }
+            return new OffHeapClassIndex(storage, file == null ? null : unlink(file), buffer, classCount,
+                    stringOffsets, stringData, classes, types, annotations, methods, fields);
+        }
+
+        private void spill() throws IOException {
+            spilled = true;
+            stringColumn.spill(tempDir);
+            typeColumn.spill(tempDir);
+            annotationColumn.spill(tempDir);
+            methodColumn.spill(tempDir);
+            fieldColumn.spill(tempDir);
+        }
+
+        private void addTypes(String[] typeNames) throws IOException {
+            if (typeNames != null) {
+                for (String typeName : typeNames) {
+                    typeColumn.putInt(intern(typeName));
+                }
+            }
+        }
+
+        private int intern(String string) throws IOException {
+            if (string == null) {
+                return NULL_ID;
+            }
+            int id = symbols.intern(string);
+            if (id == stringCount) {
+                byte[] bytes = encode(string);
+                stringColumn.put(bytes);
+                stringColumn.put(STRING_TERMINATOR);
+                if (stringCount == stringEnds.length) {
+                    stringEnds = Arrays.copyOf(stringEnds, stringCount * 2);
+                }
+                stringEnds[stringCount++] = (int) stringColumn.size();
+                stringHeapBytes += STRING_OVERHEAD + string.length();
+            }
+            return id;
+        }
+
+        /**
+         * Compares the strings of the given ids by their unsigned modified
+         * UTF-8 bytes.
+         */
+        private static int compareStrings(ByteBuffer buffer, int stringOffsets, int stringData, int a, int b) {
+            int startA = stringData + buffer.getInt(stringOffsets + a * 4);
+            int lengthA = stringData + buffer.getInt(stringOffsets + (a + 1) * 4) - startA - 1;
+            int startB = stringData + buffer.getInt(stringOffsets + b * 4);
+            int lengthB = stringData + buffer.getInt(stringOffsets + (b + 1) * 4) - startB - 1;
+            int common = Math.min(lengthA, lengthB);
+            for (int i = 0; i < common; i++) {
+                int diff = (buffer.get(startA + i) & 0xff) - (buffer.get(startB + i) & 0xff);
+                if (diff != 0) {
+                    return diff;
+                }
+            }
+            return lengthA - lengthB;
+        }
+    }
+
+    /**
+     * An append-only column of a {@link Collector}: a growing heap buffer, or
+     * once spilled, a temporary file written through a fixed chunk.
+     */
+    private static final class Column implements Closeable {
+        private static final int INITIAL_CAPACITY = 4096;
+        private static final int CHUNK_SIZE = 1 << 16;
+
+        private ByteBuffer chunk = ByteBuffer.allocate(INITIAL_CAPACITY);
+        private Path file;
+        private FileChannel channel;
+        private long fileSize;
+
+        long size() {
+            return fileSize + chunk.position();
+        }
+
+        /**
+         * Returns the number of entries of the given size in this column.
+         */
+        int count(int entrySize) {
+            return (int) (size() / entrySize);
+        }
+
+        long heapBytes() {
+            return chunk.capacity();
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            chunk.putInt(value);
+        }
+
+        void put(byte[] bytes) throws IOException {
+            if (channel != null && bytes.length > CHUNK_SIZE) {
+                flush();
+                ByteBuffer source = ByteBuffer.wrap(bytes);
+                while (source.hasRemaining()) {
+                    fileSize += channel.write(source, fileSize);
+                }
+                return;
+            }
+            ensure(bytes.length);
+            chunk.put(bytes);
+        }
+
+        void spill(Path tempDir) throws IOException {
+            file = createTempFile(tempDir);
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            flush();
+            chunk = ByteBuffer.allocate(CHUNK_SIZE);
+        }
+
+        /**
+         * Copies the content of this column into the given buffer, from the
+         * given position.
+         */
+        void copyTo(ByteBuffer buffer, int position) throws IOException {
+            if (channel != null) {
+                ByteBuffer target = buffer.duplicate();
+                target.limit(position + (int) fileSize);
+                target.position(position);
+                long read = 0;
+                while (target.hasRemaining()) {
+                    int count = channel.read(target, read);
+                    if (count < 0) {
+                        throw new IOException("Unexpected end of " + file);
+                    }
+                    read += count;
+                }
+            }
+            buffer.put(position + (int) fileSize, chunk.array(), 0, chunk.position());
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+                Files.deleteIfExists(file);
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (chunk.remaining() >= bytes) {
+                return;
+            }
+            if (channel != null) {
+                flush();
+                return;
+            }
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(chunk.capacity() * 2, chunk.position() + bytes));
+            chunk.flip();
+            grown.put(chunk);
+            chunk = grown;
+        }
+
+        private void flush() throws IOException {
+            chunk.flip();
+            while (chunk.hasRemaining()) {
+                fileSize += channel.write(chunk, fileSize);
+            }
+            chunk.clear();
+        }
+    }
+
+    /**
+     * Interns the strings of a class path and computes the offsets of the
+     * sections of its index. It only lives while the index is built.
+     */
+    private static final class Layout {
+        private final List<String> classNames = new ArrayList<>();
+        private final List<DexClassNode> classNodes = new ArrayList<>();
+        private final Map<String, Integer> stringIds = new HashMap<>();
+        private final List<byte[]> strings = new ArrayList<>();
+
+        private final int classCount;
+        private int typeCount;
+        private int annotationCount;
+        private int methodCount;
+        private int fieldCount;
+
+        private final int stringOffsets;
+        private final int stringData;
+        private final int classes;
+        private final int types;
+        private final int annotations;
+        private final int methods;
+        private final int fields;
+        private final int size;
+
+        Layout(Map<String, DexClassNode> classPath) throws IOException {
+            List<Map.Entry<byte[], String>> sorted = new ArrayList<>(classPath.size());
+            for (String className : classPath.keySet()) {
+                sorted.add(Map.entry(encode(className), className));
+            }
+            sorted.sort((a, b) -> compare(a.getKey(), b.getKey()));
+            for (Map.Entry<byte[], String> entry : sorted) {
+                classNames.add(entry.getValue());
+                classNodes.add(classPath.get(entry.getValue()));
+            }
+            classCount = classNames.size();
+
+            long stringBytes = 0;
+            for (int index = 0; index < classCount; index++) {
+                intern(classNames.get(index));
+                internAll(classNodes.get(index));
+            }
+            for (byte[] string : strings) {
+                stringBytes += string.length + 1;
+            }
+
+            long offset = 0;
+            stringOffsets = (int) offset;
+            offset += 4L * (strings.size() + 1);
+            stringData = (int) offset;
+            offset += stringBytes;
+            offset = (offset + 3) & ~3L;
+            classes = (int) offset;
+            offset += (long) CLASS_SIZE * classCount;
+            types = (int) offset;
+            offset += 4L * typeCount;
+            annotations = (int) offset;
+            offset += (long) ANNOTATION_SIZE * annotationCount;
+            methods = (int) offset;
+            offset += (long) METHOD_SIZE * methodCount;
+            fields = (int) offset;
+            offset += (long) FIELD_SIZE * fieldCount;
+            if (offset > Integer.MAX_VALUE) {
+                throw new IOException("The class index needs " + offset + " bytes, more than a buffer can hold");
+            }
+            size = (int) offset;
+        }
+
+        /**
+         * Interns the strings of the given class node and counts its column
+         * entries.
+         */
+        private void internAll(DexClassNode classNode) {
+            intern(classNode.className);
+            intern(classNode.superClass);
+            if (classNode.interfaceNames != null) {
+                for (String interfaceName : classNode.interfaceNames) {
+                    intern(interfaceName);
+                }
+                typeCount += classNode.interfaceNames.length;
+            }
+            if (classNode.anns != null) {
+                for (DexAnnotationNode annotationNode : classNode.anns) {
+                    intern(annotationNode.type);
+                }
+                annotationCount += classNode.anns.size();
+            }
+            if (classNode.methods != null) {
+                for (DexMethodNode methodNode : classNode.methods) {
+                    intern(methodNode.method.getOwner());
+                    intern(methodNode.method.getName());
+                    intern(methodNode.method.getReturnType());
+                    String[] parameterTypes = methodNode.method.getParameterTypes();
+                    if (parameterTypes != null) {
+                        for (String parameterType : parameterTypes) {
+                            intern(parameterType);
+                        }
+                        typeCount += parameterTypes.length;
+                    }
+                }
+                methodCount += classNode.methods.size();
+            }
+            if (classNode.fields != null) {
+                for (DexFieldNode fieldNode : classNode.fields) {
+                    intern(fieldNode.field.getOwner());
+                    intern(fieldNode.field.getName());
+                    intern(fieldNode.field.getType());
+                }
+                fieldCount += classNode.fields.size();
+            }
+        }
+
+        private int intern(String string) {
+            if (string == null) {
+                return NULL_ID;
+            }
+            Integer id = stringIds.get(string);
+            if (id == null) {
+                id = strings.size();
+                stringIds.put(string, id);
+                strings.add(encode(string));
+            }
+            return id;
+        }
+
+        void write(ByteBuffer buffer) {
+            int offset = 0;
+            for (int id = 0; id < strings.size(); id++) {
+                buffer.putInt(stringOffsets + id * 4, offset);
+                buffer.put(stringData + offset, strings.get(id));
+                offset += strings.get(id).length;
+                buffer.put(stringData + offset, (byte) 0);
+                offset++;
+            }
+            buffer.putInt(stringOffsets + strings.size() * 4, offset);
+
+            int type = 0;
+            int annotation = 0;
+            int method = 0;
+            int field = 0;
+            for (int index = 0; index < classCount; index++) {
+                DexClassNode classNode = classNodes.get(index);
+                int record = classes + index * CLASS_SIZE;
+                buffer.putInt(record + CLASS_NAME, intern(classNames.get(index)));
+                buffer.putInt(record + CLASS_DESCRIPTOR, intern(classNode.className));
+                buffer.putInt(record + CLASS_ACCESS, classNode.access);
+                buffer.putInt(record + CLASS_SUPER, intern(classNode.superClass));
+
+                buffer.putInt(record + CLASS_INTERFACES, type);
+                buffer.putInt(record + CLASS_INTERFACES + 4, classNode.interfaceNames == null ? NULL_COUNT : classNode.interfaceNames.length);
+                type = writeTypes(buffer, type, classNode.interfaceNames);
+
+                buffer.putInt(record + CLASS_ANNOTATIONS, annotation);
+                buffer.putInt(record + CLASS_ANNOTATIONS + 4, classNode.anns == null ? NULL_COUNT : classNode.anns.size());
+                if (classNode.anns != null) {
+                    for (DexAnnotationNode annotationNode : classNode.anns) {
+                        int position = annotations + annotation++ * ANNOTATION_SIZE;
+                        buffer.putInt(position, intern(annotationNode.type));
+                        buffer.putInt(position + 4, annotationNode.visibility == null ? NULL_ID : annotationNode.visibility.ordinal());
+                    }
+                }
+
+                buffer.putInt(record + CLASS_METHODS, method);
+                buffer.putInt(record + CLASS_METHODS + 4, classNode.methods == null ? NULL_COUNT : classNode.methods.size());
+                if (classNode.methods != null) {
+                    for (DexMethodNode methodNode : classNode.methods) {
+                        int position = methods + method++ * METHOD_SIZE;
+                        String[] parameterTypes = methodNode.method.getParameterTypes();
+                        buffer.putInt(position + METHOD_ACCESS, methodNode.access);
+                        buffer.putInt(position + METHOD_OWNER, intern(methodNode.method.getOwner()));
+                        buffer.putInt(position + METHOD_NAME, intern(methodNode.method.getName()));
+                        buffer.putInt(position + METHOD_RETURN_TYPE, intern(methodNode.method.getReturnType()));
+                        buffer.putInt(position + METHOD_PARAMETERS, type);
+                        buffer.putInt(position + METHOD_PARAMETERS + 4, parameterTypes == null ? 0 : parameterTypes.length);
+                        type = writeTypes(buffer, type, parameterTypes);
+                    }
+                }
+
+                buffer.putInt(record + CLASS_FIELDS, field);
+                buffer.putInt(record + CLASS_FIELDS + 4, classNode.fields == null ? NULL_COUNT : classNode.fields.size());
+                if (classNode.fields != null) {
+                    for (DexFieldNode fieldNode : classNode.fields) {
+                        int position = fields + field++ * FIELD_SIZE;
+                        buffer.putInt(position + FIELD_ACCESS, fieldNode.access);
+                        buffer.putInt(position + FIELD_OWNER, intern(fieldNode.field.getOwner()));
+                        buffer.putInt(position + FIELD_NAME, intern(fieldNode.field.getName()));
+                        buffer.putInt(position + FIELD_TYPE, intern(fieldNode.field.getType()));
+                    }
+                }
+            }
+        }
+
+        private int writeTypes(ByteBuffer buffer, int type, String[] typeNames) {
+            if (typeNames != null) {
+                for (String typeName : typeNames) {
+                    buffer.putInt(types + type++ * 4, intern(typeName));
+                }
+            }
+            return type;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.obfuscation.model;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * The difference between two {@link ConsistencyScope}s: what the newer scope
+ * keeps that the older one didn't, and the other way around.
+ * <p>
+ * Access entries are compared flag by flag, so a class whose flag set changed
+ * is listed with the added flags in {@link #added} and the removed flags in
+ * {@link #removed}.
+ * </p>
+ */
+public class ScopeDelta {
+    private static final char LINE_SEPARATOR = '\n';
+    private static final String ADDED = "+";
+    private static final String REMOVED = "-";
+    private static final String ACCESS_DELIMITER = ",";
+
+    public final ConsistencyScope added;
+    public final ConsistencyScope removed;
+
+    private ScopeDelta(ConsistencyScope added, ConsistencyScope removed) {
+        this.added = added;
+        this.removed = removed;
+    }
+
+    /**
+     * Returns the delta from the older to the newer scope.
+     */
+    public static ScopeDelta between(ConsistencyScope older, ConsistencyScope newer) {
+        return new ScopeDelta(subtract(newer, older), subtract(older, newer));
+    }
+
+    /**
+     * Returns whether both scopes keep the same.
+     */
+    public boolean isEmpty() {
+        return isEmpty(added) && isEmpty(removed);
+    }
+
+    /**
+     * Writes the delta in the section layout of the text format. Every entry
+     * is prefixed with "+" if it was added or "-" if it was removed.
+     */
+    public void write(Writer writer) throws IOException {
+        writeNames(writer, ConsistencyScope.CLASS_NAME_SECTION_HEADER, added.classNames, removed.classNames);
+        writeAccess(writer, ConsistencyScope.KEEP_METHOD_ACCESS_SECTION_HEADER, added.keepMethodsAccess, removed.keepMethodsAccess);
+        writeAccess(writer, ConsistencyScope.KEEP_FIELD_ACCESS_SECTION_HEADER, added.keepFieldsAccess, removed.keepFieldsAccess);
+        writeNames(writer, ConsistencyScope.KEEP_METHOD_SIGNATURE_SECTION_HEADER, added.methodSignatures, removed.methodSignatures);
+        writeNames(writer, ConsistencyScope.KEEP_FIELD_SIGNATURE_SECTION_HEADER, added.fieldSignatures, removed.fieldSignatures);
+        writer.flush();
+    }
+
+    private static ConsistencyScope subtract(ConsistencyScope minuend, ConsistencyScope subtrahend) {
+        ConsistencyScope difference = new ConsistencyScope();
+        difference.initialize();
+        subtract(minuend.classNames, subtrahend.classNames, difference.classNames);
+        subtract(minuend.keepMethodsAccess, subtrahend.keepMethodsAccess, difference.keepMethodsAccess);
+        subtract(minuend.keepFieldsAccess, subtrahend.keepFieldsAccess, difference.keepFieldsAccess);
+        subtract(minuend.methodSignatures, subtrahend.methodSignatures, difference.methodSignatures);
+        subtract(minuend.fieldSignatures, subtrahend.fieldSignatures, difference.fieldSignatures);
+        return difference;
+    }
+
+    private static void subtract(Set<String> minuend, Set<String> subtrahend, Set<String> difference) {
+        for (String entry : minuend) {
+            if (!subtrahend.contains(entry)) {
+                difference.add(entry);
+            }
+        }
+    }
+
+    private static void subtract(
+            Map<String, Set<Integer>> minuend,
+            Map<String, Set<Integer>> subtrahend,
+            Map<String, Set<Integer>> difference
+    ) {
+        minuend.forEach((className, flags) -> {
+            Set<Integer> remaining = new HashSet<>(flags);
+            remaining.removeAll(subtrahend.getOrDefault(className, Collections.emptySet()));
+            if (!remaining.isEmpty()) {
+                difference.put(className, remaining);
+            }
+        });
+    }
+
+    private static boolean isEmpty(ConsistencyScope scope) {
+        return scope.classNames.isEmpty() &&
+               scope.keepMethodsAccess.isEmpty() &&
+               scope.keepFieldsAccess.isEmpty() &&
+               scope.methodSignatures.isEmpty() &&
+               scope.fieldSignatures.isEmpty();
+    }
+
+    private static void writeNames(
+            Writer writer,
+            String header,
+            Set<String> added,
+            Set<String> removed
+    ) throws IOException {
+        writer.write(header);
+        writer.write(LINE_SEPARATOR);
+        for (String entry : sorted(removed)) {
+            writeLine(writer, REMOVED + entry);
+        }
+        for (String entry : sorted(added)) {
+            writeLine(writer, ADDED + entry);
+        }
+    }
+
+    private static void writeAccess(
+            Writer writer,
+            String header,
+            Map<String, Set<Integer>> added,
+            Map<String, Set<Integer>> removed
+    ) throws IOException {
+        writer.write(header);
+        writer.write(LINE_SEPARATOR);
+        for (String className : sorted(removed.keySet())) {
+            writeLine(writer, REMOVED + className + ConsistencyScope.ACCESS_SEPARATOR + flags(removed.get(className)));
+        }
+        for (String className : sorted(added.keySet())) {
+            writeLine(writer, ADDED + className + ConsistencyScope.ACCESS_SEPARATOR + flags(added.get(className)));
+        }
+    }
+
+    private static void writeLine(Writer writer, String line) throws IOException {
+        writer.write(line);
+        writer.write(LINE_SEPARATOR);
+    }
+
+    private static String flags(Set<Integer> flags) {
+        StringJoiner joiner = new StringJoiner(ACCESS_DELIMITER);
+        flags.stream().sorted().forEach(flag -> joiner.add(Integer.toString(flag)));
+        return joiner.toString();
+    }
+
+    private static String[] sorted(Collection<String> entries) {
+        String[] sorted = entries.toArray(new String[0]);
+        Arrays.sort(sorted);
+        return sorted;
+    }
+}
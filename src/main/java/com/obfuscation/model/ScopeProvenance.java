@@ -0,0 +1,386 @@
+package com.obfuscation.model;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+import java.util.function.LongConsumer;
+import java.util.function.LongFunction;
+
+/**
+ * Records which keep rules put each entry into a {@link ConsistencyScope}, to
+ * answer why a class or member is kept.
+ * <p>
+ * Rules are identified by their index in the evaluated configuration. Every
+ * entry maps to the sorted ids of the rules that kept it, stored as a plain
+ * int array, and a side table maps each id to the location of the rule in its
+ * configuration file. Access entries are recorded per flag combination, and
+ * written under the "{CLASS_SCOPE} -> {ACCESS}" key of the text format.
+ * </p>
+ * <p>
+ * Entries are keyed by the ids of the symbols of the recorded scopes: a
+ * class id, the packed ids of a member signature, or a class id packed with
+ * access flags. Scopes initialized over the same symbols, like the scratch
+ * scopes of {@code ProConfigAdapter}, are recorded without building any
+ * string; the strings are only built when the provenance is written.
+ * </p>
+ * <p>
+ * Rules must be recorded in ascending id order, which keeps every array
+ * sorted without searching it.
+ * </p>
+ * <p>
+ * When the classes come from the modules of an app bundle or APK set, the
+ * module that defines every class an entry names is also written, see
+ * {@link #recordModules(ClassIndex)}.
+ * </p>
+ */
+public class ScopeProvenance {
+    public static final String RULE_SECTION_HEADER = "[RULES]";
+    public static final String RULE_SEPARATOR = " <- ";
+    public static final String MODULE_SECTION_HEADER = "[MODULES]";
+    public static final String MODULE_SEPARATOR = " @ ";
+    /** Separates the locations of a rule that stands for several options of the configuration. */
+    public static final String LOCATION_DELIMITER = "; ";
+    public static final String UNKNOWN_LOCATION = "unknown";
+
+    private static final char LINE_SEPARATOR = '\n';
+    private static final String RULE_DELIMITER = ",";
+    private static final String LOCATION_SEPARATOR = " : ";
+    private static final int[] NO_RULES = new int[0];
+
+    private final String[] ruleLocations;
+
+    private ScopeSymbols symbols;
+    private CompactStringSet classKeys;
+    private CompactStringSet signatureKeys;
+    private final RuleTable classNames = new RuleTable();
+    private final RuleTable methodAccess = new RuleTable();
+    private final RuleTable fieldAccess = new RuleTable();
+    private final RuleTable methodSignatures = new RuleTable();
+    private final RuleTable fieldSignatures = new RuleTable();
+    private ClassIndex moduleIndex;
+
+    /**
+     * Creates an empty provenance for the given rules.
+     *
+     * @param ruleLocations the location of every rule, indexed by rule id. A
+     *                      location may be null if it is unknown.
+     */
+    public ScopeProvenance(List<String> ruleLocations) {
+        this.ruleLocations = ruleLocations.toArray(new String[0]);
+    }
+
+    /**
+     * Records the given rule as the origin of every entry of the given scope,
+     * which holds what the rule kept on its own. The symbols of the first
+     * initialized scope are adopted; the entries of scopes over other symbols
+     * are added to them.
+     */
+    public void record(int ruleId, ConsistencyScope contribution) {
+        if (symbols == null) {
+            useSymbols(contribution.classNames instanceof CompactStringSet
+                    ? ((CompactStringSet) contribution.classNames).symbols()
+                    : new ScopeSymbols());
+        }
+        recordStrings(classNames, contribution.classNames, classKeys, ruleId);
+        recordAccess(methodAccess, contribution.keepMethodsAccess, ruleId);
+        recordAccess(fieldAccess, contribution.keepFieldsAccess, ruleId);
+        recordStrings(methodSignatures, contribution.methodSignatures, signatureKeys, ruleId);
+        recordStrings(fieldSignatures, contribution.fieldSignatures, signatureKeys, ruleId);
+    }
+
+    private void useSymbols(ScopeSymbols symbols) {
+        this.symbols = symbols;
+        this.classKeys = new CompactStringSet(symbols);
+        this.signatureKeys = new CompactStringSet(symbols, ConsistencyScope.MEMBER_SEPARATOR);
+    }
+
+    /**
+     * Looks up the modules of the classes the entries name in the given index
+     * when writing. Nothing is written if it knows no module.
+     */
+    public void recordModules(ClassIndex classIndex) {
+        this.moduleIndex = classIndex;
+    }
+
+    /**
+     * Returns the number of rules.
+     */
+    public int ruleCount() {
+        return ruleLocations.length;
+    }
+
+    /**
+     * Returns the location of the given rule in its configuration file, or
+     * null if it is unknown.
+     */
+    public String ruleLocation(int ruleId) {
+        return ruleLocations[ruleId];
+    }
+
+    /**
+     * Returns the ids of the rules that keep the given class name as is.
+     */
+    public int[] classRules(String className) {
+        return symbols == null ? NO_RULES : classNames.get(classKeys.find(className));
+    }
+
+    /**
+     * Returns the ids of the rules that keep the methods with the given access
+     * flags in the given class scope, which is a class name or '*'.
+     */
+    public int[] methodAccessRules(String classScope, int access) {
+        return symbols == null ? NO_RULES : methodAccess.get(accessKey((int) classKeys.find(classScope), access));
+    }
+
+    /**
+     * Returns the ids of the rules that keep the fields with the given access
+     * flags in the given class scope, which is a class name or '*'.
+     */
+    public int[] fieldAccessRules(String classScope, int access) {
+        return symbols == null ? NO_RULES : fieldAccess.get(accessKey((int) classKeys.find(classScope), access));
+    }
+
+    /**
+     * Returns the ids of the rules that keep the given method signature.
+     */
+    public int[] methodSignatureRules(String signature) {
+        return symbols == null ? NO_RULES : methodSignatures.get(signatureKeys.find(signature));
+    }
+
+    /**
+     * Returns the ids of the rules that keep the given field signature.
+     */
+    public int[] fieldSignatureRules(String signature) {
+        return symbols == null ? NO_RULES : fieldSignatures.get(signatureKeys.find(signature));
+    }
+
+    /**
+     * Writes the rule table followed by the sections of the text format, where
+     * every entry is followed by the ids of the rules that kept it:
+     * <pre>
+     * [RULES]
+     * 0 : '-keep' in line 3 of file 'proguard-rules.pro'
+     * [CLASS-NAMES]
+     * com/sample/app/model/Range &lt;- 0
+     * </pre>
+     * A rule that replaced duplicated or subsumed options lists all their
+     * locations, separated by {@link #LOCATION_DELIMITER}, since each of them
+     * keeps the entries of the rule as well.
+     * Every section is sorted. If modules are known, a last section lists the
+     * module of every named class, as {@code com/sample/app/model/Range @ base}.
+     */
+    public void write(Writer writer) throws IOException {
+        if (symbols == null) {
+            useSymbols(new ScopeSymbols());
+        }
+        writeLine(writer, RULE_SECTION_HEADER);
+        for (int ruleId = 0; ruleId < ruleLocations.length; ruleId++) {
+            String location = ruleLocations[ruleId];
+            writeLine(writer, ruleId + LOCATION_SEPARATOR
+                    + (location == null ? UNKNOWN_LOCATION : location.replace(LINE_SEPARATOR, ' ')));
+        }
+        writeSection(writer, ConsistencyScope.CLASS_NAME_SECTION_HEADER, classNames, classKeys::decode);
+        writeSection(writer, ConsistencyScope.KEEP_METHOD_ACCESS_SECTION_HEADER, methodAccess, this::decodeAccess);
+        writeSection(writer, ConsistencyScope.KEEP_FIELD_ACCESS_SECTION_HEADER, fieldAccess, this::decodeAccess);
+        writeSection(writer, ConsistencyScope.KEEP_METHOD_SIGNATURE_SECTION_HEADER, methodSignatures,
+                signatureKeys::decode);
+        writeSection(writer, ConsistencyScope.KEEP_FIELD_SIGNATURE_SECTION_HEADER, fieldSignatures,
+                signatureKeys::decode);
+        if (moduleIndex != null) {
+            writeModules(writer);
+        }
+        writer.flush();
+    }
+
+    private void writeModules(Writer writer) throws IOException {
+        Map<String, String> modules = new TreeMap<>();
+        classNames.forEachKey(key -> addModule(modules, (int) key));
+        methodAccess.forEachKey(key -> addModule(modules, (int) (key >>> 32)));
+        fieldAccess.forEachKey(key -> addModule(modules, (int) (key >>> 32)));
+        methodSignatures.forEachKey(key -> addModule(modules, (int) (key >>> 32)));
+        fieldSignatures.forEachKey(key -> addModule(modules, (int) (key >>> 32)));
+        if (modules.isEmpty()) {
+            return;
+        }
+        writeLine(writer, MODULE_SECTION_HEADER);
+        for (Map.Entry<String, String> entry : modules.entrySet()) {
+            writeLine(writer, entry.getKey() + MODULE_SEPARATOR + entry.getValue());
+        }
+    }
+
+    private void addModule(Map<String, String> modules, int classId) {
+        String className = symbols.get(classId);
+        String module = moduleIndex.moduleOf(className);
+        if (module != null) {
+            modules.put(className, module);
+        }
+    }
+
+    /**
+     * Records the keys of the given strings, directly if they are a set over
+     * the symbols of this provenance, or through the given set of keys.
+     */
+    private void recordStrings(RuleTable rules, Set<String> strings, CompactStringSet keys, int ruleId) {
+        if (strings instanceof CompactStringSet && ((CompactStringSet) strings).symbols() == symbols) {
+            ((CompactStringSet) strings).forEachKey(key -> rules.append(key, ruleId));
+            return;
+        }
+        for (String string : strings) {
+            keys.add(string);
+            rules.append(keys.find(string), ruleId);
+        }
+    }
+
+    private void recordAccess(RuleTable rules, Map<String, Set<Integer>> access, int ruleId) {
+        if (access instanceof CompactAccessMap && ((CompactAccessMap) access).symbols() == symbols) {
+            CompactAccessMap compactAccess = (CompactAccessMap) access;
+            for (int index = 0; index < compactAccess.size(); index++) {
+                int classId = compactAccess.classIdAt(index);
+                for (int flag : compactAccess.flagsAt(index)) {
+                    rules.append(accessKey(classId, flag), ruleId);
+                }
+            }
+            return;
+        }
+        access.forEach((classScope, flags) -> {
+            int classId = symbols.intern(classScope);
+            for (int flag : flags) {
+                rules.append(accessKey(classId, flag), ruleId);
+            }
+        });
+    }
+
+    /**
+     * Packs a class id with access flags, or returns -1 if the class id is
+     * negative because the class was never recorded.
+     */
+    private static long accessKey(int classId, int access) {
+        return classId < 0 ? -1 : ((long) classId << 32) | (access & 0xFFFFFFFFL);
+    }
+
+    private String decodeAccess(long key) {
+        return symbols.get((int) (key >>> 32)) + ConsistencyScope.ACCESS_SEPARATOR + (int) key;
+    }
+
+    private static void writeSection(Writer writer, String header, RuleTable rules, LongFunction<String> decoder)
+            throws IOException {
+        writeLine(writer, header);
+        String[] entries = new String[rules.size];
+        int[][] entryRules = new int[rules.size][];
+        int[] count = new int[1];
+        rules.forEach((key, ids) -> {
+            entries[count[0]] = decoder.apply(key);
+            entryRules[count[0]++] = ids;
+        });
+        Integer[] order = new Integer[entries.length];
+        for (int index = 0; index < order.length; index++) {
+            order[index] = index;
+        }
+        Arrays.sort(order, Comparator.comparing(index -> entries[index]));
+        for (int index : order) {
+            StringJoiner joiner = new StringJoiner(RULE_DELIMITER);
+            for (int ruleId : entryRules[index]) {
+                joiner.add(Integer.toString(ruleId));
+            }
+            writeLine(writer, entries[index] + RULE_SEPARATOR + joiner);
+        }
+    }
+
+    private static void writeLine(Writer writer, String line) throws IOException {
+        writer.write(line);
+        writer.write(LINE_SEPARATOR);
+    }
+
+    /**
+     * The rule ids of every entry, in an open addressing table of the keys of
+     * the entries. Keys are never negative.
+     */
+    private static final class RuleTable {
+        private static final long EMPTY = -1L;
+        private static final int INITIAL_CAPACITY = 16;
+
+        private long[] keys = emptyKeys(INITIAL_CAPACITY);
+        private int[][] rules = new int[INITIAL_CAPACITY][];
+        private int size;
+
+        /**
+         * Returns the rule ids of the given key, none if it is negative.
+         */
+        int[] get(long key) {
+            if (key < 0) {
+                return NO_RULES;
+            }
+            int slot = slotOf(keys, key);
+            return keys[slot] == EMPTY ? NO_RULES : rules[slot];
+        }
+
+        /**
+         * Adds the given rule id to the given key, unless it is its last id
+         * already.
+         */
+        void append(long key, int ruleId) {
+            int slot = slotOf(keys, key);
+            int[] ids = rules[slot];
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                rules[slot] = new int[] { ruleId };
+                if (++size * 2 > keys.length) {
+                    rehash();
+                }
+            } else if (ids[ids.length - 1] != ruleId) {
+                ids = Arrays.copyOf(ids, ids.length + 1);
+                ids[ids.length - 1] = ruleId;
+                rules[slot] = ids;
+            }
+        }
+
+        void forEachKey(LongConsumer action) {
+            for (long key : keys) {
+                if (key != EMPTY) {
+                    action.accept(key);
+                }
+            }
+        }
+
+        void forEach(EntryConsumer action) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != EMPTY) {
+                    action.accept(keys[slot], rules[slot]);
+                }
+            }
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            int[][] oldRules = rules;
+            keys = emptyKeys(oldKeys.length * 2);
+            rules = new int[keys.length][];
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != EMPTY) {
+                    int newSlot = slotOf(keys, oldKeys[slot]);
+                    keys[newSlot] = oldKeys[slot];
+                    rules[newSlot] = oldRules[slot];
+                }
+            }
+        }
+
+        private static int slotOf(long[] keys, long key) {
+            int mask = keys.length - 1;
+            int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private static long[] emptyKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+
+        interface EntryConsumer {
+            void accept(long key, int[] rules);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.obfuscation.model;
+
+import java.io.Serializable;
+
+/**
+ * The strings of a {@link ConsistencyScope}, each stored once and numbered
+ * from 0 in the order they were first added.
+ * <p>
+ * The collections of a scope share one symbol table, so a class name that is
+ * kept, has access rules and owns kept members is stored once. Ids are never
+ * reused, even after the entries that referenced a string were removed.
+ * </p>
+ */
+final class ScopeSymbols implements Serializable {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] strings = new String[INITIAL_CAPACITY];
+    private int size;
+    /** The id + 1 of the string in each slot, 0 for an empty slot. */
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+
+    /**
+     * Returns the id of the given string, adding it if needed.
+     */
+    int intern(String string) {
+        int slot = slotOf(string);
+        if (table[slot] != 0) {
+            return table[slot] - 1;
+        }
+        if (size == strings.length) {
+            String[] grown = new String[size * 2];
+            System.arraycopy(strings, 0, grown, 0, size);
+            strings = grown;
+        }
+        strings[size] = string;
+        table[slot] = ++size;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return size - 1;
+    }
+
+    /**
+     * Returns the id of the given string, or -1 if it was never added.
+     */
+    int find(String string) {
+        return table[slotOf(string)] - 1;
+    }
+
+    String get(int id) {
+        return strings[id];
+    }
+
+    private int slotOf(String string) {
+        int mask = table.length - 1;
+        int slot = mix(string.hashCode()) & mask;
+        while (table[slot] != 0 && !strings[table[slot] - 1].equals(string)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        int[] rehashed = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = mix(strings[id].hashCode()) & mask;
+            while (rehashed[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed[slot] = id + 1;
+        }
+        table = rehashed;
+    }
+
+    static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -1,32 +1,136 @@
 package com.obfuscation.options;
 
+import com.obfuscation.daemon.DaemonServer;
+import com.obfuscation.utils.Log;
 import joptsimple.OptionParser;
 
+import java.util.Arrays;
+import java.util.List;
+
 @SuppressWarnings("TextBlockMigration")
 public class ParserAssembler {
+    /**
+     * Options that are required unless the daemon is started or stopped, or a batch is run.
+     */
+    public static final List<String> PRIMARY_OPTIONS = Arrays.asList("apk", "config", "out");
 
     public static void run(OptionParser parser) {
+        //+------------------------------------------------------------------------------------------+
+        // Daemon Options (Declared first, the required options depend on them)
+        //+------------------------------------------------------------------------------------------+
+        parser.accepts("daemon",
+                "Start a resident daemon that keeps recently used APK indexes in memory.");
+        parser.accepts("client",
+                "Forward --apk, --config, --out and the output options to a running daemon instead of processing in place.");
+        parser.accepts("stop-daemon",
+                "Stop a running daemon.");
+        parser.accepts("port",
+                "Loopback port of the daemon.")
+                .withRequiredArg()
+                .ofType(Integer.class)
+                .defaultsTo(DaemonServer.DEFAULT_PORT);
+        parser.accepts("cache-budget",
+                "Memory the daemon may use for cached APK indexes, in megabytes.")
+                .withRequiredArg()
+                .ofType(Integer.class)
+                .defaultsTo(512);
+        parser.accepts("off-heap",
+                "Keep the cached APK indexes of the daemon off the heap : DIRECT (direct memory) or MAPPED (memory-mapped temporary files).")
+                .availableIf("daemon")
+                .withRequiredArg()
+                .ofType(String.class);
+
+        //+------------------------------------------------------------------------------------------+
+        // Batch Options (Declared first, the required options depend on them)
+        //+------------------------------------------------------------------------------------------+
+        parser.accepts("batch",
+                "Run every (APK, config) job of a JSON manifest in one process, reading each APK and config once.")
+                .withRequiredArg()
+                .ofType(String.class)
+                .describedAs("manifest.json");
+
         //+------------------------------------------------------------------------------------------+
         // Required Options (Order-sensitive)
         //+------------------------------------------------------------------------------------------+
         parser.accepts("apk")
+                .requiredUnless("daemon", "stop-daemon", "batch")
                 .withRequiredArg()
                 .ofType(String.class)
-                .required()
-                .describedAs("Input apk file that takes proguard config");
+                .describedAs("Input apk file that takes proguard config, an aab or apks file to check every module at once, or a jar or aar file to check library rules before dexing");
 
         parser.accepts("config")
+                .requiredUnless("daemon", "stop-daemon", "batch")
                 .withRequiredArg()
                 .ofType(String.class)
-                .required()
                 .describedAs("Proguard configuration file to examine.");
 
         parser.accepts("out")
+                .requiredUnless("daemon", "stop-daemon", "batch")
                 .withRequiredArg()
                 .ofType(String.class)
-                .required()
                 .describedAs("Output directory where the parsed and adapted data will be saved.");
 
+        //+------------------------------------------------------------------------------------------+
+        // Output Options
+        //+------------------------------------------------------------------------------------------+
+        parser.accepts("gzip",
+                "Compress the output file with gzip (adds a '.gz' suffix).");
+        parser.accepts("binary",
+                "Write the output file in the compact, memory-mappable binary format (adds a '.bin' suffix).");
+        parser.accepts("provenance",
+                "Also write which keep rules kept each entry, with their location (adds a '.provenance' file).");
+
+        parser.accepts("profile-rules",
+                "Also write what each keep rule cost, ranked from the most expensive rule (adds a '.profile' file).");
+        parser.accepts("metrics",
+                "Write the phase timings, counters, allocations and peak heap usage of the run to this file,\n"
+                + "in the Prometheus text format if it ends with '.prom' and as JSON otherwise.")
+                .withRequiredArg()
+                .ofType(String.class);
+
+        //+------------------------------------------------------------------------------------------+
+        // Diff Options
+        //+------------------------------------------------------------------------------------------+
+        parser.accepts("diff-cache",
+                "Only re-evaluate the classes that changed since the run that wrote this cache file,\n"
+                + "write a '.delta' file next to the output, and update the cache.")
+                .availableUnless("client")
+                .withRequiredArg()
+                .ofType(String.class);
+        parser.accepts("diff-base",
+                "Previous build of the APK, analyzed first if the diff cache doesn't exist yet.")
+                .availableIf("diff-cache")
+                .withRequiredArg()
+                .ofType(String.class);
+
+        //+------------------------------------------------------------------------------------------+
+        // Memory Options
+        //+------------------------------------------------------------------------------------------+
+        parser.accepts("streaming",
+                "Match each class while the dex files are read instead of collecting them first,\n"
+                + "so memory only grows with what is kept.")
+                .availableUnless("provenance", "profile-rules", "diff-cache", "client");
+        parser.accepts("memory-budget",
+                "Heap the class index may use, in megabytes. Classes are encoded into a compact index\n"
+                + "as the dex files are read, which is spilled to a memory-mapped file past the budget.\n"
+                + "Its strings and a record per class stay on the heap and aren't bounded by it.")
+                .availableUnless("streaming", "diff-cache", "client")
+                .withRequiredArg()
+                .ofType(Integer.class);
+
+        //+------------------------------------------------------------------------------------------+
+        // Logging Options
+        //+------------------------------------------------------------------------------------------+
+        parser.accepts("log-level",
+                "Lowest level that is logged : DEBUG, INFO, WARN, IMPORTANT or ERROR.")
+                .withRequiredArg()
+                .ofType(String.class)
+                .defaultsTo(Log.Level.INFO.name());
+        parser.accepts("log-json",
+                "Also write the log to this file, one JSON object per line.")
+                .withRequiredArg()
+                .ofType(String.class);
+
         //+------------------------------------------------------------------------------------------+
         // Etc
         //+------------------------------------------------------------------------------------------+
@@ -27,16 +27,47 @@ public class PrettyHelpFormatter implements HelpFormatter {
         String footer = "\n";
 
         List<String> required = new ArrayList<>();
+        List<String> optional = new ArrayList<>();
 
         for (OptionDescriptor option : map.values()
                 .stream()
-                .filter(OptionDescriptor::isRequired)
+                .distinct()
                 .collect(Collectors.toList())
         ) {
-            beautifyRequired(option, required);
+            if (option.isRequired() || option.options().stream().anyMatch(ParserAssembler.PRIMARY_OPTIONS::contains)) {
+                beautifyRequired(option, required);
+            } else if (!option.representsNonOptions()) {
+                beautifyOptional(option, optional);
+            }
         }
 
-        return header + String.join("\n", required) + "\n" + footer + "\n";
+        return header + String.join("\n", required) + "\n"
+                + (optional.isEmpty() ? "" : "\n" + String.join("\n", optional) + "\n")
+                + footer + "\n";
+    }
+
+    private static void beautifyOptional(OptionDescriptor option, List<String> optional) {
+        String optionDetails = "  " + option.options().stream()
+                .map(o -> "--" + o)
+                .collect(Collectors.joining(", "));
+        if (option.acceptsArguments()) {
+            optionDetails += " <" + (option.argumentTypeIndicator().isEmpty()
+                    ? "arg"
+                    : option.argumentTypeIndicator().substring(option.argumentTypeIndicator().lastIndexOf('.') + 1)) + ">";
+        }
+        optional.add(optionDetails);
+
+        if (!option.defaultValues().isEmpty()) {
+            optional.add(INDENT + "(default: " + option.defaultValues() + ")");
+        }
+        String description = option.description().isEmpty()
+                ? option.argumentDescription()
+                : option.description();
+        if (!description.isEmpty()) {
+            Arrays.asList(description.split("\n")).forEach(
+                    line -> optional.add(INDENT + line)
+            );
+        }
     }
 
     private static void beautifyRequired(OptionDescriptor option, List<String> required) {
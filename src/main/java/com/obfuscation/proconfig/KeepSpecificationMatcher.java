@@ -0,0 +1,537 @@
+package com.obfuscation.proconfig;
+
+import com.googlecode.d2j.node.DexAnnotationNode;
+import com.googlecode.d2j.node.DexClassNode;
+import com.googlecode.d2j.node.DexFieldNode;
+import com.googlecode.d2j.node.DexMethodNode;
+import com.obfuscation.model.ClassIndex;
+import com.obfuscation.model.ClassNamePattern;
+import com.obfuscation.model.ConsistencyScope;
+import com.obfuscation.proconfig.specs.KeepClassSpecification;
+import com.obfuscation.proconfig.specs.MemberSpecification;
+import com.obfuscation.utils.Utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Matches keep rules against the classes of a {@link ClassIndex} and collects
+ * what they keep into a {@link ConsistencyScope}.
+ * <p>
+ * Every class is tested once per rule against all class conditions of the
+ * rule (name pattern, access flags, annotation, super class and members), and
+ * only the matching classes are collected. The matcher holds no state besides
+ * the index, so it can match any number of rules into separate scopes in
+ * parallel.
+ * </p>
+ */
+public class KeepSpecificationMatcher {
+    private static final String PATTERN_ALLOW_SUBPACKAGES = "**";
+    private static final String PATTERN_ALL_IN_THIS_PACKAGE = "*";
+    public static final String PATTERN_WILDCARD = "*";
+    private static final char PACKAGE_SEPARATOR = '/';
+
+    private final ClassIndex classIndex;
+
+    public KeepSpecificationMatcher(ClassIndex classIndex) {
+        this.classIndex = classIndex;
+    }
+
+    /**
+     * Collects the classes that should not be obfuscated according to the
+     * given keep class rule.
+     *
+     * @param spec  the {@link KeepClassSpecification} containing the rules for
+     *              which classes should be kept from obfuscation.
+     * @param scope the scope to collect the kept class names into.
+     * @return the number of classes of the index the rule matched, which is 0
+     *         if the keep stage doesn't apply or names a single class.
+     */
+    public int matchKeeps(KeepClassSpecification spec, ConsistencyScope scope) {
+        return matchKeeps(spec, scope, null);
+    }
+
+    /**
+     * Collects the classes the given keep class rule keeps, like
+     * {@link #matchKeeps(KeepClassSpecification, ConsistencyScope)}, and
+     * counts the candidates the stage visits.
+     *
+     * @param candidates incremented for every class whose name matches the
+     *                   pattern of the rule, and which is then matched
+     *                   against its other conditions, or null.
+     */
+    public int matchKeeps(KeepClassSpecification spec, ConsistencyScope scope, LongAdder candidates) {
+        if (!isKeepRule(spec)) {
+            return 0;
+        }
+
+        if (isExactClassName(spec.className)) {
+            scope.classNames.add(spec.className);
+            return 0;
+        }
+
+        List<String> matched = new ArrayList<>();
+        boolean members = !isNullOrEmpty(spec.methodSpecifications) || !isNullOrEmpty(spec.fieldSpecifications);
+        classIndex.forEach(classNameFilter(spec.className), members, (className, classNode) -> {
+            if (candidates != null) {
+                candidates.increment();
+            }
+            if (matchesKeep(spec, className, classNode)) {
+                matched.add(className);
+            }
+        });
+        collectKeeps(matched, scope);
+        return matched.size();
+    }
+
+    /**
+     * Collects the class members that should not be obfuscated according to
+     * the given keep class member rule.
+     *
+     * @param spec  the {@link KeepClassSpecification} containing the rules for
+     *              which class members should be kept from obfuscation.
+     * @param scope the scope to collect the kept members and access flags into.
+     * @return the number of classes of the index the rule matched, which is 0
+     *         if the keep members stage doesn't apply or names a single class.
+     */
+    public int matchKeepMembers(KeepClassSpecification spec, ConsistencyScope scope) {
+        return matchKeepMembers(spec, scope, null);
+    }
+
+    /**
+     * Collects the class members the given keep class member rule keeps, like
+     * {@link #matchKeepMembers(KeepClassSpecification, ConsistencyScope)},
+     * and counts the candidates the stage visits.
+     *
+     * @param candidates incremented for every class whose name matches the
+     *                   pattern of the rule, and which is then matched
+     *                   against its other conditions, or null.
+     */
+    public int matchKeepMembers(KeepClassSpecification spec, ConsistencyScope scope, LongAdder candidates) {
+        if (!isKeepMembersRule(spec)) {
+            return 0;
+        }
+
+        if (isExactClassName(spec.className)) {
+            scope.classNames.add(spec.className);
+            return 0;
+        }
+
+        // The signatures are collected as the classes are matched, so the nodes
+        // an index decodes on demand are dropped right away
+        List<String> matchedNames = new ArrayList<>();
+        boolean members = hasSignatures(spec.methodSpecifications) || hasSignatures(spec.fieldSpecifications);
+        classIndex.forEach(classNameFilter(spec.className), members, (className, classNode) -> {
+            if (candidates != null) {
+                candidates.increment();
+            }
+            if (matchesKeepMembers(spec, className, classNode)) {
+                matchedNames.add(className);
+                collectMemberSignatures(spec, classNode, scope);
+            }
+        });
+        collectMemberAccess(spec, matchedNames, matchedNames.size() == classIndex.size(), scope);
+        return matchedNames.size();
+    }
+
+    private static boolean isNullOrEmpty(List<MemberSpecification> memberSpecs) {
+        return memberSpecs == null || memberSpecs.isEmpty();
+    }
+
+    /**
+     * Returns whether any of the given member specifications names a single
+     * member, which is looked up among the members of the matched classes.
+     */
+    private static boolean hasSignatures(List<MemberSpecification> memberSpecs) {
+        if (memberSpecs != null) {
+            for (MemberSpecification memberSpec : memberSpecs) {
+                if (memberSpec.name != null && memberSpec.descriptor != null) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the keep stage of the given rule keeps any classes.
+     */
+    public static boolean isKeepRule(KeepClassSpecification spec) {
+        if (spec.allowObfuscation) {
+            return false;
+        }
+        if (!spec.markClasses && !spec.markConditionally) {
+            return false;
+        }
+
+        return spec.className != null ||
+               spec.requiredSetAccessFlags != 0 ||
+               spec.annotationType != null ||
+               spec.extendsClassName != null;
+    }
+
+    /**
+     * Returns whether the keep members stage of the given rule keeps any
+     * classes or class members.
+     */
+    public static boolean isKeepMembersRule(KeepClassSpecification spec) {
+        if (spec.allowObfuscation) {
+            return false;
+        }
+        if (!spec.markClassMembers) {
+            return false;
+        }
+
+        return spec.className != null ||
+               spec.requiredSetAccessFlags != 0 ||
+               spec.annotationType != null ||
+               spec.extendsClassName != null ||
+               spec.methodSpecifications != null ||
+               spec.fieldSpecifications != null;
+    }
+
+    /**
+     * Returns whether the class name of a rule names a single class, which is
+     * kept as is without looking at the class index.
+     */
+    public static boolean isExactClassName(String className) {
+        return className != null &&
+               !className.endsWith(PATTERN_ALLOW_SUBPACKAGES) &&
+               !className.endsWith(PATTERN_ALL_IN_THIS_PACKAGE);
+    }
+
+    /**
+     * Returns whether the keep stage of the given rule, which must not have an
+     * exact class name, matches the given class. The result only depends on
+     * the rule and the class itself.
+     */
+    public static boolean matchesKeep(KeepClassSpecification spec, String className, DexClassNode classNode) {
+        return matchesClass(spec, className, classNode) &&
+               matchesMethodSpecs(spec, classNode) &&
+               matchesFieldSpecs(spec, classNode);
+    }
+
+    /**
+     * Returns whether the keep members stage of the given rule, which must not
+     * have an exact class name, matches the given class. The result only
+     * depends on the rule and the class itself.
+     */
+    public static boolean matchesKeepMembers(KeepClassSpecification spec, String className, DexClassNode classNode) {
+        return matchesClass(spec, className, classNode);
+    }
+
+    /**
+     * Collects the classes matched by the keep stage of a rule. Nothing is kept
+     * if the rule matched every class of the index.
+     */
+    public void collectKeeps(Collection<String> matchedNames, ConsistencyScope scope) {
+        //Not filtered
+        if (matchedNames.size() == classIndex.size()) {
+            return;
+        }
+
+        scope.classNames.addAll(matchedNames);
+    }
+
+    /**
+     * Collects the class members kept by the keep members stage of a rule from
+     * the matched classes. Access rules are collected for the wildcard entry if
+     * the rule matched every class of the index.
+     *
+     * @param matchedNames the names of the matched classes.
+     * @param matchedNodes the nodes of the matched classes, in the same order.
+     */
+    public void collectKeepMembers(
+            KeepClassSpecification spec,
+            List<String> matchedNames,
+            List<DexClassNode> matchedNodes,
+            ConsistencyScope scope
+    ) {
+        /// -keepclassmembers class * {
+        ///   public static <fields>;
+        ///   public *;
+        /// }
+        /// Keep the classes members from every class that,
+        /// 1. fields that are public static
+        /// 2. All public methods and fields
+        for (DexClassNode classNode : matchedNodes) {
+            collectMemberSignatures(spec, classNode, scope);
+        }
+        collectMemberAccess(spec, matchedNames, matchedNames.size() == classIndex.size(), scope);
+    }
+
+    /**
+     * Collects the method and field signatures the keep members stage of a
+     * rule keeps from one matched class. Unlike access rules, they don't
+     * depend on the other matched classes.
+     */
+    public static void collectMemberSignatures(KeepClassSpecification spec, DexClassNode classNode, ConsistencyScope scope) {
+        if (spec.methodSpecifications != null) {
+            for (MemberSpecification methodSpec : spec.methodSpecifications) {
+                collectMethodSignatures(methodSpec, classNode, scope);
+            }
+        }
+        if (spec.fieldSpecifications != null) {
+            for (MemberSpecification fieldSpec : spec.fieldSpecifications) {
+                collectFieldSignatures(fieldSpec, classNode, scope);
+            }
+        }
+    }
+
+    /**
+     * Collects the access rules the keep members stage of a rule keeps for the
+     * matched classes, or for the wildcard entry if it matched every class.
+     */
+    public static void collectMemberAccess(
+            KeepClassSpecification spec,
+            List<String> matchedNames,
+            boolean matchesAll,
+            ConsistencyScope scope
+    ) {
+        if (spec.methodSpecifications != null) {
+            for (MemberSpecification methodSpec : spec.methodSpecifications) {
+                if (isAccessRule(methodSpec)) {
+                    accumulateAccess(scope.keepMethodsAccess, matchedNames, matchesAll, methodSpec.requiredSetAccessFlags);
+                }
+            }
+        }
+        if (spec.fieldSpecifications != null) {
+            for (MemberSpecification fieldSpec : spec.fieldSpecifications) {
+                if (isAccessRule(fieldSpec)) {
+                    accumulateAccess(scope.keepFieldsAccess, matchedNames, matchesAll, fieldSpec.requiredSetAccessFlags);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether the given member specification keeps members by their
+     * access flags rather than by their signature.
+     */
+    private static boolean isAccessRule(MemberSpecification memberSpec) {
+        return memberSpec.requiredSetAccessFlags != 0 &&
+               (memberSpec.name == null || memberSpec.descriptor == null);
+    }
+
+    private static void collectMethodSignatures(
+            MemberSpecification methodSpec,
+            DexClassNode classNode,
+            ConsistencyScope scope
+    ) {
+        if (methodSpec.name == null || methodSpec.descriptor == null || classNode.methods == null) {
+            return;
+        }
+        // The name and descriptor of every matched method are those of the spec
+        String nameAndDescriptor = methodSpec.name + methodSpec.descriptor;
+        int requiredAccess = methodSpec.requiredSetAccessFlags;
+        for (DexMethodNode m : classNode.methods) {
+            if (!m.method.getName().equals(methodSpec.name) ||
+                !m.method.getDesc().equals(methodSpec.descriptor)
+            ) {
+                continue;
+            }
+            //If no access flags are specified
+            if (requiredAccess == 0) {
+                scope.addMethodSignature(m.method.getOwner(), nameAndDescriptor);
+            } else if ((m.access & requiredAccess) != requiredAccess) {
+                scope.addMethodSignature(Utils.normalizeClassName(m.method.getOwner()), nameAndDescriptor);
+            }
+        }
+    }
+
+    private static void collectFieldSignatures(
+            MemberSpecification fieldSpec,
+            DexClassNode classNode,
+            ConsistencyScope scope
+    ) {
+        if (fieldSpec.name == null || fieldSpec.descriptor == null || classNode.fields == null) {
+            return;
+        }
+        int requiredAccess = fieldSpec.requiredSetAccessFlags;
+        for (DexFieldNode f : classNode.fields) {
+            if (!f.field.getName().equals(fieldSpec.name) ||
+                !f.field.getType().equals(fieldSpec.descriptor)
+            ) {
+                continue;
+            }
+            //If no access flags are specified
+            if (requiredAccess == 0 || (f.access & requiredAccess) != requiredAccess) {
+                scope.addFieldSignature(f.field.getOwner(), fieldSpec.name);
+            }
+        }
+    }
+
+    /**
+     * Accumulates the given access flags for every matched class, or for the
+     * wildcard entry if every class matched.
+     */
+    private static void accumulateAccess(
+            Map<String, Set<Integer>> nestedMap,
+            List<String> matchedNames,
+            boolean matchesAll,
+            int accessFlags
+    ) {
+        if (matchesAll) {
+            nestedMap.computeIfAbsent(PATTERN_WILDCARD, k -> new HashSet<>()).add(accessFlags);
+            return;
+        }
+        for (String className : matchedNames) {
+            nestedMap.computeIfAbsent(className, k -> new HashSet<>()).add(accessFlags);
+        }
+    }
+
+    /**
+     * Returns whether the given class matches the class name pattern, access
+     * flags, annotation and super class of the given rule.
+     */
+    static boolean matchesClass(KeepClassSpecification spec, String className, DexClassNode classNode) {
+        return matchesClassName(spec.className, className) &&
+               (classNode.access & spec.requiredSetAccessFlags) == spec.requiredSetAccessFlags &&
+               (spec.annotationType == null || matchesAnnotationType(spec.annotationType, classNode)) &&
+               (spec.extendsClassName == null || matchesExtendingClassName(spec.extendsClassName, classNode));
+    }
+
+    /**
+     * Returns a filter of the class names the given pattern matches, as
+     * {@link #matchesClassName(String, String)} does. It is a
+     * {@link ClassNamePattern}, which indexes can test on the encoded names,
+     * unless the pattern matches every class or its package has wildcards,
+     * which are matched as they are.
+     */
+    static Predicate<String> classNameFilter(String pattern) {
+        ClassNamePattern classNamePattern = classNamePattern(pattern);
+        return classNamePattern != null ? classNamePattern : className -> matchesClassName(pattern, className);
+    }
+
+    /**
+     * Returns the {@link ClassNamePattern} equivalent to the given pattern of
+     * a rule, which must not name a single class, or null if there is none.
+     */
+    static ClassNamePattern classNamePattern(String pattern) {
+        if (pattern == null) {
+            return null;
+        }
+        String suffix = pattern.endsWith(PATTERN_ALLOW_SUBPACKAGES) ?
+                PATTERN_ALLOW_SUBPACKAGES :
+                PATTERN_ALL_IN_THIS_PACKAGE;
+        String packagePrefix = pattern.substring(0, pattern.length() - suffix.length());
+        return ClassNamePattern.hasWildcards(packagePrefix) ? null : new ClassNamePattern(packagePrefix + suffix);
+    }
+
+    /**
+     * Returns whether the given class name matches the given pattern, ending
+     * with a double asterisk (**) for all classes in a package and its
+     * subpackages, or a single asterisk (*) for all classes in a package.
+     */
+    private static boolean matchesClassName(String pattern, String className) {
+        if (pattern == null) {
+            return true;
+        }
+        if (pattern.endsWith(PATTERN_ALLOW_SUBPACKAGES)) {
+            int packageLength = pattern.length() - PATTERN_ALLOW_SUBPACKAGES.length();
+            return className.regionMatches(0, pattern, 0, packageLength);
+        }
+        int packageLength = pattern.length() - PATTERN_ALL_IN_THIS_PACKAGE.length();
+        return className.regionMatches(0, pattern, 0, packageLength) &&
+               className.indexOf(PACKAGE_SEPARATOR, packageLength) < 0;
+    }
+
+    /**
+     * Returns whether the given class has an annotation whose type contains
+     * the given annotation type.
+     */
+    private static boolean matchesAnnotationType(String annotationType, DexClassNode classNode) {
+        if (classNode.anns == null) {
+            return false;
+        }
+        for (DexAnnotationNode annotationNode : classNode.anns) {
+            if (Utils.normalizeClassName(annotationNode.type).contains(annotationType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the given class directly extends or implements the given
+     * class.
+     */
+    private static boolean matchesExtendingClassName(String extendsClassName, DexClassNode classNode) {
+        if (classNode.superClass != null &&
+            Utils.normalizeClassName(classNode.superClass).equals(extendsClassName)
+        ) {
+            return true;
+        }
+        if (classNode.interfaceNames == null) {
+            return false;
+        }
+        for (String interfaceName : classNode.interfaceNames) {
+            if (Utils.normalizeClassName(interfaceName).equals(extendsClassName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the given class has methods that match any of the method
+     * specifications of the given rule. Access flags, name and descriptor may
+     * each be matched by a different method.
+     */
+    private static boolean matchesMethodSpecs(KeepClassSpecification spec, DexClassNode classNode) {
+        if (spec.methodSpecifications == null || spec.methodSpecifications.isEmpty()) {
+            return true;
+        }
+        if (classNode.methods == null || classNode.methods.isEmpty()) {
+            return false;
+        }
+        for (MemberSpecification methodSpec : spec.methodSpecifications) {
+            int requiredAccess = methodSpec.requiredSetAccessFlags;
+            boolean accessMatch = requiredAccess == 0;
+            boolean methodNameMatch = methodSpec.name == null;
+            boolean methodDescMatch = methodSpec.descriptor == null;
+            for (DexMethodNode m : classNode.methods) {
+                accessMatch |= (m.access & requiredAccess) == requiredAccess;
+                methodNameMatch |= methodSpec.name != null && methodSpec.name.equals(m.method.getName());
+                methodDescMatch |= methodSpec.descriptor != null && methodSpec.descriptor.equals(m.method.getDesc());
+            }
+            if (accessMatch && methodNameMatch && methodDescMatch) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the given class has fields that match any of the field
+     * specifications of the given rule. Access flags and name may each be
+     * matched by a different field.
+     */
+    private static boolean matchesFieldSpecs(KeepClassSpecification spec, DexClassNode classNode) {
+        if (spec.fieldSpecifications == null || spec.fieldSpecifications.isEmpty()) {
+            return true;
+        }
+        if (classNode.fields == null || classNode.fields.isEmpty()) {
+            return false;
+        }
+        for (MemberSpecification fieldSpec : spec.fieldSpecifications) {
+            int requiredAccess = fieldSpec.requiredSetAccessFlags;
+            boolean accessMatch = requiredAccess == 0;
+            boolean fieldNameMatch = fieldSpec.name == null;
+            for (DexFieldNode f : classNode.fields) {
+                accessMatch |= (f.access & requiredAccess) == requiredAccess;
+                fieldNameMatch |= fieldSpec.name != null && fieldSpec.name.equals(f.field.getName());
+            }
+            if (accessMatch && fieldNameMatch) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -39,6 +39,12 @@ public class ProConfig implements Serializable {
      */
     public List<KeepClassSpecification> keep;
 
+    /**
+     * A list of {@link ProConfigInclude} instances, one for every '-include'
+     * or '@' directive of the parsed file, in declaration order.
+     */
+    public List<ProConfigInclude> includes;
+
     ///////////////////////////////////////////////////////////////////////////
     // Obfuscation options.
     ///////////////////////////////////////////////////////////////////////////
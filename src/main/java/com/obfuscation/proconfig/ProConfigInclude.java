@@ -0,0 +1,36 @@
+package com.obfuscation.proconfig;
+
+import java.io.File;
+import java.io.Serializable;
+
+/**
+ * An '-include' or '@' directive found while parsing a configuration file.
+ * <p>
+ * The parser only records where the directive appeared; following it is up to
+ * {@link ProConfigLoader}, which splices the included rules back in at
+ * {@link #keepIndex}.
+ * </p>
+ */
+public class ProConfigInclude implements Serializable {
+    /**
+     * The canonical file that is included.
+     */
+    public final File file;
+
+    /**
+     * The number of keep specifications of the including file that precede
+     * the directive.
+     */
+    public final int keepIndex;
+
+    /**
+     * A readable description of where the directive was declared.
+     */
+    public final String location;
+
+    public ProConfigInclude(File file, int keepIndex, String location) {
+        this.file = file;
+        this.keepIndex = keepIndex;
+        this.location = location;
+    }
+}
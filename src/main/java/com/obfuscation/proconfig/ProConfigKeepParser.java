@@ -99,10 +99,14 @@ public class ProConfigKeepParser implements AutoCloseable {
             else if (ConfigurationConstants.KEEP_CLASSES_WITH_MEMBER_NAMES_OPTION .startsWith(nextWord)) proConfig.keep      = parseKeepClassSpecificationArguments(proConfig.keep, false, true,  false, true, null);
             else if (ConfigurationConstants.KEEP_CODE_OPTION                      .startsWith(nextWord)) proConfig.keep      = parseKeepClassSpecificationArguments(proConfig.keep, false, false, true,  false, null);
             else if (ConfigurationConstants.DONT_OBFUSCATE_OPTION                 .startsWith(nextWord)) proConfig.obfuscate = parseNoArgument(false);
+            else if (ConfigurationConstants.AT_DIRECTIVE                          .startsWith(nextWord) ||
+                     ConfigurationConstants.INCLUDE_DIRECTIVE                     .startsWith(nextWord)) proConfig.includes  = parseIncludeArgument(proConfig.includes, proConfig.keep);
+            else if (ConfigurationConstants.BASE_DIRECTORY_DIRECTIVE              .startsWith(nextWord)) parseBaseDirectoryArgument();
             else {
                 while (nextWord != null) {
                     readNextWord();
-                    if (nextWord != null && nextWord.startsWith("-")) {
+                    if (nextWord != null && (nextWord.startsWith(ConfigurationConstants.OPTION_PREFIX) ||
+                                             nextWord.equals(ConfigurationConstants.AT_DIRECTIVE))) {
                         continue parseWord;
                     }
                 }
@@ -128,6 +132,68 @@ public class ProConfigKeepParser implements AutoCloseable {
         return value;
     }
 
+    /**
+     * Parses an include directive and records the included file.
+     * For example: -include "proguard-android.txt" or @consumer-rules.pro
+     * <p>
+     * The included file is not read here; {@link ProConfigLoader} parses it
+     * separately and splices its rules in at the current keep position.
+     * </p>
+     * @throws RuntimeException if the file name is missing.
+     * @throws IOException    if an IO error occurs while reading the file name.
+     */
+    private List<ProConfigInclude> parseIncludeArgument(
+            List<ProConfigInclude> includes,
+            List<KeepClassSpecification> keepClassSpecifications
+    ) throws RuntimeException, IOException {
+        // Create a new List if necessary.
+        if (includes == null) {
+            includes = new ArrayList<>();
+        }
+
+        // Read the configuration file name.
+        readNextWord("configuration file name", true, true, false);
+
+        includes.add(new ProConfigInclude(
+                file(nextWord).getCanonicalFile(),
+                keepClassSpecifications == null ? 0 : keepClassSpecifications.size(),
+                reader.locationDescription()
+        ));
+
+        readNextWord();
+
+        return includes;
+    }
+
+    /**
+     * Parses a base directory directive. Relative file names of subsequent
+     * include directives are resolved against it.
+     * For example: -basedirectory "../config"
+     * @throws RuntimeException if the directory name is missing.
+     * @throws IOException    if an IO error occurs while reading the directory name.
+     */
+    private void parseBaseDirectoryArgument() throws RuntimeException, IOException {
+        // Read the base directory name.
+        readNextWord("base directory name", true, true, false);
+
+        reader.setBaseDir(file(nextWord));
+
+        readNextWord();
+    }
+
+    /**
+     * Returns a File for the given file name, resolving system properties and
+     * relative names against the base directory of the reader.
+     */
+    private File file(String fileName) throws RuntimeException {
+        File file = new File(replaceSystemProperties(fileName));
+        if (!file.isAbsolute()) {
+            file = new File(reader.getBaseDir(), file.getPath());
+        }
+
+        return file;
+    }
+
     /**
      * Parses and adds a conditional class specification to keep other classes
      * and class members.
@@ -212,6 +278,9 @@ public class ProConfigKeepParser implements AutoCloseable {
         boolean markDescriptorClasses = false;
         boolean allowObfuscation      = false;
 
+        // Remember where the keep option is, before reading its arguments.
+        String location = reader.locationDescription();
+
         // Read the keep modifiers.
         while (true) {
             readNextWord("keyword '" + ConfigurationConstants.CLASS_KEYWORD +
@@ -253,7 +322,7 @@ public class ProConfigKeepParser implements AutoCloseable {
         ClassSpecification classSpecification = parseClassSpecificationArguments(false, true, false);
 
         // Create and return the keep configuration.
-        return new KeepClassSpecification(markClasses,
+        KeepClassSpecification keepClassSpecification = new KeepClassSpecification(markClasses,
                 markMembers,
                 markConditionally,
                 markDescriptorClasses,
@@ -261,6 +330,8 @@ public class ProConfigKeepParser implements AutoCloseable {
                 allowObfuscation,
                 condition,
                 classSpecification);
+        keepClassSpecification.location = location;
+        return keepClassSpecification;
     }
 
     /**
@@ -1025,7 +1096,21 @@ public class ProConfigKeepParser implements AutoCloseable {
             boolean expectSingleFile,
             boolean expectingAtCharacter
     ) throws RuntimeException, IOException {
-        readNextWord(expectSingleFile);
+        readNextWord(expectedDescription, false, expectSingleFile, expectingAtCharacter);
+    }
+
+
+    /**
+     * Reads the next word of the configuration in the 'nextWord' field,
+     * throwing an exception if there is no next word.
+     */
+    private void readNextWord(
+            String expectedDescription,
+            boolean isFileName,
+            boolean expectSingleFile,
+            boolean expectingAtCharacter
+    ) throws RuntimeException, IOException {
+        nextWord = reader.nextWord(isFileName, expectSingleFile);
         if (configurationEnd(expectingAtCharacter)) {
             throw new RuntimeException("Expecting " + expectedDescription +
                     " before " + reader.locationDescription());
@@ -0,0 +1,175 @@
+package com.obfuscation.proconfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads a ProGuard configuration file together with every file it pulls in
+ * through '-include' or '@' directives.
+ * <p>
+ * Each file is tokenized and parsed on its own worker as soon as its includer
+ * has been parsed, so a tree of consumer rule files is read in parallel. The
+ * parsed fragments are then merged back in declaration order, exactly as if
+ * the included text had been pasted in place of the directive.
+ * </p>
+ * <p>
+ * A file that is included by several files is parsed only once, but its rules
+ * are spliced in at every include site. An include cycle is reported as an
+ * {@link IOException}.
+ * </p>
+ */
+public class ProConfigLoader {
+    private final Properties properties;
+    private final int parallelism;
+
+    private final ConcurrentMap<File, CompletableFuture<ProConfig>> parsed = new ConcurrentHashMap<>();
+
+    private ExecutorService executor;
+
+    public ProConfigLoader() {
+        this(System.getProperties(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param properties  the properties used to resolve '&lt;...&gt;' references.
+     * @param parallelism the maximum number of files parsed at the same time.
+     */
+    public ProConfigLoader(Properties properties, int parallelism) {
+        this.properties = properties;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Parses the given configuration file and all of its includes.
+     *
+     * @param file the root configuration file.
+     * @return the merged configuration.
+     * @throws IOException if a file can't be read or the includes form a cycle.
+     * @throws RuntimeException if a file contains a syntax error.
+     */
+    public ProConfig load(File file) throws IOException {
+        File root = file.getCanonicalFile();
+
+        executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "pro-config-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            submit(root);
+
+            ProConfig merged = new ProConfig();
+            merged.keep = new ArrayList<>();
+            merge(root, null, merged, new ArrayDeque<>());
+            return merged;
+        } finally {
+            executor.shutdownNow();
+            parsed.clear();
+        }
+    }
+
+    /**
+     * Schedules the given file for parsing, unless it already is.
+     */
+    private CompletableFuture<ProConfig> submit(File file) {
+        CompletableFuture<ProConfig> created = new CompletableFuture<>();
+        CompletableFuture<ProConfig> existing = parsed.putIfAbsent(file, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        executor.execute(() -> {
+            try {
+                ProConfig config = parse(file);
+
+                // Start on the included files before anyone waits for them.
+                if (config.includes != null) {
+                    for (ProConfigInclude include : config.includes) {
+                        submit(include.file);
+                    }
+                }
+                created.complete(config);
+            } catch (Throwable t) {
+                created.completeExceptionally(t);
+            }
+        });
+        return created;
+    }
+
+    private ProConfig parse(File file) {
+        ProConfig config = new ProConfig();
+        try (ProConfigKeepParser parser = new ProConfigKeepParser(file, properties)) {
+            parser.parse(config);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return config;
+    }
+
+    /**
+     * Appends the rules of the given file, with its includes expanded, to the
+     * target configuration.
+     */
+    private void merge(
+            File file,
+            ProConfigInclude directive,
+            ProConfig target,
+            Deque<File> includeStack
+    ) throws IOException {
+        if (includeStack.contains(file)) {
+            throw new IOException("Circular include of file '" + file.getPath() + "' in " + directive.location);
+        }
+        includeStack.push(file);
+
+        ProConfig config = await(file);
+
+        int from = 0;
+        if (config.includes != null) {
+            for (ProConfigInclude include : config.includes) {
+                appendKeeps(config, from, include.keepIndex, target);
+                from = include.keepIndex;
+
+                merge(include.file, include, target, includeStack);
+            }
+        }
+        appendKeeps(config, from, config.keep == null ? 0 : config.keep.size(), target);
+
+        target.obfuscate &= config.obfuscate;
+
+        includeStack.pop();
+    }
+
+    private static void appendKeeps(ProConfig config, int from, int to, ProConfig target) {
+        if (config.keep == null || from >= to) {
+            return;
+        }
+        target.keep.addAll(config.keep.subList(from, to));
+    }
+
+    private ProConfig await(File file) throws IOException {
+        try {
+            return submit(file).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.obfuscation.proconfig;
+
+import com.obfuscation.proconfig.specs.ClassSpecification;
+import com.obfuscation.proconfig.specs.KeepClassSpecification;
+import com.obfuscation.proconfig.specs.MemberSpecification;
+import com.obfuscation.proconfig.specs.MemberValueSpecification;
+
+import java.util.*;
+
+/**
+ * Shrinks the keep rules of a merged configuration before they are matched
+ * against the classes of an APK.
+ * <p>
+ * Every {@link KeepClassSpecification} is first brought into a canonical form,
+ * where its member specifications are de-duplicated and sorted, so that rules
+ * that only differ in member order compare equal. Exact duplicates are then
+ * dropped, keeping the first occurrence.
+ * </p>
+ * <p>
+ * Finally, class member rules ('-keepclassmembers', '-keepclassmembernames')
+ * that are strictly subsumed by a broader rule of the same kind are removed.
+ * A rule is broader if it has the same condition and keep flags, matches a
+ * superset of the classes ('*' or a '**' package prefix), requires a subset of
+ * the access flags, annotation and super class, and keeps a superset of the
+ * member specifications. Rules that mark classes are left alone: the adapter
+ * keeps nothing for a class rule that matches every class, so a broader class
+ * rule does not necessarily keep more.
+ * </p>
+ * <p>
+ * Every removed rule leaves its location, and the ones it absorbed itself, in
+ * the {@link KeepClassSpecification#absorbedLocations} of the rule that
+ * replaces it, so every configuration line that keeps an entry can still be
+ * reported.
+ * </p>
+ */
+public class ProConfigReducer {
+    private static final String PATTERN_ALLOW_SUBPACKAGES = "**";
+
+    private static final Comparator<String> NULL_FIRST = Comparator.nullsFirst(Comparator.naturalOrder());
+
+    private static final Comparator<MemberSpecification> MEMBER_ORDER = Comparator
+            .comparing((MemberSpecification m) -> m.name, NULL_FIRST)
+            .thenComparing(m -> m.descriptor, NULL_FIRST)
+            .thenComparing(m -> m.annotationType, NULL_FIRST)
+            .thenComparingInt(m -> m.requiredSetAccessFlags)
+            .thenComparingInt(m -> m.requiredUnsetAccessFlags)
+            .thenComparing(m -> m instanceof MemberValueSpecification
+                    ? Arrays.toString(((MemberValueSpecification) m).values)
+                    : null, NULL_FIRST);
+
+    /**
+     * The outcome of {@link #reduce(ProConfig)}.
+     */
+    public static class Result {
+        public final int duplicateCount;
+        public final int subsumedCount;
+
+        Result(int duplicateCount, int subsumedCount) {
+            this.duplicateCount = duplicateCount;
+            this.subsumedCount = subsumedCount;
+        }
+
+        public int eliminatedCount() {
+            return duplicateCount + subsumedCount;
+        }
+    }
+
+    /**
+     * Canonicalizes the keep rules of the given configuration and removes the
+     * duplicated and subsumed ones in place.
+     *
+     * @param proConfig the configuration to reduce.
+     * @return how many duplicated and subsumed rules were removed.
+     */
+    public static Result reduce(ProConfig proConfig) {
+        if (proConfig.keep == null || proConfig.keep.isEmpty()) {
+            return new Result(0, 0);
+        }
+
+        // Canonicalize and drop the exact duplicates.
+        Map<KeepClassSpecification, KeepClassSpecification> unique = new LinkedHashMap<>();
+        for (KeepClassSpecification spec : proConfig.keep) {
+            canonicalize(spec);
+            if (spec.condition != null) {
+                canonicalize(spec.condition);
+            }
+            KeepClassSpecification first = unique.putIfAbsent(spec, spec);
+            if (first != null) {
+                absorb(first, spec);
+            }
+        }
+        int duplicateCount = proConfig.keep.size() - unique.size();
+
+        // Group the member rules by kind, and remember the broad ones.
+        Map<KindKey, List<KeepClassSpecification>> broadRules = new HashMap<>();
+        for (KeepClassSpecification spec : unique.keySet()) {
+            if (isMemberRule(spec) && isBroadClassName(spec.className)) {
+                broadRules.computeIfAbsent(new KindKey(spec), k -> new ArrayList<>()).add(spec);
+            }
+        }
+
+        List<KeepClassSpecification> reduced = new ArrayList<>(unique.size());
+        List<KeepClassSpecification> subsumed = new ArrayList<>();
+        for (KeepClassSpecification spec : unique.keySet()) {
+            if (!isMemberRule(spec) || subsumer(spec, broadRules.get(new KindKey(spec)), null) == null) {
+                reduced.add(spec);
+            } else {
+                subsumed.add(spec);
+            }
+        }
+        int subsumedCount = subsumed.size();
+
+        // Hand the locations of the subsumed rules to a broader rule that
+        // stays, which exists since subsumption is transitive.
+        Set<KeepClassSpecification> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        kept.addAll(reduced);
+        for (KeepClassSpecification spec : subsumed) {
+            KeepClassSpecification broad = subsumer(spec, broadRules.get(new KindKey(spec)), kept);
+            if (broad != null) {
+                absorb(broad, spec);
+            }
+        }
+
+        proConfig.keep = reduced;
+        return new Result(duplicateCount, subsumedCount);
+    }
+
+    /**
+     * De-duplicates and sorts the member specifications of the given class
+     * specification.
+     */
+    private static void canonicalize(ClassSpecification spec) {
+        spec.fieldSpecifications = canonicalize(spec.fieldSpecifications);
+        spec.methodSpecifications = canonicalize(spec.methodSpecifications);
+    }
+
+    private static List<MemberSpecification> canonicalize(List<MemberSpecification> specs) {
+        if (specs == null) {
+            return null;
+        }
+        List<MemberSpecification> canonical = new ArrayList<>(new LinkedHashSet<>(specs));
+        canonical.sort(MEMBER_ORDER);
+        return canonical;
+    }
+
+    private static boolean isMemberRule(KeepClassSpecification spec) {
+        return spec.markClassMembers &&
+               !spec.markClasses &&
+               !spec.markConditionally;
+    }
+
+    /**
+     * Returns whether the class name can cover other class names: any class,
+     * or all classes under a package prefix.
+     */
+    private static boolean isBroadClassName(String className) {
+        return className == null || className.endsWith(PATTERN_ALLOW_SUBPACKAGES);
+    }
+
+    /**
+     * Adds the location of the removed rule, and the locations it absorbed,
+     * to the rule that replaces it.
+     */
+    private static void absorb(KeepClassSpecification into, KeepClassSpecification removed) {
+        if (into.absorbedLocations == null) {
+            into.absorbedLocations = new ArrayList<>();
+        }
+        if (removed.location != null) {
+            into.absorbedLocations.add(removed.location);
+        }
+        if (removed.absorbedLocations != null) {
+            into.absorbedLocations.addAll(removed.absorbedLocations);
+            removed.absorbedLocations = null;
+        }
+    }
+
+    /**
+     * Returns the first of the candidates that subsumes the given rule, or
+     * null if none does.
+     *
+     * @param among the rules the subsumer must be one of, or null for any.
+     */
+    private static KeepClassSpecification subsumer(
+            KeepClassSpecification spec,
+            List<KeepClassSpecification> candidates,
+            Set<KeepClassSpecification> among
+    ) {
+        if (candidates == null) {
+            return null;
+        }
+        for (KeepClassSpecification candidate : candidates) {
+            if (candidate != spec && (among == null || among.contains(candidate)) && subsumes(candidate, spec)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns whether the broad rule keeps everything the narrow rule keeps.
+     * Both rules are expected to be distinct rules of the same kind.
+     */
+    private static boolean subsumes(
+            KeepClassSpecification broad,
+            KeepClassSpecification narrow
+    ) {
+        return coversClassName(broad.className, narrow.className) &&
+               (broad.requiredSetAccessFlags   & ~narrow.requiredSetAccessFlags)   == 0 &&
+               (broad.requiredUnsetAccessFlags & ~narrow.requiredUnsetAccessFlags) == 0 &&
+               coversName(broad.annotationType,        narrow.annotationType)        &&
+               coversName(broad.extendsAnnotationType, narrow.extendsAnnotationType) &&
+               coversName(broad.extendsClassName,      narrow.extendsClassName)      &&
+               containsAll(broad.fieldSpecifications,  narrow.fieldSpecifications)   &&
+               containsAll(broad.methodSpecifications, narrow.methodSpecifications);
+    }
+
+    private static boolean coversClassName(String broad, String narrow) {
+        if (narrow == null) {
+            return broad == null;
+        }
+        // An exact class name is kept as is by the adapter, whatever else
+        // matches, so only wildcard names can be covered.
+        if (!narrow.endsWith("*")) {
+            return false;
+        }
+        return broad == null || narrow.startsWith(broad.substring(0, broad.length() - PATTERN_ALLOW_SUBPACKAGES.length()));
+    }
+
+    private static boolean coversName(String broad, String narrow) {
+        return broad == null || broad.equals(narrow);
+    }
+
+    private static boolean containsAll(
+            List<MemberSpecification> broad,
+            List<MemberSpecification> narrow
+    ) {
+        if (narrow == null || narrow.isEmpty()) {
+            return true;
+        }
+        return broad != null && new HashSet<>(broad).containsAll(narrow);
+    }
+
+    /**
+     * The part of a keep rule that must be identical for one rule to subsume
+     * another.
+     */
+    private static class KindKey {
+        private final KeepClassSpecification spec;
+
+        KindKey(KeepClassSpecification spec) {
+            this.spec = spec;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof KindKey)) {
+                return false;
+            }
+            KeepClassSpecification other = ((KindKey) object).spec;
+            return spec.markClasses           == other.markClasses           &&
+                   spec.markClassMembers      == other.markClassMembers      &&
+                   spec.markConditionally     == other.markConditionally     &&
+                   spec.markDescriptorClasses == other.markDescriptorClasses &&
+                   spec.markCodeAttributes    == other.markCodeAttributes    &&
+                   spec.allowObfuscation      == other.allowObfuscation      &&
+                   Objects.equals(spec.condition, other.condition);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(
+                    spec.markClasses,
+                    spec.markClassMembers,
+                    spec.markConditionally,
+                    spec.markDescriptorClasses,
+                    spec.markCodeAttributes,
+                    spec.allowObfuscation,
+                    spec.condition
+            );
+        }
+    }
+}
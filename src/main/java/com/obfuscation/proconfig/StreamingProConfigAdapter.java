@@ -0,0 +1,200 @@
+package com.obfuscation.proconfig;
+
+import com.googlecode.d2j.node.DexClassNode;
+import com.googlecode.d2j.reader.DexFileReader;
+import com.googlecode.d2j.visitors.DexClassVisitor;
+import com.googlecode.d2j.visitors.DexFileVisitor;
+import com.obfuscation.model.ClassNamePattern;
+import com.obfuscation.model.ConsistencyScope;
+import com.obfuscation.proconfig.specs.KeepClassSpecification;
+import com.obfuscation.utils.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adapts a proguard configuration while the dex files of an APK are read,
+ * without collecting their classes first.
+ * <p>
+ * Each class the {@link DexFileReader} visits is built into a transient node
+ * without code, matched against every rule as soon as it ends, and dropped.
+ * Only the names of the matched classes are retained, since whether a rule
+ * matched every class is only known once all dex files are read; the kept
+ * members are collected right away. The memory used is therefore bounded by
+ * the matches rather than by the size of the APK.
+ * </p>
+ * <p>
+ * The scope is the same as {@link ProConfigAdapter#scopeOf(ProConfig)} over
+ * the same dex files, assuming no class is defined by two of them: super class
+ * conditions only look at the direct super class and interfaces of a class,
+ * so no class ever needs another one to be matched.
+ * </p>
+ */
+public class StreamingProConfigAdapter extends DexFileVisitor {
+    /**
+     * The reader flags {@link #accept(byte[])} uses. Annotations are kept, for
+     * the annotation conditions of the rules.
+     */
+    public static final int READER_CONFIG =
+            DexFileReader.SKIP_CODE | DexFileReader.SKIP_DEBUG | DexFileReader.SKIP_FIELD_CONSTANT;
+
+    /**
+     * A rule whose keep or keep members stage needs to look at the classes.
+     */
+    private static final class Rule {
+        final KeepClassSpecification spec;
+        final boolean keep;
+        final boolean keepMembers;
+        final List<String> keepMatches = new ArrayList<>();
+        final List<String> keepMembersMatches = new ArrayList<>();
+        /** The modified UTF-8 pattern of the descriptors the rule may match, or null. */
+        final byte[] descriptorPattern;
+
+        Rule(KeepClassSpecification spec, boolean keep, boolean keepMembers) {
+            this.spec = spec;
+            this.keep = keep;
+            this.keepMembers = keepMembers;
+            ClassNamePattern pattern = KeepSpecificationMatcher.classNamePattern(spec.className);
+            this.descriptorPattern = pattern == null ? null : pattern.descriptorPattern().toMutf8();
+        }
+    }
+
+    private final List<Rule> rules = new ArrayList<>();
+    private final ConsistencyScope scope;
+    private boolean filtered = true;
+    private int classCount;
+    private boolean finished;
+
+    /**
+     * Creates an adapter for the given configuration. The rules that name a
+     * single class are collected right away.
+     *
+     * @param proConfig the configuration, as returned by {@link ProConfigAdapter#load(String)}.
+     *                  Its obfuscate flag is not checked.
+     */
+    public StreamingProConfigAdapter(ProConfig proConfig) {
+        this.scope = new ConsistencyScope();
+        this.scope.initialize();
+        for (KeepClassSpecification spec : proConfig.keep) {
+            boolean keep = KeepSpecificationMatcher.isKeepRule(spec);
+            boolean keepMembers = KeepSpecificationMatcher.isKeepMembersRule(spec);
+            if (!keep && !keepMembers) {
+                continue;
+            }
+            if (KeepSpecificationMatcher.isExactClassName(spec.className)) {
+                scope.classNames.add(spec.className);
+                continue;
+            }
+            Rule rule = new Rule(spec, keep, keepMembers);
+            filtered &= rule.descriptorPattern != null;
+            rules.add(rule);
+        }
+    }
+
+    /**
+     * Reads the given dex file and matches its classes.
+     * <p>
+     * If the class name pattern of every rule has no wildcard in its package,
+     * the descriptor of each class is first matched against the patterns in
+     * place, in the string data of the dex file. The classes no rule can
+     * match are only counted: neither their names nor their declarations are
+     * decoded.
+     * </p>
+     */
+    public void accept(byte[] dex) {
+        DexFileReader reader = new DexFileReader(dex);
+        if (!filtered) {
+            reader.accept(this, READER_CONFIG);
+            return;
+        }
+        visitDexFileVersion(reader.getDexVersion());
+        for (int classIdx = 0; classIdx < reader.getClassSize(); classIdx++) {
+            if (mayMatch(reader, reader.getClassDescriptorId(classIdx))) {
+                reader.accept(this, classIdx, READER_CONFIG);
+            } else {
+                checkNotFinished();
+                classCount++;
+            }
+        }
+        visitEnd();
+    }
+
+    private boolean mayMatch(DexFileReader reader, int descriptorId) {
+        for (Rule rule : rules) {
+            if (reader.stringMatches(descriptorId, rule.descriptorPattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Matches the given class, which was read by other means than a {@link DexFileReader}.
+     */
+    public void accept(DexClassNode classNode) {
+        checkNotFinished();
+        match(classNode);
+    }
+
+    @Override
+    public DexClassVisitor visit(int access_flags, String className, String superClass, String[] interfaceNames) {
+        checkNotFinished();
+        return new DexClassNode(access_flags, className, superClass, interfaceNames) {
+            @Override
+            public void visitEnd() {
+                match(this);
+            }
+        };
+    }
+
+    private void checkNotFinished() {
+        if (finished) {
+            throw new IllegalStateException("The scope was already collected");
+        }
+    }
+
+    private void match(DexClassNode classNode) {
+        String className = Utils.normalizeClassName(classNode.className);
+        classCount++;
+        for (Rule rule : rules) {
+            if (rule.keep && KeepSpecificationMatcher.matchesKeep(rule.spec, className, classNode)) {
+                rule.keepMatches.add(className);
+            }
+            if (rule.keepMembers && KeepSpecificationMatcher.matchesKeepMembers(rule.spec, className, classNode)) {
+                rule.keepMembersMatches.add(className);
+                KeepSpecificationMatcher.collectMemberSignatures(rule.spec, classNode, scope);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of classes read so far.
+     */
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * Collects what depends on every class being read and returns the scope.
+     * No more dex files can be read afterwards.
+     */
+    public ConsistencyScope finish() {
+        if (finished) {
+            return scope;
+        }
+        finished = true;
+        for (Rule rule : rules) {
+            //Not filtered
+            if (rule.keepMatches.size() != classCount) {
+                scope.classNames.addAll(rule.keepMatches);
+            }
+            KeepSpecificationMatcher.collectMemberAccess(
+                    rule.spec,
+                    rule.keepMembersMatches,
+                    rule.keepMembersMatches.size() == classCount,
+                    scope);
+        }
+        rules.clear();
+        return scope;
+    }
+}
@@ -187,4 +187,42 @@ public class ClassSpecification implements Serializable {
 
         methodSpecifications.add(methodSpecification);
     }
+
+
+    // Implementations for Object.
+
+    /**
+     * Compares the structure of the specifications. Comments are not taken
+     * into account.
+     */
+    @Override
+    public boolean equals(Object object) {
+        if (object == null || this.getClass() != object.getClass()) {
+            return false;
+        }
+
+        ClassSpecification other = (ClassSpecification) object;
+        return
+            (this.requiredSetAccessFlags   == other.requiredSetAccessFlags                                                                                ) &&
+            (this.requiredUnsetAccessFlags == other.requiredUnsetAccessFlags                                                                              ) &&
+            (this.annotationType        == null ? other.annotationType        == null : this.annotationType.equals(other.annotationType)                  ) &&
+            (this.className             == null ? other.className             == null : this.className.equals(other.className)                            ) &&
+            (this.extendsAnnotationType == null ? other.extendsAnnotationType == null : this.extendsAnnotationType.equals(other.extendsAnnotationType)    ) &&
+            (this.extendsClassName      == null ? other.extendsClassName      == null : this.extendsClassName.equals(other.extendsClassName)              ) &&
+            (this.fieldSpecifications   == null ? other.fieldSpecifications   == null : this.fieldSpecifications.equals(other.fieldSpecifications)        ) &&
+            (this.methodSpecifications  == null ? other.methodSpecifications  == null : this.methodSpecifications.equals(other.methodSpecifications)      );
+    }
+
+    @Override
+    public int hashCode() {
+        return
+            (requiredSetAccessFlags                                              ) ^
+            (requiredUnsetAccessFlags                                            ) ^
+            (annotationType        == null ? 0 : annotationType.hashCode()       ) ^
+            (className             == null ? 0 : className.hashCode()            ) ^
+            (extendsAnnotationType == null ? 0 : extendsAnnotationType.hashCode()) ^
+            (extendsClassName      == null ? 0 : extendsClassName.hashCode()     ) ^
+            (fieldSpecifications   == null ? 0 : fieldSpecifications.hashCode()  ) ^
+            (methodSpecifications  == null ? 0 : methodSpecifications.hashCode() );
+    }
 }
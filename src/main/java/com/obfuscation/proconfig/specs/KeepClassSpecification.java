@@ -20,6 +20,8 @@
  */
 package com.obfuscation.proconfig.specs;
 
+import java.util.List;
+
 /**
  * This class represents a keep option with class specification.
  *
@@ -34,6 +36,21 @@ public class KeepClassSpecification extends ClassSpecification {
     public final boolean allowObfuscation;
     public final ClassSpecification condition;
 
+    /**
+     * The location of the keep option in the configuration, as described by
+     * the reader that parsed it. It is not part of the equality of the
+     * specification.
+     */
+    public String location;
+
+    /**
+     * The locations of the keep options that {@code ProConfigReducer} removed
+     * as duplicates of this one or as subsumed by it, in the order of the
+     * configuration, or null if there are none. They are not part of the
+     * equality of the specification either.
+     */
+    public List<String> absorbedLocations;
+
 
     /**
      * Creates a new KeepClassSpecification.
@@ -75,4 +92,37 @@ public class KeepClassSpecification extends ClassSpecification {
         this.allowObfuscation = allowObfuscation;
         this.condition = condition;
     }
+
+
+    // Implementations for Object.
+
+    @Override
+    public boolean equals(Object object) {
+        if (!super.equals(object)) {
+            return false;
+        }
+
+        KeepClassSpecification other = (KeepClassSpecification) object;
+        return
+            this.markClasses           == other.markClasses           &&
+            this.markClassMembers      == other.markClassMembers      &&
+            this.markConditionally     == other.markConditionally     &&
+            this.markDescriptorClasses == other.markDescriptorClasses &&
+            this.markCodeAttributes    == other.markCodeAttributes    &&
+            this.allowObfuscation      == other.allowObfuscation      &&
+            (this.condition == null ? other.condition == null : this.condition.equals(other.condition));
+    }
+
+    @Override
+    public int hashCode() {
+        return
+            super.hashCode()                                 ^
+            (markClasses           ? 1  : 0                ) ^
+            (markClassMembers      ? 2  : 0                ) ^
+            (markConditionally     ? 4  : 0                ) ^
+            (markDescriptorClasses ? 8  : 0                ) ^
+            (markCodeAttributes    ? 16 : 0                ) ^
+            (allowObfuscation      ? 32 : 0                ) ^
+            (condition == null     ? 0  : condition.hashCode());
+    }
 }
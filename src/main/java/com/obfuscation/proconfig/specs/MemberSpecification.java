@@ -65,4 +65,32 @@ public class MemberSpecification {
         this.name = name;
         this.descriptor = descriptor;
     }
+
+
+    // Implementations for Object.
+
+    @Override
+    public boolean equals(Object object) {
+        if (object == null || this.getClass() != object.getClass()) {
+            return false;
+        }
+
+        MemberSpecification other = (MemberSpecification) object;
+        return
+            (this.requiredSetAccessFlags   == other.requiredSetAccessFlags                                                 ) &&
+            (this.requiredUnsetAccessFlags == other.requiredUnsetAccessFlags                                               ) &&
+            (this.annotationType == null ? other.annotationType == null : this.annotationType.equals(other.annotationType)) &&
+            (this.name           == null ? other.name           == null : this.name.equals(other.name)                    ) &&
+            (this.descriptor     == null ? other.descriptor     == null : this.descriptor.equals(other.descriptor)        );
+    }
+
+    @Override
+    public int hashCode() {
+        return
+            (requiredSetAccessFlags                              ) ^
+            (requiredUnsetAccessFlags                            ) ^
+            (annotationType == null ? 0 : annotationType.hashCode()) ^
+            (name           == null ? 0 : name.hashCode()          ) ^
+            (descriptor     == null ? 0 : descriptor.hashCode()    );
+    }
 }
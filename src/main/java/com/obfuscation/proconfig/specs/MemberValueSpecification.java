@@ -20,6 +20,8 @@
  */
 package com.obfuscation.proconfig.specs;
 
+import java.util.Arrays;
+
 /**
  * This member specification assigns a constant value or value range to the
  * class members.
@@ -67,4 +69,18 @@ public class MemberValueSpecification extends MemberSpecification {
 
         this.values = values;
     }
+
+
+    // Implementations for Object.
+
+    @Override
+    public boolean equals(Object object) {
+        return super.equals(object) &&
+               Arrays.equals(values, ((MemberValueSpecification) object).values);
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode() ^ Arrays.hashCode(values);
+    }
 }
@@ -0,0 +1,217 @@
+package com.obfuscation.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal JSON parser for small configuration files.
+ * <p>
+ * Objects become {@link LinkedHashMap}s, arrays {@link ArrayList}s, numbers
+ * {@link Long}s or {@link Double}s, and the literals {@link Boolean}s or null.
+ * </p>
+ */
+public class JsonParser {
+    private final String text;
+    private int index;
+
+    private JsonParser(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Parses the given JSON text.
+     *
+     * @throws RuntimeException if the text isn't valid JSON.
+     */
+    public static Object parse(String text) {
+        JsonParser parser = new JsonParser(text);
+        Object value = parser.readValue();
+        parser.skipWhitespace();
+        if (parser.index < text.length()) {
+            throw parser.error("Unexpected trailing '" + text.charAt(parser.index) + "'");
+        }
+        return value;
+    }
+
+    private Object readValue() {
+        skipWhitespace();
+        if (index >= text.length()) {
+            throw error("Unexpected end of input");
+        }
+        char c = text.charAt(index);
+        switch (c) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return readString();
+            case 't':
+                return readLiteral("true", Boolean.TRUE);
+            case 'f':
+                return readLiteral("false", Boolean.FALSE);
+            case 'n':
+                return readLiteral("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return readNumber();
+                }
+                throw error("Unexpected '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> readObject() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        index++;
+        skipWhitespace();
+        if (peek() == '}') {
+            index++;
+            return object;
+        }
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("Expecting a member name");
+            }
+            String name = readString();
+            skipWhitespace();
+            expect(':');
+            object.put(name, readValue());
+            skipWhitespace();
+            if (peek() == ',') {
+                index++;
+            } else {
+                expect('}');
+                return object;
+            }
+        }
+    }
+
+    private List<Object> readArray() {
+        List<Object> array = new ArrayList<>();
+        index++;
+        skipWhitespace();
+        if (peek() == ']') {
+            index++;
+            return array;
+        }
+        while (true) {
+            array.add(readValue());
+            skipWhitespace();
+            if (peek() == ',') {
+                index++;
+            } else {
+                expect(']');
+                return array;
+            }
+        }
+    }
+
+    private String readString() {
+        StringBuilder builder = new StringBuilder();
+        index++;
+        while (true) {
+            if (index >= text.length()) {
+                throw error("Unterminated string");
+            }
+            char c = text.charAt(index++);
+            if (c == '"') {
+                return builder.toString();
+            }
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            if (index >= text.length()) {
+                throw error("Unterminated string");
+            }
+            char escaped = text.charAt(index++);
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    builder.append(escaped);
+                    break;
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'u':
+                    if (index + 4 > text.length()) {
+                        throw error("Incomplete unicode escape");
+                    }
+                    try {
+                        builder.append((char) Integer.parseInt(text.substring(index, index + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid unicode escape");
+                    }
+                    index += 4;
+                    break;
+                default:
+                    throw error("Invalid escape '\\" + escaped + "'");
+            }
+        }
+    }
+
+    private Object readNumber() {
+        int start = index;
+        boolean decimal = false;
+        while (index < text.length()) {
+            char c = text.charAt(index);
+            if (c == '.' || c == 'e' || c == 'E') {
+                decimal = true;
+            } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                break;
+            }
+            index++;
+        }
+        String number = text.substring(start, index);
+        try {
+            return decimal ? (Object) Double.parseDouble(number) : (Object) Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            throw error("Invalid number '" + number + "'");
+        }
+    }
+
+    private Object readLiteral(String literal, Object value) {
+        if (!text.startsWith(literal, index)) {
+            throw error("Unexpected '" + text.charAt(index) + "'");
+        }
+        index += literal.length();
+        return value;
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw error("Expecting '" + c + "'");
+        }
+        index++;
+    }
+
+    private char peek() {
+        return index < text.length() ? text.charAt(index) : 0;
+    }
+
+    private void skipWhitespace() {
+        while (index < text.length() && Character.isWhitespace(text.charAt(index))) {
+            index++;
+        }
+    }
+
+    private RuntimeException error(String message) {
+        return new RuntimeException(message + " at offset " + index);
+    }
+}
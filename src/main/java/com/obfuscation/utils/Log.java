@@ -1,49 +1,138 @@
 package com.obfuscation.utils;
 
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Supplier;
 
+/**
+ * The console logger.
+ * <p>
+ * Messages below the current {@link Level} are dropped before anything is
+ * formatted; the {@link Supplier} overloads also defer building the message,
+ * so disabled diagnostics cost a level check. Enabled messages are handed to
+ * a background writer that formats and prints them, see {@link LogWriter}.
+ * They are printed in order, and everything logged is printed before the JVM
+ * exits or {@link #flush()} returns.
+ * </p>
+ */
 public class Log {
 
-    public static AtomicBoolean suppressInfo = new AtomicBoolean(false);
-    public static AtomicBoolean suppressWarn = new AtomicBoolean(true);
+    public enum Level {
+        DEBUG,
+        INFO,
+        WARN,
+        IMPORTANT,
+        ERROR;
+
+        /**
+         * Returns the level with the given name, in any case.
+         *
+         * @throws RuntimeException if there is no such level.
+         */
+        public static Level of(String name) {
+            for (Level level : values()) {
+                if (level.name().equalsIgnoreCase(name)) {
+                    return level;
+                }
+            }
+            throw new RuntimeException("Unknown log level '" + name + "'");
+        }
+    }
+
+    private static final LogWriter writer = new LogWriter();
+
+    private static volatile Level level = Level.INFO;
+
+    /**
+     * Sets the lowest level that is logged.
+     */
+    public static void setLevel(Level level) {
+        Log.level = level;
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() >= Log.level.ordinal();
+    }
+
+    /**
+     * Also writes every logged message to the given file, one JSON object per
+     * line with its time, level and message.
+     */
+    public static void setJsonOutput(Path path) throws IOException {
+        writer.setJsonOutput(path);
+    }
+
+    /**
+     * Waits until every message logged so far is written.
+     */
+    public static void flush() {
+        writer.flush();
+    }
+
+    public static void debug(String msg) {
+        log(Level.DEBUG, null, msg);
+    }
+
+    public static void debug(Supplier<String> msg) {
+        if (isEnabled(Level.DEBUG))
+            log(Level.DEBUG, null, msg.get());
+    }
+
+    public static void info(String msg) {
+        log(Level.INFO, null, msg);
+    }
+
+    public static void info(Supplier<String> msg) {
+        if (isEnabled(Level.INFO))
+            log(Level.INFO, null, msg.get());
+    }
 
     public static void warn(String msg) {
-        if (suppressWarn.get())
-            return;
-        String time = LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
-        System.out.println(time + " [WARN] : " + msg);
+        log(Level.WARN, null, msg);
+    }
+
+    public static void warn(Supplier<String> msg) {
+        if (isEnabled(Level.WARN))
+            log(Level.WARN, null, msg.get());
     }
 
     public static void important(ConsoleUtils.COLOR color, String msg) {
-        important(ConsoleUtils.intoColoredString(color, msg));
+        log(Level.IMPORTANT, color, msg);
     }
 
     public static void important(String msg) {
-        String time = LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
-        System.out.println(time + " [IMPORTANT] : " + msg);
+        log(Level.IMPORTANT, null, msg);
     }
 
-    public static void info(String msg) {
-        if (suppressInfo.get())
-            return;
-        String time = LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
-        System.out.println(time + " [INFO] : " + msg);
+    public static void important(Supplier<String> msg) {
+        if (isEnabled(Level.IMPORTANT))
+            log(Level.IMPORTANT, null, msg.get());
     }
 
     public static void error(String msg, Throwable e) {
-        String time = LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
-        System.out.println(time + " [ERROR] : " + msg);
+        log(Level.ERROR, null, msg);
     }
 
     public static void error(String msg) {
-        String time = LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
-        System.out.println(time + " [ERROR] : " + ConsoleUtils.intoColoredString(ConsoleUtils.COLOR.RED, msg));
+        log(Level.ERROR, ConsoleUtils.COLOR.RED, msg);
     }
 
+    /**
+     * Prints the given message without a time or a line break, so the next
+     * progress message overwrites it. Progress messages are only printed to
+     * the console.
+     */
     public static void progress(String msg) {
-        String time = LocalTime.now().format(DateTimeFormatter.ofPattern("HH:mm:ss"));
-        System.out.print(msg + "\r");
+        writer.submit(new LogWriter.Entry(System.currentTimeMillis(), null, null, msg));
+    }
+
+    private static void log(Level level, ConsoleUtils.COLOR color, String msg) {
+        if (!isEnabled(level))
+            return;
+        writer.submit(new LogWriter.Entry(System.currentTimeMillis(), level, color, msg));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,210 @@
+package com.obfuscation.utils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Formats and writes the entries of {@link Log} on a background thread.
+ * <p>
+ * Entries go through a bounded ring buffer; a caller only blocks if the
+ * writer fell {@value #CAPACITY} entries behind. The writer drains the buffer
+ * in batches and prints each batch with a single write, and formats the clock
+ * once per second rather than once per entry.
+ * </p>
+ */
+class LogWriter {
+    private static final int CAPACITY = 8192;
+    private static final long MILLIS_PER_SECOND = 1000;
+    private static final DateTimeFormatter CLOCK_FORMATTER =
+            DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    /**
+     * A logged message. The level is null for progress messages.
+     */
+    static final class Entry {
+        final long millis;
+        final Log.Level level;
+        final ConsoleUtils.COLOR color;
+        final String message;
+
+        Entry(long millis, Log.Level level, ConsoleUtils.COLOR color, String message) {
+            this.millis = millis;
+            this.level = level;
+            this.color = color;
+            this.message = message;
+        }
+    }
+
+    private final BlockingQueue<Entry> buffer = new ArrayBlockingQueue<>(CAPACITY);
+    private final AtomicLong submitted = new AtomicLong();
+    private final Object writtenLock = new Object();
+    private long written;
+
+    private volatile BufferedWriter jsonWriter;
+
+    private long clockSecond = -1;
+    private String clock;
+
+    LogWriter() {
+        Thread thread = new Thread(this::run, "log-writer");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "log-writer-shutdown"));
+    }
+
+    void setJsonOutput(Path path) throws IOException {
+        BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        flush();
+        BufferedWriter previous = jsonWriter;
+        jsonWriter = writer;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Queues the given entry, waiting for room if the buffer is full. An
+     * interrupt doesn't drop the entry, it is restored once it is queued.
+     */
+    void submit(Entry entry) {
+        submitted.incrementAndGet();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                buffer.put(entry);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void flush() {
+        long target = submitted.get();
+        synchronized (writtenLock) {
+            while (written < target) {
+                try {
+                    writtenLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void close() {
+        flush();
+        BufferedWriter writer = jsonWriter;
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void run() {
+        List<Entry> batch = new ArrayList<>();
+        StringBuilder console = new StringBuilder();
+        StringBuilder json = new StringBuilder();
+        while (true) {
+            try {
+                batch.add(buffer.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            buffer.drainTo(batch);
+            try {
+                write(batch, console, json);
+            } finally {
+                synchronized (writtenLock) {
+                    written += batch.size();
+                    writtenLock.notifyAll();
+                }
+                batch.clear();
+                console.setLength(0);
+                json.setLength(0);
+            }
+        }
+    }
+
+    private void write(List<Entry> batch, StringBuilder console, StringBuilder json) {
+        BufferedWriter jsonWriter = this.jsonWriter;
+        for (Entry entry : batch) {
+            appendConsole(console, entry);
+            if (jsonWriter != null && entry.level != null) {
+                appendJson(json, entry);
+            }
+        }
+        System.out.print(console);
+        System.out.flush();
+        if (json.length() > 0) {
+            try {
+                jsonWriter.append(json);
+                jsonWriter.flush();
+            } catch (IOException e) {
+                System.err.println("Failed to write the JSON log : " + e.getMessage());
+                this.jsonWriter = null;
+            }
+        }
+    }
+
+    private void appendConsole(StringBuilder console, Entry entry) {
+        if (entry.level == null) {
+            console.append(entry.message).append('\r');
+            return;
+        }
+        console.append(clock(entry.millis))
+               .append(" [").append(entry.level.name()).append("] : ")
+               .append(entry.color == null ? entry.message : ConsoleUtils.intoColoredString(entry.color, entry.message))
+               .append(System.lineSeparator());
+    }
+
+    private static void appendJson(StringBuilder json, Entry entry) {
+        json.append("{\"time\":\"").append(Instant.ofEpochMilli(entry.millis))
+            .append("\",\"level\":\"").append(entry.level.name())
+            .append("\",\"message\":\"");
+        String message = String.valueOf(entry.message);
+        for (int index = 0; index < message.length(); index++) {
+            char c = message.charAt(index);
+            switch (c) {
+                case '"'  : json.append("\\\""); break;
+                case '\\' : json.append("\\\\"); break;
+                case '\n' : json.append("\\n"); break;
+                case '\r' : json.append("\\r"); break;
+                case '\t' : json.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append("\"}\n");
+    }
+
+    private String clock(long millis) {
+        long second = millis / MILLIS_PER_SECOND;
+        if (second != clockSecond) {
+            clockSecond = second;
+            clock = CLOCK_FORMATTER.format(Instant.ofEpochMilli(millis));
+        }
+        return clock;
+    }
+}
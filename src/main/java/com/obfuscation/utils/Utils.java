@@ -23,52 +23,58 @@ public class Utils {
     }
 
     public static void printClassPath(Map<String, DexClassNode> classPath) {
+        if (!Log.isEnabled(Log.Level.DEBUG)) {
+            return;
+        }
         classPath.forEach((className, dexClassNode) -> {
-            Log.important("Processing class : " + className);
-            Log.important("superClass : "           + dexClassNode.superClass);
-            Log.important("interfaceNames : "       + String.join(", ", dexClassNode.interfaceNames));
-            Log.important("fields : " + (dexClassNode.fields == null
+            Log.debug("Processing class : " + className);
+            Log.debug("superClass : "           + dexClassNode.superClass);
+            Log.debug("interfaceNames : "       + String.join(", ", dexClassNode.interfaceNames));
+            Log.debug("fields : " + (dexClassNode.fields == null
                     ? "NULL"
                     : dexClassNode.fields
                     .stream()
                     .map(field -> field.field.getType() + " " + field.field.getName())
                     .collect(Collectors.joining(", "))));
-            Log.important("method : " + (dexClassNode.methods == null
+            Log.debug("method : " + (dexClassNode.methods == null
                     ? "NULL"
                     : dexClassNode.methods
                     .stream()
                     .map(method -> method.method.getName() + method.method.getDesc())
                     .collect(Collectors.joining(", "))));
-            Log.important("anns : " + (dexClassNode.anns == null
+            Log.debug("anns : " + (dexClassNode.anns == null
                     ? "NULL"
                     : dexClassNode.anns
                     .stream()
                     .map(ann -> ann.type)
                     .collect(Collectors.joining(", "))));
-            Log.important("---------------------------------------------");
+            Log.debug("---------------------------------------------");
         });
     }
 
     public static void printScope(ConsistencyScope scope) {
-        Log.important("scope.classNames : " + scope.classNames.size());
-        Log.important("scope.keepMethodsAccess : " + scope.keepMethodsAccess.size());
-        Log.important("scope.keepFieldsAccess : " + scope.keepFieldsAccess.size());
-        Log.important("scope.methodSignatures : " + scope.methodSignatures.size());
-        Log.important("scope.fieldSignatures : " + scope.fieldSignatures.size());
+        if (!Log.isEnabled(Log.Level.DEBUG)) {
+            return;
+        }
+        Log.debug("scope.classNames : " + scope.classNames.size());
+        Log.debug("scope.keepMethodsAccess : " + scope.keepMethodsAccess.size());
+        Log.debug("scope.keepFieldsAccess : " + scope.keepFieldsAccess.size());
+        Log.debug("scope.methodSignatures : " + scope.methodSignatures.size());
+        Log.debug("scope.fieldSignatures : " + scope.fieldSignatures.size());
 
         scope.keepMethodsAccess.forEach((key, value)
-                -> Log.important("[KeepM] Class : " + key
+                -> Log.debug("[KeepM] Class : " + key
                 + " method access : " + value.stream()
                 .map(i -> "[" + i + "]")
                 .collect(Collectors.joining(", ")))
         );
         scope.keepFieldsAccess.forEach((key, value)
-                -> Log.important("[KeepF] Class : " + key
+                -> Log.debug("[KeepF] Class : " + key
                 + " field access : " + value.stream()
                 .map(i -> "[" + i + "]")
                 .collect(Collectors.joining(", ")))
         );
-        scope.methodSignatures.forEach(s -> Log.important("Method : " + s));
-        scope.fieldSignatures.forEach(s -> Log.important("Field : " + s));
+        scope.methodSignatures.forEach(s -> Log.debug("Method : " + s));
+        scope.fieldSignatures.forEach(s -> Log.debug("Field : " + s));
     }
 }